@@ -1,10 +1,14 @@
 package wo1261931780.spring_nextgen_showcase;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.support.WebClientAdapter;
 import org.springframework.web.service.invoker.HttpServiceProxyFactory;
+import wo1261931780.spring_nextgen_showcase.client.StockServiceClient;
+import wo1261931780.spring_nextgen_showcase.entity.ProductServiceClient;
 
 /**
  * @author junw
@@ -50,30 +54,30 @@ public class SpringNextgenShowcaseApplication {
 	// 			.build();
 	// 	return factory.createClient(UserClient.class);
 	// }
-	//
-	// // 创建 ProductServiceClient 代理实例
-	// @Bean
-	// public ProductServiceClient productServiceClient(WebClient webClient) {
-	// 	// 假设 ProductServiceClient 的 baseUrl 与 UserClient 不同，或者可以共享同一个 WebClient 实例
-	// 	// 如果 baseUrl 不同，可以创建一个新的 WebClient 实例或配置多个。
-	// 	// 例如:
-	// 	// WebClient productWebClient = WebClient.builder().baseUrl("http://product-service/api").build();
-	//
-	// 	HttpServiceProxyFactory factory = HttpServiceProxyFactory
-	// 			.builder(WebClientAdapter.forClient(webClient)) // 这里暂时复用上面的 webClient
-	// 			.build();
-	// 	return factory.createClient(ProductServiceClient.class);
-	// }
-	//
-	// // 创建 StockServiceClient 代理实例 (在 ProductController 中用到)
-	// @Bean
-	// public StockServiceClient stockServiceClient(WebClient webClient) {
-	// 	// 假设 StockServiceClient 的 baseUrl
-	// 	// WebClient stockWebClient = WebClient.builder().baseUrl("http://stock-service/api").build();
-	//
-	// 	HttpServiceProxyFactory factory = HttpServiceProxyFactory
-	// 			.builder(WebClientAdapter.forClient(webClient)) // 这里暂时复用上面的 webClient
-	// 			.build();
-	// 	return factory.createClient(StockServiceClient.class);
-	// }
+
+	// 创建 ProductServiceClient 代理实例 (在 OrderService 中用到)
+	@Bean
+	public ProductServiceClient productServiceClient(WebClient webClient) {
+		// 假设 ProductServiceClient 的 baseUrl 与 UserClient 不同，或者可以共享同一个 WebClient 实例
+		// 如果 baseUrl 不同，可以创建一个新的 WebClient 实例或配置多个。
+		// 例如:
+		// WebClient productWebClient = WebClient.builder().baseUrl("http://product-service/api").build();
+
+		HttpServiceProxyFactory factory = HttpServiceProxyFactory
+				.builderFor(WebClientAdapter.create(webClient)) // 这里暂时复用上面的 webClient
+				.build();
+		return factory.createClient(ProductServiceClient.class);
+	}
+
+	// 创建 StockServiceClient 代理实例 (在 ProductController 中用到)
+	// 库存服务使用独立的 baseUrl，本地开发时指向应用自身提供的库存服务桩 (StockStubController)
+	@Bean
+	public StockServiceClient stockServiceClient(@Value("${showcase.stock.base-url}") String stockBaseUrl) {
+		WebClient stockWebClient = WebClient.builder().baseUrl(stockBaseUrl).build();
+
+		HttpServiceProxyFactory factory = HttpServiceProxyFactory
+				.builderFor(WebClientAdapter.create(stockWebClient))
+				.build();
+		return factory.createClient(StockServiceClient.class);
+	}
 }
@@ -10,8 +10,10 @@ package wo1261931780.spring_nextgen_showcase.client;
  * @Description
  */
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ProblemDetail;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExceptionHandler;
@@ -79,6 +81,76 @@ public class GlobalExceptionHandler extends ResponseEntityExceptionHandler { //
 		return problemDetail;
 	}
 
+	/**
+	 * 处理 InsufficientStockException 异常，返回 409 CONFLICT。
+	 *
+	 * @param ex 捕获到的 InsufficientStockException 实例
+	 * @return 一个 ProblemDetail 对象，包含库存不足的产品ID与请求数量
+	 */
+	@ExceptionHandler(InsufficientStockException.class)
+	public ProblemDetail handleInsufficientStock(InsufficientStockException ex) {
+		ProblemDetail problemDetail = ProblemDetail.forStatusAndDetail(HttpStatus.CONFLICT, ex.getLocalizedMessage());
+		problemDetail.setType(URI.create("/errors/insufficient-stock"));
+		problemDetail.setTitle("库存不足");
+		problemDetail.setProperty("productId", ex.getProductId());
+		problemDetail.setProperty("requested", ex.getRequested());
+		return problemDetail;
+	}
+
+	/**
+	 * 处理 IdempotencyKeyReusedException 异常，返回 422 UNPROCESSABLE_ENTITY。
+	 *
+	 * @param ex 捕获到的 IdempotencyKeyReusedException 实例
+	 * @return 一个 ProblemDetail 对象，包含被重复使用的幂等键
+	 */
+	@ExceptionHandler(IdempotencyKeyReusedException.class)
+	public ProblemDetail handleIdempotencyKeyReused(IdempotencyKeyReusedException ex) {
+		ProblemDetail problemDetail = ProblemDetail.forStatusAndDetail(HttpStatus.UNPROCESSABLE_ENTITY, ex.getLocalizedMessage());
+		problemDetail.setType(URI.create("/errors/idempotency-key-reused"));
+		problemDetail.setTitle("幂等键已被使用");
+		problemDetail.setProperty("idempotencyKey", ex.getIdempotencyKey());
+		return problemDetail;
+	}
+
+	/**
+	 * 处理 RateLimitExceededException 异常，返回 429 TOO_MANY_REQUESTS，
+	 * 并通过 Retry-After 响应头（向上取整的秒数）告知客户端最早可以重试的时间。
+	 *
+	 * @param ex 捕获到的 RateLimitExceededException 实例
+	 * @return 带 Retry-After 响应头的 ProblemDetail 响应
+	 */
+	@ExceptionHandler(RateLimitExceededException.class)
+	public ResponseEntity<ProblemDetail> handleRateLimitExceeded(RateLimitExceededException ex) {
+		long retryAfterSeconds = Math.max(1, (ex.getRetryAfter().toMillis() + 999) / 1000);
+		ProblemDetail problemDetail = ProblemDetail.forStatusAndDetail(HttpStatus.TOO_MANY_REQUESTS, ex.getLocalizedMessage());
+		problemDetail.setType(URI.create("/errors/rate-limit-exceeded"));
+		problemDetail.setTitle("请求过于频繁");
+		problemDetail.setProperty("client", ex.getClient());
+		problemDetail.setProperty("retryAfterMillis", ex.getRetryAfter().toMillis());
+		return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+				.header(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds))
+				.body(problemDetail);
+	}
+
+	/**
+	 * 处理 OrderQueueFullException 异常，返回 503 SERVICE_UNAVAILABLE，
+	 * 并通过 Retry-After 响应头告知客户端稍后重试，而不是让请求在服务端无限堆积。
+	 *
+	 * @param ex 捕获到的 OrderQueueFullException 实例
+	 * @return 带 Retry-After 响应头的 ProblemDetail 响应
+	 */
+	@ExceptionHandler(OrderQueueFullException.class)
+	public ResponseEntity<ProblemDetail> handleOrderQueueFull(OrderQueueFullException ex) {
+		long retryAfterSeconds = Math.max(1, (ex.getRetryAfter().toMillis() + 999) / 1000);
+		ProblemDetail problemDetail = ProblemDetail.forStatusAndDetail(HttpStatus.SERVICE_UNAVAILABLE, ex.getLocalizedMessage());
+		problemDetail.setType(URI.create("/errors/order-queue-full"));
+		problemDetail.setTitle("订单受理队列已满");
+		problemDetail.setProperty("queueCapacity", ex.getCapacity());
+		return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+				.header(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds))
+				.body(problemDetail);
+	}
+
 	// 你可以在这里添加更多的 @ExceptionHandler 方法来处理其他自定义异常
 	// 例如：
 	// @ExceptionHandler(InvalidInputException.class)
@@ -0,0 +1,29 @@
+package wo1261931780.spring_nextgen_showcase.client;
+
+import java.io.Serial;
+
+/**
+ * 同一个 Idempotency-Key 被用于内容不同的请求时抛出的异常，由 GlobalExceptionHandler 转换为 422 ProblemDetail 响应。
+ * @author junw
+ */
+public class IdempotencyKeyReusedException extends RuntimeException {
+
+	@Serial
+	private static final long serialVersionUID = 1L;
+
+	private final String idempotencyKey;
+
+	public IdempotencyKeyReusedException(String idempotencyKey) {
+		super("Idempotency-Key 已被用于内容不同的请求: " + idempotencyKey, null, false, false);
+		this.idempotencyKey = idempotencyKey;
+	}
+
+	/**
+	 * 获取被重复使用的幂等键。
+	 *
+	 * @return 幂等键
+	 */
+	public String getIdempotencyKey() {
+		return idempotencyKey;
+	}
+}
@@ -0,0 +1,43 @@
+package wo1261931780.spring_nextgen_showcase.client;
+
+import java.io.Serial;
+
+/**
+ * 库存不足、无法完成预占时抛出的异常，由 GlobalExceptionHandler 转换为 409 ProblemDetail 响应。
+ * <p>
+ * 高并发抢购时库存不足是常态结果而不是程序错误，因此与 ProductNotFoundException 一样不填充堆栈。
+ * </p>
+ * @author junw
+ */
+public class InsufficientStockException extends RuntimeException {
+
+	@Serial
+	private static final long serialVersionUID = 1L;
+
+	private final String productId;
+	private final int requested;
+
+	public InsufficientStockException(String productId, int requested) {
+		super("产品库存不足，ID: " + productId + "，请求数量: " + requested, null, false, false);
+		this.productId = productId;
+		this.requested = requested;
+	}
+
+	/**
+	 * 获取库存不足的产品ID。
+	 *
+	 * @return 产品ID字符串
+	 */
+	public String getProductId() {
+		return productId;
+	}
+
+	/**
+	 * 获取请求预占的数量。
+	 *
+	 * @return 请求数量
+	 */
+	public int getRequested() {
+		return requested;
+	}
+}
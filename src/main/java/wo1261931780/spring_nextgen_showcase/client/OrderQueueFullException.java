@@ -0,0 +1,41 @@
+package wo1261931780.spring_nextgen_showcase.client;
+
+import java.io.Serial;
+import java.time.Duration;
+
+/**
+ * 订单受理队列已满时抛出的异常，由 GlobalExceptionHandler 转换为带 Retry-After 的 503 ProblemDetail 响应。
+ * @author junw
+ */
+public class OrderQueueFullException extends RuntimeException {
+
+	@Serial
+	private static final long serialVersionUID = 1L;
+
+	private final int capacity;
+	private final Duration retryAfter;
+
+	public OrderQueueFullException(int capacity, Duration retryAfter) {
+		super("订单受理队列已满 (容量 " + capacity + ")，请稍后重试", null, false, false);
+		this.capacity = capacity;
+		this.retryAfter = retryAfter;
+	}
+
+	/**
+	 * 获取受理队列的容量。
+	 *
+	 * @return 队列容量
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * 获取建议客户端等待的时间。
+	 *
+	 * @return 等待时间
+	 */
+	public Duration getRetryAfter() {
+		return retryAfter;
+	}
+}
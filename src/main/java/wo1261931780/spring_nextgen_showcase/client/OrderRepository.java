@@ -0,0 +1,42 @@
+package wo1261931780.spring_nextgen_showcase.client;
+
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.stereotype.Repository;
+import wo1261931780.spring_nextgen_showcase.entity.Order;
+
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Spring Data JPA Repository 接口，用于 Order 实体的数据库操作。
+ * <p>
+ * 新订单通常不直接通过本接口保存，而是交给 OrderWriter 按批次写入。
+ * </p>
+ * @author junw
+ */
+@Repository
+public interface OrderRepository extends JpaRepository<Order, UUID> {
+
+	/**
+	 * {@link #streamAll()} 每次从数据库抓取的行数。
+	 */
+	int STREAM_FETCH_SIZE = 1000;
+
+	/**
+	 * 以流的方式读取全部订单（只进游标，每次抓取 {@link #STREAM_FETCH_SIZE} 行），用于重建订单读模型等。
+	 * 必须在事务中调用并在使用后关闭；调用方应在处理完每个订单后将其 detach。
+	 *
+	 * @return 订单流
+	 */
+	@QueryHints({
+			@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + STREAM_FETCH_SIZE),
+			@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+			@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "false")
+	})
+	@Query("select o from Order o")
+	Stream<Order> streamAll();
+}
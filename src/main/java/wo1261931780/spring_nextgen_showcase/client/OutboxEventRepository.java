@@ -0,0 +1,24 @@
+package wo1261931780.spring_nextgen_showcase.client;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import wo1261931780.spring_nextgen_showcase.entity.OutboxEvent;
+
+import java.util.List;
+
+/**
+ * Spring Data JPA Repository 接口，用于发件箱 (OutboxEvent) 的读取与删除。
+ * @author junw
+ */
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+
+	/**
+	 * 按 ID 顺序读取最早的一批待投递事件。
+	 *
+	 * @param limit 最多读取的事件数
+	 * @return 待投递事件
+	 */
+	List<OutboxEvent> findAllByOrderByIdAsc(Limit limit);
+}
@@ -1,26 +1,57 @@
 package wo1261931780.spring_nextgen_showcase.client;
 
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.util.StringUtils;
 import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 import wo1261931780.spring_nextgen_showcase.client.ProductNotFoundException;
-import wo1261931780.spring_nextgen_showcase.client.ProductRepository;
-import wo1261931780.spring_nextgen_showcase.client.StockServiceClient;
+import wo1261931780.spring_nextgen_showcase.config.CircuitBreaker;
+import wo1261931780.spring_nextgen_showcase.config.VirtualThreadExecutors;
 import wo1261931780.spring_nextgen_showcase.entity.Product;
 import wo1261931780.spring_nextgen_showcase.entity.ProductDetail;
+import wo1261931780.spring_nextgen_showcase.entity.ProductDetailItem;
+import wo1261931780.spring_nextgen_showcase.entity.ProductPage;
+import wo1261931780.spring_nextgen_showcase.service.ProductBrowseService;
+import wo1261931780.spring_nextgen_showcase.service.ProductCache;
+import wo1261931780.spring_nextgen_showcase.service.ProductExportService;
+import wo1261931780.spring_nextgen_showcase.service.ProductIdBloomFilter;
+import wo1261931780.spring_nextgen_showcase.service.ProductSearchIndex;
+import wo1261931780.spring_nextgen_showcase.service.StockLookupService;
 
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * 产品控制器，演示了新特性组合使用的实战案例。
@@ -57,88 +88,125 @@ public class ProductController {
 
 	private static final Logger logger = LoggerFactory.getLogger(ProductController.class);
 
-	private final ProductRepository productRepository;
-	private final StockServiceClient stockClient;
+	// 产品查询经过进程内近端缓存 (ProductCache)，未命中时才访问 ProductRepository
+	private final ProductCache productCache;
+	// 所有库存查询都经过 StockLookupService (熔断器 + 舱壁；单个查询另有请求合并 + 短 TTL 缓存)
+	private final StockLookupService stockLookupService;
+	private final ProductExportService productExportService;
+	private final ProductBrowseService productBrowseService;
+	private final ProductSearchIndex productSearchIndex;
+	// 已知产品ID的 Bloom 过滤器：一定不存在的产品ID直接返回 404，不访问缓存、数据库和库存服务
+	// （假设本实例是唯一的产品写入方，其他来源写入的产品在过滤器下一次刷新之前会被拒绝，见 ProductIdBloomFilter）
+	private final ProductIdBloomFilter productIdFilter;
 
-	// 用于执行异步任务的虚拟线程池
-	// 推荐将其声明为 bean 或由 Spring 管理，而不是每次请求都创建新的
-	// 但为了严格遵循文档片段，这里直接在方法内创建
-	// private final ExecutorService virtualThreadExecutor = Executors.newVirtualThreadPerTaskExecutor();
-	// 如果要作为 bean:
-	// @Bean public ExecutorService virtualThreadTaskExecutor() { return Executors.newVirtualThreadPerTaskExecutor(); }
-	// 然后在这里 @Autowired private ExecutorService virtualThreadTaskExecutor;
+	// 由 Spring 管理、所有请求共享的虚拟线程执行设施（不再每次请求都创建新的执行器）
+	// 对 JPA 和库存服务的访问分别受各自的并发许可约束，应用关闭时统一优雅关闭
+	private final VirtualThreadExecutors executors;
+
+
+	// 响应式版本中阻塞的 JPA 查询所使用的调度器，复用 JPA 下游执行器的并发许可
+	private final Scheduler jpaScheduler;
+
+	// 单次产品详情请求的总体截止时间：产品查询与库存查询并行进行，共享同一个截止时间
+	private final Duration detailDeadline;
+
+
+	// 批量产品详情接口单次允许的最大产品ID数量
+	private final int maxBatchSize;
+
+	// 搜索最多可以翻到的结果数（页码 × 每页条数的上限），限制 top-k 的大小
+	private final int maxSearchResults;
+
+	// 条件请求 (If-None-Match) 的结果：仅凭缓存即返回 304 / 完整查询后返回 304 / 内容已变化返回 200
+	private final Counter notModifiedCachedCounter;
+	private final Counter notModifiedCounter;
+	private final Counter modifiedCounter;
 
 
 	@Autowired
-	public ProductController(ProductRepository productRepository, StockServiceClient stockClient) {
-		this.productRepository = productRepository;
-		this.stockClient = stockClient;
+	public ProductController(ProductCache productCache, StockLookupService stockLookupService,
+							 ProductExportService productExportService,
+							 ProductBrowseService productBrowseService, ProductSearchIndex productSearchIndex,
+							 ProductIdBloomFilter productIdFilter, VirtualThreadExecutors executors,
+							 MeterRegistry meterRegistry,
+							 @Value("${showcase.product-detail.deadline:800ms}") Duration detailDeadline,
+							 @Value("${showcase.product-detail.max-batch-size:100}") int maxBatchSize,
+							 @Value("${showcase.product-search.max-results:1000}") int maxSearchResults) {
+		this.productCache = productCache;
+		this.stockLookupService = stockLookupService;
+		this.productExportService = productExportService;
+		this.productBrowseService = productBrowseService;
+		this.productSearchIndex = productSearchIndex;
+		this.productIdFilter = productIdFilter;
+		this.executors = executors;
+		this.jpaScheduler = Schedulers.fromExecutor(executors.jpa());
+		this.detailDeadline = detailDeadline;
+		this.maxBatchSize = maxBatchSize;
+		this.maxSearchResults = maxSearchResults;
+		this.notModifiedCachedCounter = conditionalCounter(meterRegistry, "not_modified_cached");
+		this.notModifiedCounter = conditionalCounter(meterRegistry, "not_modified");
+		this.modifiedCounter = conditionalCounter(meterRegistry, "modified");
+	}
+
+	private static Counter conditionalCounter(MeterRegistry meterRegistry, String result) {
+		return Counter.builder("product.detail.conditional")
+				.description("Conditional product detail requests (If-None-Match) by outcome.")
+				.tag("result", result)
+				.register(meterRegistry);
 	}
 
 	/**
 	 * 根据产品ID获取产品详细信息（包括库存）。
-	 * 使用虚拟线程处理并发请求，并组合调用产品数据和库存数据。
+	 * 产品查询与库存查询在各自的虚拟线程中真正并行执行，总耗时约为两者中较慢的一个，而不是两者之和。
+	 * <p>
+	 * 支持条件请求：响应带有由产品字段与库存计算出的 ETag，轮询的客户端携带 {@code If-None-Match} 时，
+	 * <ul>
+	 *     <li>产品与库存都在缓存中且 ETag 未变化时，直接返回 304，不访问数据库和库存服务；</li>
+	 *     <li>否则照常查询，ETag 未变化时返回不带响应体的 304，省去序列化与传输。</li>
+	 * </ul>
+	 * 库存未知（降级）的响应不带 ETag，避免客户端把降级结果当作可复用的版本。
+	 * </p>
 	 *
-	 * @param id 产品ID
+	 * @param id          产品ID
+	 * @param ifNoneMatch 客户端缓存的 ETag，可选
 	 * @return ProductDetail 包含产品信息和库存
 	 */
 	@GetMapping("/{id}")
-	public CompletableFuture<ProductDetail> getProductDetails(@PathVariable String id) {
+	public CompletableFuture<ResponseEntity<ProductDetail>> getProductDetails(
+			@PathVariable String id,
+			@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
 		logger.info("接收到产品详情请求，产品ID: {} (将使用虚拟线程处理)", id);
 
-		// 为了严格遵循文档片段中的 .join()，这里返回 CompletableFuture<ProductDetail>
-		// 然后在客户端（或测试中）调用 .join() 或 .get() 来获取结果。
-		// 如果希望控制器直接返回 ProductDetail (阻塞直到完成)，则可以在这里 .join()。
-		// 文档示例直接在方法体返回类型为 ProductDetail，并在 supplyAsync 后 .join()。
-		// 为了更符合异步非阻塞控制器的风格，返回 CompletableFuture 通常更好。
-		// 但这里我们先按照文档的返回类型 ProductDetail 来写，并在内部 join。
-
-		// ExecutorService virtualExecutor = Executors.newVirtualThreadPerTaskExecutor(); // 每次调用都创建新的执行器不是最佳实践
-		// 更好的做法是注入一个共享的 ExecutorService bean
-		// 为了简单并贴合文档，暂时这样处理
-
-		return CompletableFuture.supplyAsync(() -> {
-					logger.info("虚拟线程 {} 开始处理产品ID: {}", Thread.currentThread(), id);
-
-					// 1. 查询产品基本信息
-					Product product = productRepository.findById(id)
-							.orElseThrow(() -> {
-								logger.warn("产品ID: {} 未找到，将抛出 ProductNotFoundException", id);
-								return new ProductNotFoundException(id); // 由 GlobalExceptionHandler 处理
-							});
-					logger.info("产品ID: {} 查询成功: {}", id, product.getName());
-
-					// 2. (并行)查询库存信息
-					// 在这个简化的 supplyAsync 块中，stockClient.getStock(id) 是同步调用。
-					// 如果 stockClient.getStock(id) 本身也是异步的 (返回 CompletableFuture)，
-					// 则可以使用 thenCombine 等方法来组合结果。
-					// 为了模拟文档中的“并行查询库存”概念，可以理解为这两个操作相对于其他请求是并行的。
-					Integer stock = -1; // 默认值
-					try {
-						stock = stockClient.getStock(id);
-						logger.info("产品ID: {} 库存查询成功: {}", id, stock);
-					} catch (Exception e) {
-						// 如果库存服务调用失败，记录错误并可能返回一个默认库存值或特定错误指示
-						logger.error("调用库存服务查询产品ID {} 的库存时发生错误: {}", id, e.getMessage(), e);
-						// 根据业务需求，这里可以抛出异常，或者返回一个表示库存未知的 ProductDetail
-						// 例如: throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "无法获取库存信息", e);
-						// 为了演示，我们继续并可能使用默认库存值
-					}
+		if (ifNoneMatch != null) {
+			String cachedEtag = cachedEtag(id);
+			if (cachedEtag != null && etagMatches(ifNoneMatch, cachedEtag)) {
+				notModifiedCachedCounter.increment();
+				return CompletableFuture.completedFuture(notModified(cachedEtag));
+			}
+		}
 
-					logger.info("虚拟线程 {} 完成处理产品ID: {}", Thread.currentThread(), id);
-					return new ProductDetail(product, stock);
-				}, Executors.newVirtualThreadPerTaskExecutor()) // 每次都创建新的虚拟线程执行器
-				.exceptionally(ex -> {
-					// 处理 CompletableFuture 中发生的异常
-					logger.error("处理产品详情请求时发生异步异常 (产品ID: {}): {}", id, ex.getMessage(), ex);
-					if (ex.getCause() instanceof ProductNotFoundException pnfe) {
-						// 如果是 ProductNotFoundException，GlobalExceptionHandler 应该已经处理了
-						// 但如果 supplyAsync 内部直接抛出，这里可以再次包装或处理
-						throw pnfe; // 重新抛出，让Spring的异常处理机制捕获
+		// 返回 CompletableFuture，由 Spring MVC 异步完成响应，不占用请求线程等待
+		return loadProductDetail(id)
+				.thenApply(detail -> {
+					if (!detail.hasLiveStock()) {
+						return ResponseEntity.ok(detail);
+					}
+					String etag = detail.etag();
+					if (ifNoneMatch != null) {
+						if (etagMatches(ifNoneMatch, etag)) {
+							notModifiedCounter.increment();
+							return notModified(etag);
+						}
+						modifiedCounter.increment();
 					}
-					// 对于其他类型的异常，可以转换为合适的HTTP状态码
-					// 例如，如果库存服务调用失败且在内部抛出了特定异常
-					throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "获取产品详情时发生内部错误", ex);
+					return ResponseEntity.ok()
+							.eTag(etag)
+							.cacheControl(CacheControl.noCache()) // 允许客户端缓存，但每次使用前都要重新验证
+							.body(detail);
+				})
+				.exceptionally(ex -> {
+					// 处理 CompletableFuture 中发生的异常，转换为合适的 HTTP 响应
+					throw translateFailure(id, ex);
 				});
 	}
 
@@ -152,36 +220,337 @@ public class ProductController {
 	public ProductDetail getProductDetailsBlocking(@PathVariable String id) {
 		logger.info("接收到产品详情请求 (阻塞版本)，产品ID: {}", id);
 		try {
-			// 每次调用都创建新的执行器不是最佳实践
-			ExecutorService virtualExecutor = Executors.newVirtualThreadPerTaskExecutor();
-			ProductDetail result = CompletableFuture.supplyAsync(() -> {
-				logger.info("虚拟线程 {} (阻塞版本) 开始处理产品ID: {}", Thread.currentThread(), id);
-				Product product = productRepository.findById(id)
-						.orElseThrow(() -> new ProductNotFoundException(id));
-				logger.info("产品ID: {} (阻塞版本) 查询成功: {}", id, product.getName());
-
-				Integer stock = -1;
-				try {
-					stock = stockClient.getStock(id);
-					logger.info("产品ID: {} (阻塞版本) 库存查询成功: {}", id, stock);
-				} catch (Exception e) {
-					logger.error("调用库存服务查询产品ID {} (阻塞版本) 的库存时发生错误: {}", id, e.getMessage(), e);
-					// 这里可以决定如何处理库存查询失败
-				}
-				return new ProductDetail(product, stock);
-			}, virtualExecutor).join(); // .join() 会阻塞当前线程直到 CompletableFuture 完成
-
-			// 关闭执行器是一个好习惯，但如果每次请求都创建，则需要小心管理
-			// virtualExecutor.shutdown(); // 如果是共享的bean，不应在这里关闭
-
-			return result;
-		} catch (ProductNotFoundException pnfe) {
-			logger.warn("产品ID: {} (阻塞版本) 未找到，重新抛出 ProductNotFoundException", id);
-			throw pnfe; // 确保自定义异常被 GlobalExceptionHandler 捕获
-		} catch (Exception e) {
-			logger.error("获取产品详情 (阻塞版本) 时发生意外错误 (产品ID: {}): {}", id, e.getMessage(), e);
-			// 对于其他在 .join() 期间可能发生的异常 (如 CompletionException)
-			throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "获取产品详情时发生错误", e);
+			// .join() 会阻塞当前线程直到 CompletableFuture 完成
+			// 共享执行器由 VirtualThreadExecutors 统一关闭，这里不应关闭
+			return loadProductDetail(id).join();
+		} catch (CompletionException e) {
+			// .join() 会把任务中的异常包装为 CompletionException，这里解包后确保 ProductNotFoundException 被 GlobalExceptionHandler 捕获
+			throw translateFailure(id, e);
+		}
+	}
+
+	/**
+	 * 根据产品ID获取产品详细信息的完全非阻塞版本（与 {@link #getProductDetails(String)} 对照）。
+	 * <ul>
+	 *     <li>产品查询仍是阻塞的 JPA 调用，被转移到受 JPA 并发许可约束的调度器上执行；</li>
+	 *     <li>库存查询通过 WebClient 非阻塞地发起，等待响应期间不占用任何线程；</li>
+	 *     <li>两者通过 Mono.zip 并行组合：产品查询失败时自动取消库存请求，库存超时或失败时降级为 "库存未知"。</li>
+	 * </ul>
+	 *
+	 * @param id 产品ID
+	 * @return ProductDetail 的 Mono
+	 */
+	@GetMapping("/reactive/{id}")
+	public Mono<ProductDetail> getProductDetailsReactive(@PathVariable String id) {
+		logger.info("接收到产品详情请求 (响应式版本)，产品ID: {}", id);
+		if (!productIdFilter.mightContain(id)) {
+			return Mono.error(new ProductNotFoundException(id));
+		}
+
+		Mono<Product> productMono = Mono.fromCallable(() -> productCache.findById(id)
+						.orElseThrow(() -> new ProductNotFoundException(id)))
+				.subscribeOn(jpaScheduler)
+				.timeout(detailDeadline);
+
+		Mono<Optional<Integer>> stockMono = stockLookupService.getStockReactive(id)
+				.timeout(detailDeadline)
+				.map(Optional::of)
+				.onErrorResume(ex -> {
+					logStockFailure(id, ex);
+					return Mono.empty();
+				})
+				.defaultIfEmpty(Optional.empty());
+
+		return Mono.zip(productMono, stockMono, (product, stock) -> stock
+						.map(value -> new ProductDetail(product, value))
+						.orElseGet(() -> degradedDetail(product)))
+				.onErrorMap(ex -> translateFailure(id, ex));
+	}
+
+	/**
+	 * 批量获取产品详细信息，例如 {@code GET /api/products?ids=a,b,c}。
+	 * 所有产品通过一次 findAllById 查询，所有库存通过一次批量库存调用获取，两者并行执行。
+	 * 找不到的产品以 NOT_FOUND 结果项单独返回，不会导致整个请求 404。
+	 *
+	 * @param ids 产品ID列表（逗号分隔），重复的ID只查询并返回一次
+	 * @return 与请求ID顺序一致的结果项列表
+	 */
+	@GetMapping(params = "ids")
+	public CompletableFuture<List<ProductDetailItem>> getProductDetailsBatch(@RequestParam("ids") List<String> ids) {
+		return loadProductDetailsBatch(ids);
+	}
+
+	/**
+	 * 批量获取产品详细信息的 POST 版本，请求体为产品ID的 JSON 数组，适用于ID较多、不便放入 URL 的场景。
+	 *
+	 * @param ids 产品ID列表
+	 * @return 与请求ID顺序一致的结果项列表
+	 */
+	@PostMapping("/batch")
+	public CompletableFuture<List<ProductDetailItem>> postProductDetailsBatch(@RequestBody List<String> ids) {
+		return loadProductDetailsBatch(ids);
+	}
+
+	private CompletableFuture<List<ProductDetailItem>> loadProductDetailsBatch(List<String> ids) {
+		List<String> distinctIds = ids.stream()
+				.filter(StringUtils::hasText)
+				.map(String::trim)
+				.distinct()
+				.toList();
+		if (distinctIds.isEmpty()) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "至少需要提供一个产品ID");
+		}
+		if (distinctIds.size() > maxBatchSize) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+					"单次最多查询 " + maxBatchSize + " 个产品，实际: " + distinctIds.size());
+		}
+		logger.info("接收到批量产品详情请求，共 {} 个产品ID", distinctIds.size());
+		long deadlineMillis = detailDeadline.toMillis();
+
+		// 一定不存在的产品ID不参与后续查询，直接作为 NOT_FOUND 返回
+		List<String> candidateIds = distinctIds.stream()
+				.filter(productIdFilter::mightContain)
+				.toList();
+		if (candidateIds.isEmpty()) {
+			return CompletableFuture.completedFuture(distinctIds.stream()
+					.map(ProductDetailItem::notFound)
+					.toList());
+		}
+
+		// 1. 缓存未命中的产品通过一次数据库往返 (findAllById) 查询
+		CompletableFuture<Map<String, Product>> productsFuture = executors.jpa().submit(() ->
+				productCache.findAllById(candidateIds));
+
+		// 2. 与之并行地一次批量调用查询所有库存（Bloom 过滤器的假阳性多查一次库存的代价可以忽略）
+		CompletableFuture<Map<String, Integer>> stocksFuture = stockLookupService.getStocksAsync(candidateIds);
+
+		productsFuture.whenComplete((products, ex) -> {
+			if (ex != null) {
+				stocksFuture.cancel(true);
+			}
+		});
+
+		CompletableFuture<Map<String, Integer>> stocksOrEmpty = stocksFuture
+				.orTimeout(deadlineMillis, TimeUnit.MILLISECONDS)
+				.exceptionally(ex -> {
+					logStockFailure(String.join(",", candidateIds), ex);
+					return Map.of();
+				});
+
+		return productsFuture
+				.orTimeout(deadlineMillis, TimeUnit.MILLISECONDS)
+				.thenCombine(stocksOrEmpty, (products, stocks) -> distinctIds.stream()
+						.map(id -> {
+							Product product = products.get(id);
+							if (product == null) {
+								return ProductDetailItem.notFound(id);
+							}
+							Integer stock = stocks == null ? null : stocks.get(id);
+							return ProductDetailItem.found(id, stock != null
+									? new ProductDetail(product, stock)
+									: degradedDetail(product));
+						})
+						.toList())
+				.exceptionally(ex -> {
+					throw translateFailure(String.join(",", distinctIds), ex);
+				});
+	}
+
+	/**
+	 * 搜索产品名称和描述（前缀匹配，适用于输入联想），按相关度排序分页返回产品详情。
+	 * 由内存倒排索引 (ProductSearchIndex) 提供候选产品，再通过批量查询补全产品信息和库存。
+	 *
+	 * @param q    查询文本
+	 * @param page 页码，从 0 开始；本页末尾不能超过 {@code showcase.product-search.max-results}
+	 * @param size 每页条数
+	 * @return 本页的产品详情
+	 */
+	@GetMapping("/search")
+	public CompletableFuture<List<ProductDetail>> searchProducts(@RequestParam String q,
+																 @RequestParam(defaultValue = "0") int page,
+																 @RequestParam(defaultValue = "20") int size) {
+		if (page < 0 || size <= 0 || size > maxBatchSize) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "页码不能为负数，每页条数必须在 1 到 " + maxBatchSize + " 之间");
+		}
+		// 以 long 计算，巨大的页码既不能溢出成负数，也不能让 top-k 的堆按页码分配内存
+		long end = Math.multiplyExact((long) page + 1, size);
+		if (end > maxSearchResults) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "搜索最多返回前 " + maxSearchResults + " 条结果");
+		}
+		int offset = page * size;
+		List<String> ranked = productSearchIndex.search(q, (int) end);
+		if (ranked.size() <= offset) {
+			return CompletableFuture.completedFuture(List.of());
+		}
+		List<String> pageIds = ranked.subList(offset, ranked.size());
+		return loadProductDetailsBatch(pageIds)
+				.thenApply(items -> items.stream()
+						.filter(item -> item.getStatus() == ProductDetailItem.Status.FOUND) // 索引与数据库之间的短暂不一致
+						.map(ProductDetailItem::getDetail)
+						.toList());
+	}
+
+	/**
+	 * 以键集分页的方式浏览产品目录，按产品ID排序，适用于爬虫等需要深度翻页的场景。
+	 *
+	 * @param pageToken  上一页返回的 nextPageToken，第一页不传
+	 * @param size       每页条数，不传时使用默认值
+	 * @param namePrefix 可选的产品名称前缀过滤
+	 * @return 一页产品及下一页的续页令牌
+	 */
+	@GetMapping("/browse")
+	public ProductPage browseProducts(@RequestParam(required = false) String pageToken,
+									  @RequestParam(required = false) Integer size,
+									  @RequestParam(required = false) String namePrefix) {
+		return productBrowseService.browse(pageToken, size, namePrefix);
+	}
+
+	/**
+	 * 以 NDJSON (application/x-ndjson) 格式流式导出整个产品目录，供下游搜索索引等系统使用。
+	 * 直接写入响应输出流，数据一边从数据库游标读出一边发送，不会把整张表加载到内存中。
+	 *
+	 * @param response HTTP 响应
+	 * @throws IOException 写出失败（例如客户端断开连接）时抛出
+	 */
+	@GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+	public void exportProducts(HttpServletResponse response) throws IOException {
+		logger.info("接收到产品目录导出请求");
+		response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+		response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+		productExportService.exportNdjson(response.getOutputStream());
+	}
+
+	/**
+	 * 并行查询产品与库存，并施加统一的截止时间。
+	 * <ul>
+	 *     <li>产品查询失败（例如 ProductNotFoundException）时，立即取消仍在进行的库存查询（中断其虚拟线程）。</li>
+	 *     <li>库存查询失败或未能在截止时间内返回时，降级为 "库存未知" 的 ProductDetail。</li>
+	 *     <li>产品查询未能在截止时间内返回时，以 TimeoutException 结束。</li>
+	 * </ul>
+	 *
+	 * @param id 产品ID
+	 * @return 产品详情的 future
+	 */
+	private CompletableFuture<ProductDetail> loadProductDetail(String id) {
+		// 0. 一定不存在的产品ID（爬虫、失效链接等）直接失败，不占用 JPA 许可、不发起库存调用
+		if (!productIdFilter.mightContain(id)) {
+			logger.debug("产品ID: {} 被 Bloom 过滤器拒绝", id);
+			return CompletableFuture.failedFuture(new ProductNotFoundException(id));
+		}
+		long deadlineMillis = detailDeadline.toMillis();
+
+		// 1. 查询产品基本信息 (受 JPA 并发许可约束)
+		CompletableFuture<Product> productFuture = executors.jpa().submit(() -> {
+			logger.info("虚拟线程 {} 开始查询产品ID: {}", Thread.currentThread(), id);
+			return productCache.findById(id)
+					.orElseThrow(() -> {
+						// 404 是常态流量，只在 debug 级别记录
+						logger.debug("产品ID: {} 未找到，将抛出 ProductNotFoundException", id);
+						return new ProductNotFoundException(id); // 由 GlobalExceptionHandler 处理
+					});
+		});
+
+		// 2. 与产品查询并行地查询库存信息 (同一产品的并发查询合并为一次远程调用，受库存服务并发许可约束)
+		CompletableFuture<Integer> stockFuture = stockLookupService.getStockAsync(id);
+
+		// 产品查询失败时结果已经确定，取消本请求对库存结果的等待（不会中断与其他请求共享的远程调用）
+		productFuture.whenComplete((product, ex) -> {
+			if (ex != null) {
+				stockFuture.cancel(true);
+			}
+		});
+
+		CompletableFuture<Integer> stockOrUnknown = stockFuture
+				.orTimeout(deadlineMillis, TimeUnit.MILLISECONDS) // 超时后提前完成 future，并中断仍在等待的库存调用
+				.exceptionally(ex -> {
+					// 库存服务失败、超时或被熔断不影响产品信息的返回，降级为最后已知库存或 "库存未知"
+					logStockFailure(id, ex);
+					return null;
+				});
+
+		return productFuture
+				.orTimeout(deadlineMillis, TimeUnit.MILLISECONDS)
+				.thenCombine(stockOrUnknown, (product, stock) -> {
+					logger.info("产品ID: {} 查询完成: {}, 库存: {}", id, product.getName(), stock);
+					return stock != null ? new ProductDetail(product, stock) : degradedDetail(product);
+				});
+	}
+
+	/**
+	 * 库存服务不可用时的降级结果：有最后已知库存时返回它并标记为过期，否则返回 "库存未知"。
+	 */
+	private ProductDetail degradedDetail(Product product) {
+		return stockLookupService.getLastKnownStock(product.getId())
+				.map(stock -> ProductDetail.withStaleStock(product, stock))
+				.orElseGet(() -> ProductDetail.withUnknownStock(product));
+	}
+
+	private static void logStockFailure(String ids, Throwable ex) {
+		Throwable cause = unwrap(ex);
+		if (cause instanceof CircuitBreaker.CallNotPermittedException) {
+			// 熔断期间每个请求都会走到这里，熔断器本身已经记录了状态变化
+			logger.debug("产品ID: {} 的库存查询被熔断器拒绝，返回降级库存", ids);
+		} else {
+			logger.warn("产品ID: {} 的库存查询失败或超时，返回降级库存: {}", ids, cause.toString());
+		}
+	}
+
+	/**
+	 * 仅根据缓存中的产品与库存计算 ETag，任意一项不在缓存中时返回 null。
+	 */
+	private String cachedEtag(String id) {
+		return productCache.getIfPresent(id)
+				.flatMap(product -> stockLookupService.getCachedStock(id)
+						.map(stock -> ProductDetail.etagOf(product, stock)))
+				.orElse(null);
+	}
+
+	private static ResponseEntity<ProductDetail> notModified(String etag) {
+		return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+				.eTag(etag)
+				.cacheControl(CacheControl.noCache())
+				.build();
+	}
+
+	/**
+	 * 判断 If-None-Match 请求头是否与 ETag 匹配。按 RFC 9110 使用弱比较：忽略 {@code W/} 前缀，支持逗号分隔的多个值和 {@code *}。
+	 */
+	private static boolean etagMatches(String ifNoneMatch, String etag) {
+		for (String candidate : ifNoneMatch.split(",")) {
+			String value = candidate.trim();
+			if (value.startsWith("W/")) {
+				value = value.substring(2);
+			}
+			if (value.equals("*") || value.equals(etag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 把异步任务中的异常转换为由 Spring 异常处理机制处理的异常。
+	 */
+	private RuntimeException translateFailure(String id, Throwable ex) {
+		Throwable cause = unwrap(ex);
+		if (cause instanceof ProductNotFoundException pnfe) {
+			return pnfe; // 重新抛出，让 GlobalExceptionHandler 返回 404 ProblemDetail
+		}
+		if (cause instanceof TimeoutException) {
+			logger.warn("产品ID: {} 的查询未能在 {} 内完成", id, detailDeadline);
+			return new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT, "获取产品详情超时", cause);
+		}
+		// 对于其他类型的异常，转换为 500
+		logger.error("处理产品详情请求时发生异步异常 (产品ID: {}): {}", id, cause.getMessage(), cause);
+		return new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "获取产品详情时发生内部错误", cause);
+	}
+
+	private static Throwable unwrap(Throwable ex) {
+		Throwable current = ex;
+		while ((current instanceof CompletionException || current instanceof ExecutionException)
+				&& current.getCause() != null) {
+			current = current.getCause();
 		}
+		return current;
 	}
 }
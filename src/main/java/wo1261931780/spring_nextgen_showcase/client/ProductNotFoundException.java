@@ -40,18 +40,22 @@ package wo1261931780.spring_nextgen_showcase.client;
  * }
  * </pre>
  * </p>
+ * <p>
+ * 不存在的产品ID（爬虫、失效链接等）是常态流量而不是程序错误，因此此异常不填充堆栈、不可抑制，
+ * 创建成本与普通对象相当；需要定位问题时请依据日志中的产品ID而不是堆栈。
+ * </p>
  */
 public class ProductNotFoundException extends RuntimeException {
 
 	private final String productId;
 
 	public ProductNotFoundException(String productId) {
-		super("未能找到产品，ID: " + productId); // 调用父类构造函数设置异常消息
+		super("未能找到产品，ID: " + productId, null, false, false); // 设置异常消息，关闭抑制与堆栈填充
 		this.productId = productId;
 	}
 
 	public ProductNotFoundException(String productId, Throwable cause) {
-		super("未能找到产品，ID: " + productId, cause);
+		super("未能找到产品，ID: " + productId, cause, false, false);
 		this.productId = productId;
 	}
 
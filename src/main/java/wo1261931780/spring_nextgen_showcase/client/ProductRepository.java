@@ -1,10 +1,17 @@
 package wo1261931780.spring_nextgen_showcase.client;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 import wo1261931780.spring_nextgen_showcase.entity.Product;
 
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * Spring Data JPA Repository 接口，用于 Product 实体的数据库操作。
@@ -22,8 +29,64 @@ import java.util.Optional;
 @Repository
 public interface ProductRepository extends JpaRepository<Product, String> { // Product 的主键类型是 String
 
+	/**
+	 * {@link #streamAllOrderById()} 每次从数据库抓取的行数。
+	 */
+	int STREAM_FETCH_SIZE = 500;
+
+	/**
+	 * 按ID顺序以流的方式读取全部产品，底层是只进 (forward-only) 的数据库游标，
+	 * 每次从数据库抓取 {@link #STREAM_FETCH_SIZE} 行，而不是一次性把整张表加载到内存。
+	 * <p>
+	 * 必须在事务中调用，并在使用完毕后关闭返回的 Stream（推荐 try-with-resources）。
+	 * 实体以只读方式加载，调用方应在处理完每个实体后将其从持久化上下文中 detach，以保持堆占用平稳。
+	 * </p>
+	 *
+	 * @return 产品流
+	 */
+	@QueryHints({
+			@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + STREAM_FETCH_SIZE),
+			@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+			@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "false")
+	})
+	@Query("select p from Product p order by p.id")
+	Stream<Product> streamAllOrderById();
+
+	/**
+	 * 以流的方式读取全部产品ID（只查询主键列），用于构建产品ID的 Bloom 过滤器等。
+	 * 与 {@link #streamAllOrderById()} 一样必须在事务中调用并在使用后关闭。
+	 *
+	 * @return 产品ID流
+	 */
+	@QueryHints({
+			@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + STREAM_FETCH_SIZE),
+			@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+	})
+	@Query("select p.id from Product p")
+	Stream<String> streamAllIds();
+
+	/**
+	 * 键集 (keyset) 分页：返回ID大于 afterId 的下一页产品，按ID升序。
+	 * 利用主键索引直接定位到上一页的末尾，无论翻到多深，查询代价都保持不变（不同于 OFFSET 分页需要扫描并丢弃前面的所有行）。
+	 *
+	 * @param afterId 上一页最后一个产品的ID，第一页传空字符串
+	 * @param limit   本页最多返回的条数
+	 * @return 本页产品
+	 */
+	List<Product> findByIdGreaterThanOrderByIdAsc(String afterId, Limit limit);
+
+	/**
+	 * 带名称前缀过滤的键集分页，语义同 {@link #findByIdGreaterThanOrderByIdAsc(String, Limit)}。
+	 *
+	 * @param afterId    上一页最后一个产品的ID，第一页传空字符串
+	 * @param namePrefix 产品名称前缀
+	 * @param limit      本页最多返回的条数
+	 * @return 本页产品
+	 */
+	List<Product> findByIdGreaterThanAndNameStartingWithOrderByIdAsc(String afterId, String namePrefix, Limit limit);
+
 	// JpaRepository 已经提供了 findById(ID id) 方法，返回 Optional<Product>
 	// 你可以在这里根据需要添加自定义的查询方法，例如：
-	// List<Product> findByNameContainingIgnoreCase(String name);
+	// List<Product> findByNameContainingIgnoreCase(String name); // 名称/描述搜索请使用 ProductSearchIndex (内存倒排索引)
 	// Optional<Product> findBySku(String sku);
 }
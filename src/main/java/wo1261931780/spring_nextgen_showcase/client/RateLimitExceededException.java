@@ -0,0 +1,41 @@
+package wo1261931780.spring_nextgen_showcase.client;
+
+import java.io.Serial;
+import java.time.Duration;
+
+/**
+ * 客户端超出请求速率限额时抛出的异常，由 GlobalExceptionHandler 转换为带 Retry-After 的 429 ProblemDetail 响应。
+ * @author junw
+ */
+public class RateLimitExceededException extends RuntimeException {
+
+	@Serial
+	private static final long serialVersionUID = 1L;
+
+	private final String client;
+	private final Duration retryAfter;
+
+	public RateLimitExceededException(String client, Duration retryAfter) {
+		super("客户端 " + client + " 的请求过于频繁，请在 " + retryAfter.toMillis() + " ms 后重试", null, false, false);
+		this.client = client;
+		this.retryAfter = retryAfter;
+	}
+
+	/**
+	 * 获取被限流的客户端。
+	 *
+	 * @return 客户端名称
+	 */
+	public String getClient() {
+		return client;
+	}
+
+	/**
+	 * 获取客户端最早可以重试的等待时间。
+	 *
+	 * @return 等待时间
+	 */
+	public Duration getRetryAfter() {
+		return retryAfter;
+	}
+}
@@ -0,0 +1,13 @@
+package wo1261931780.spring_nextgen_showcase.client;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import wo1261931780.spring_nextgen_showcase.entity.StockLevel;
+
+/**
+ * Spring Data JPA Repository 接口，用于 StockLevel 实体（库存计数器的持久化副本）的数据库操作。
+ * @author junw
+ */
+@Repository
+public interface StockLevelRepository extends JpaRepository<StockLevel, String> {
+}
@@ -1,8 +1,20 @@
 package wo1261931780.spring_nextgen_showcase.client;
 
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.service.annotation.GetExchange;
 import org.springframework.web.service.annotation.HttpExchange;
+import org.springframework.web.service.annotation.PostExchange;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import wo1261931780.spring_nextgen_showcase.entity.StockChange;
+import wo1261931780.spring_nextgen_showcase.entity.StockSnapshot;
+
+import java.util.Collection;
+import java.util.Map;
 
 /**
  * 声明式的库存服务 HTTP 客户端接口。
@@ -38,6 +50,44 @@ public interface StockServiceClient {
 	@GetExchange("/{productId}")
 	Integer getStock(@PathVariable("productId") String productId);
 
+	/**
+	 * 根据产品ID获取库存数量的非阻塞版本，不占用线程等待响应。
+	 * 与 {@link #getStock(String)} 请求同一个端点，供响应式的产品详情流程使用。
+	 *
+	 * @param productId 产品ID
+	 * @return 库存数量的 Mono
+	 */
+	@GetExchange("/{productId}")
+	Mono<Integer> getStockReactive(@PathVariable("productId") String productId);
+
+	/**
+	 * 批量获取多个产品的库存数量，一次 HTTP 往返代替 N 次单个查询。
+	 * 对应的 HTTP POST 请求会发往 <baseUrl>/api/stock/batch，请求体为产品ID的 JSON 数组。
+	 *
+	 * @param productIds 产品ID集合
+	 * @return 产品ID到库存数量的映射；库存服务不认识的产品ID不会出现在结果中
+	 */
+	@PostExchange("/batch")
+	Map<String, Integer> getStocks(@RequestBody Collection<String> productIds);
+
+	/**
+	 * 获取全部库存的快照及其对应的变更序号，用于初始化或重新同步本地库存副本。
+	 *
+	 * @return 库存快照
+	 */
+	@GetExchange("/snapshot")
+	StockSnapshot getSnapshot();
+
+	/**
+	 * 订阅库存变更流 (Server-Sent Events)：先回放序号大于 after 的历史变更，之后持续推送新的变更。
+	 * 库存服务已不再保留 after 之后的全部变更时返回 410 Gone，订阅方需要重新获取快照。
+	 *
+	 * @param after 已经应用的最后一个变更序号
+	 * @return 库存变更事件流
+	 */
+	@GetExchange(url = "/changes", accept = MediaType.TEXT_EVENT_STREAM_VALUE)
+	Flux<ServerSentEvent<StockChange>> streamChanges(@RequestParam("after") long after);
+
 	// 你可以根据需要添加其他库存相关的API方法，例如：
 	// @PostExchange("/{productId}/decrease")
 	// void decreaseStock(@PathVariable("productId") String productId, @RequestParam("amount") int amount);
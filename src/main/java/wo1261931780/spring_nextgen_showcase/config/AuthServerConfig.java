@@ -9,6 +9,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
 import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -73,9 +74,14 @@ public class AuthServerConfig {
 		http.with(new OAuth2AuthorizationServerConfigurer(), Customizer.withDefaults());
 
 		// 2. 获取已应用的 configurer 实例以进行进一步的自定义，例如启用 OIDC
-		http.getConfigurer(OAuth2AuthorizationServerConfigurer.class)
+		OAuth2AuthorizationServerConfigurer authorizationServerConfigurer =
+				http.getConfigurer(OAuth2AuthorizationServerConfigurer.class);
+		authorizationServerConfigurer
 				.oidc(Customizer.withDefaults());   // 启用OIDC UserInfo 端点和 Client Registration 端点等
 
+		// 本过滤器链只处理授权服务器的协议端点，其他请求（包括 /api/**）交给 defaultSecurityFilterChain
+		http.securityMatcher(authorizationServerConfigurer.getEndpointsMatcher());
+
 		http
 				// 当未认证时，重定向到登录页面 (通常是从 /oauth2/authorize 端点)
 				.exceptionHandling(exceptions -> exceptions
@@ -106,8 +112,14 @@ public class AuthServerConfig {
 		http
 				.authorizeHttpRequests(authorize -> authorize
 						.requestMatchers("/login", "/error", "/webjars/**", "/css/**", "/js/**").permitAll() // 允许访问登录页面、错误页和静态资源
+						// 本地库存服务桩 (StockStubController) 中由服务内部的 StockServiceClient 调用的只读端点；
+						// 修改库存的 PUT /api/stock/{productId} 与 /api/stock/stub/** 仍然需要认证
+						.requestMatchers(HttpMethod.GET, "/api/stock/snapshot", "/api/stock/changes", "/api/stock/{productId}").permitAll()
+						.requestMatchers(HttpMethod.POST, "/api/stock/batch").permitAll()
 						.anyRequest().authenticated() // 其他所有请求都需要认证
 				)
+				// 库存服务桩的 POST /api/stock/batch（批量查询）由服务间调用发起，不携带 CSRF token
+				.csrf(csrf -> csrf.ignoringRequestMatchers("/api/stock/batch"))
 				// 配置表单登录
 				.formLogin(formLogin -> formLogin
 						.loginPage("/login") // 指定自定义登录页面的路径 (如果需要，否则使用默认)
@@ -0,0 +1,299 @@
+package wo1261931780.spring_nextgen_showcase.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Serial;
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 面向单个下游依赖的熔断器 + 舱壁 (bulkhead)。
+ * <p>
+ * 熔断器基于最近 {@code windowSize} 次调用的滑动窗口（按调用次数计）：
+ * <ul>
+ *     <li>CLOSED：正常放行；窗口内至少有 {@code minimumCalls} 次调用且失败率达到阈值时转为 OPEN；</li>
+ *     <li>OPEN：立即拒绝所有调用，经过 {@code openDuration} 后转为 HALF_OPEN；</li>
+ *     <li>HALF_OPEN：只放行 {@code halfOpenCalls} 次试探调用，全部成功则转为 CLOSED，任意一次失败则重新 OPEN。</li>
+ * </ul>
+ * 超时（{@code callTimeout}）计为失败；调用方主动取消的调用不计入窗口。
+ * </p>
+ * <p>
+ * 舱壁限制同时在途的调用数，超过 {@code maxConcurrentCalls} 时立即拒绝而不是排队，
+ * 避免下游变慢时虚拟线程在其后无限堆积。
+ * </p>
+ * <p>
+ * 指标（均带 {@code name} 标签）：{@code circuit.breaker.state}（0=CLOSED, 1=OPEN, 2=HALF_OPEN）、
+ * {@code circuit.breaker.rejected{reason=open|bulkhead}}、{@code circuit.breaker.calls{outcome=success|failure}}。
+ * </p>
+ * @author junw
+ */
+public class CircuitBreaker {
+
+	private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private final String name;
+	private final int minimumCalls;
+	private final int failureRateThreshold;
+	private final long openDurationNanos;
+	private final int halfOpenCalls;
+	private final Duration callTimeout;
+	private final Semaphore bulkhead;
+
+	// 以下字段由 this 保护；state 另外是 volatile，以便 CLOSED 状态下无锁地快速放行
+	private final boolean[] window; // true 表示失败
+	private int windowIndex;
+	private int windowCount;
+	private int windowFailures;
+	private volatile State state = State.CLOSED;
+	private long openedAt;
+	private int halfOpenPermits;
+	private int halfOpenSuccesses;
+
+	private final MeterRegistry meterRegistry;
+	private final Counter successCounter;
+	private final Counter failureCounter;
+	private final Counter rejectedOpenCounter;
+	private final Counter rejectedBulkheadCounter;
+
+	public CircuitBreaker(String name, int windowSize, int minimumCalls, int failureRateThreshold,
+						  Duration openDuration, int halfOpenCalls, int maxConcurrentCalls, Duration callTimeout,
+						  MeterRegistry meterRegistry) {
+		if (windowSize <= 0 || halfOpenCalls <= 0 || maxConcurrentCalls <= 0) {
+			throw new IllegalArgumentException("熔断器 " + name + " 的窗口大小、试探调用数与最大并发调用数必须大于 0");
+		}
+		this.name = name;
+		this.window = new boolean[windowSize];
+		this.minimumCalls = Math.min(minimumCalls, windowSize);
+		this.failureRateThreshold = failureRateThreshold;
+		this.openDurationNanos = openDuration.toNanos();
+		this.halfOpenCalls = halfOpenCalls;
+		this.callTimeout = callTimeout;
+		this.bulkhead = new Semaphore(maxConcurrentCalls);
+		this.meterRegistry = meterRegistry;
+		this.successCounter = callCounter(meterRegistry, "success");
+		this.failureCounter = callCounter(meterRegistry, "failure");
+		this.rejectedOpenCounter = rejectedCounter(meterRegistry, "open");
+		this.rejectedBulkheadCounter = rejectedCounter(meterRegistry, "bulkhead");
+	}
+
+	/**
+	 * 构造完成后再注册读取本对象状态的仪表。
+	 */
+	@PostConstruct
+	void registerGauges() {
+		Gauge.builder("circuit.breaker.state", this, breaker -> breaker.state.ordinal())
+				.description("Circuit breaker state: 0=closed, 1=open, 2=half-open.")
+				.tag("name", name)
+				.register(meterRegistry);
+		Gauge.builder("circuit.breaker.bulkhead.available", bulkhead, Semaphore::availablePermits)
+				.description("Remaining concurrent calls allowed by the bulkhead.")
+				.tag("name", name)
+				.register(meterRegistry);
+	}
+
+	private Counter callCounter(MeterRegistry meterRegistry, String outcome) {
+		return Counter.builder("circuit.breaker.calls")
+				.description("Calls that went through the circuit breaker, by outcome.")
+				.tag("name", name)
+				.tag("outcome", outcome)
+				.register(meterRegistry);
+	}
+
+	private Counter rejectedCounter(MeterRegistry meterRegistry, String reason) {
+		return Counter.builder("circuit.breaker.rejected")
+				.description("Calls rejected without reaching the downstream, by reason.")
+				.tag("name", name)
+				.tag("reason", reason)
+				.register(meterRegistry);
+	}
+
+	/**
+	 * 在熔断器与舱壁的保护下发起一次异步调用，并施加 {@code callTimeout} 超时。
+	 * <p>
+	 * 返回的就是 call 返回的 future 本身，因此调用方取消它会照常取消（中断）底层调用。
+	 * 被拒绝时返回以 {@link CallNotPermittedException} 结束的 future，不会发起调用。
+	 * </p>
+	 *
+	 * @param call 发起调用的函数
+	 * @param <T>  结果类型
+	 * @return 调用结果的 future
+	 */
+	public <T> CompletableFuture<T> execute(Supplier<CompletableFuture<T>> call) {
+		if (!tryAcquirePermission()) {
+			return CompletableFuture.failedFuture(new CallNotPermittedException(name, state));
+		}
+		CompletableFuture<T> future;
+		try {
+			future = call.get();
+		} catch (RuntimeException e) {
+			onFailure();
+			return CompletableFuture.failedFuture(e);
+		}
+		future.orTimeout(callTimeout.toMillis(), TimeUnit.MILLISECONDS)
+				.whenComplete((result, ex) -> {
+					if (ex == null) {
+						onSuccess();
+					} else if (ex instanceof CancellationException) {
+						onIgnored();
+					} else {
+						onFailure();
+					}
+				});
+		return future;
+	}
+
+	/**
+	 * 申请一次调用许可（同时占用一个舱壁名额）。获得许可后必须以
+	 * {@link #onSuccess()}、{@link #onFailure()} 或 {@link #onIgnored()} 之一结束。
+	 *
+	 * @return 是否允许调用
+	 */
+	public boolean tryAcquirePermission() {
+		if (!bulkhead.tryAcquire()) {
+			rejectedBulkheadCounter.increment();
+			return false;
+		}
+		if (!acquireCallPermission()) {
+			bulkhead.release();
+			rejectedOpenCounter.increment();
+			return false;
+		}
+		return true;
+	}
+
+	private boolean acquireCallPermission() {
+		if (state == State.CLOSED) {
+			return true;
+		}
+		synchronized (this) {
+			if (state == State.OPEN) {
+				if (System.nanoTime() - openedAt < openDurationNanos) {
+					return false;
+				}
+				transitionTo(State.HALF_OPEN);
+				halfOpenPermits = halfOpenCalls;
+				halfOpenSuccesses = 0;
+			}
+			if (state == State.HALF_OPEN) {
+				if (halfOpenPermits == 0) {
+					return false;
+				}
+				halfOpenPermits--;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * 记录一次成功的调用。
+	 */
+	public void onSuccess() {
+		bulkhead.release();
+		successCounter.increment();
+		synchronized (this) {
+			if (state == State.HALF_OPEN) {
+				if (++halfOpenSuccesses >= halfOpenCalls) {
+					transitionTo(State.CLOSED);
+				}
+			} else if (state == State.CLOSED) {
+				record(false);
+			}
+		}
+	}
+
+	/**
+	 * 记录一次失败（包括超时）的调用。
+	 */
+	public void onFailure() {
+		bulkhead.release();
+		failureCounter.increment();
+		synchronized (this) {
+			if (state == State.HALF_OPEN) {
+				transitionTo(State.OPEN);
+			} else if (state == State.CLOSED) {
+				record(true);
+				if (windowCount >= minimumCalls && windowFailures * 100 >= failureRateThreshold * windowCount) {
+					transitionTo(State.OPEN);
+				}
+			}
+		}
+	}
+
+	/**
+	 * 调用被调用方取消，结果既不算成功也不算失败，只归还许可。
+	 */
+	public void onIgnored() {
+		bulkhead.release();
+		synchronized (this) {
+			if (state == State.HALF_OPEN && halfOpenPermits < halfOpenCalls) {
+				halfOpenPermits++;
+			}
+		}
+	}
+
+	private void record(boolean failure) {
+		if (windowCount == window.length) {
+			if (window[windowIndex]) {
+				windowFailures--;
+			}
+		} else {
+			windowCount++;
+		}
+		window[windowIndex] = failure;
+		if (failure) {
+			windowFailures++;
+		}
+		windowIndex = (windowIndex + 1) % window.length;
+	}
+
+	private void transitionTo(State newState) {
+		State previous = state;
+		state = newState;
+		if (newState == State.OPEN) {
+			openedAt = System.nanoTime();
+			logger.warn("熔断器 {} 打开 (之前为 {}，窗口内失败 {}/{})，{} ms 内快速失败",
+					name, previous, windowFailures, windowCount, TimeUnit.NANOSECONDS.toMillis(openDurationNanos));
+		} else {
+			logger.info("熔断器 {}: {} -> {}", name, previous, newState);
+		}
+		if (newState == State.CLOSED) {
+			windowIndex = 0;
+			windowCount = 0;
+			windowFailures = 0;
+		}
+	}
+
+	public State getState() {
+		return state;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * 熔断器打开或舱壁已满时拒绝调用所使用的异常。属于预期内的快速失败，不填充堆栈。
+	 */
+	public static class CallNotPermittedException extends RuntimeException {
+
+		@Serial
+		private static final long serialVersionUID = 1L;
+
+		public CallNotPermittedException(String name, State state) {
+			super("熔断器 " + name + " 拒绝了调用 (状态: " + state + ")", null, false, false);
+		}
+	}
+}
@@ -0,0 +1,175 @@
+package wo1261931780.spring_nextgen_showcase.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * 面向单个下游依赖（例如 JPA、库存服务）的有界执行器。
+ * <p>
+ * 任务运行在共享的虚拟线程执行器上，但同一时刻最多只有 {@code permits} 个任务真正访问下游，
+ * 其余任务在虚拟线程中排队等待许可（阻塞虚拟线程的代价很低），从而对下游形成背压。
+ * </p>
+ * <p>
+ * 同时注册两个 Micrometer Gauge：
+ * {@code executor.downstream.active}（持有许可正在执行的任务数）和
+ * {@code executor.downstream.queued}（已提交但仍在等待许可的任务数），均带有 {@code downstream} 标签。
+ * </p>
+ * @author junw
+ */
+public class DownstreamExecutor implements Executor {
+
+	private final String name;
+	private final ExecutorService sharedExecutor;
+	private final Semaphore permits;
+	private final AtomicInteger active = new AtomicInteger();
+	private final AtomicInteger queued = new AtomicInteger();
+
+	DownstreamExecutor(String name, int permits, ExecutorService sharedExecutor, MeterRegistry meterRegistry) {
+		if (permits <= 0) {
+			throw new IllegalArgumentException("下游 " + name + " 的并发许可数必须大于 0: " + permits);
+		}
+		this.name = name;
+		this.sharedExecutor = sharedExecutor;
+		this.permits = new Semaphore(permits, true); // 公平模式，避免排队任务被饿死
+
+		Gauge.builder("executor.downstream.active", active, AtomicInteger::get)
+				.description("Tasks currently holding a permit for the downstream.")
+				.tag("downstream", name)
+				.register(meterRegistry);
+		Gauge.builder("executor.downstream.queued", queued, AtomicInteger::get)
+				.description("Tasks submitted but still waiting for a downstream permit.")
+				.tag("downstream", name)
+				.register(meterRegistry);
+	}
+
+	/**
+	 * 在共享虚拟线程执行器上异步执行任务，执行前先获取本下游的许可。
+	 * 可直接作为 {@code CompletableFuture.supplyAsync(supplier, executor)} 的 executor 参数使用。
+	 *
+	 * @param command 要执行的任务
+	 * @throws RejectedExecutionException 共享执行器已关闭时抛出
+	 */
+	@Override
+	public void execute(Runnable command) {
+		queued.incrementAndGet();
+		try {
+			sharedExecutor.execute(() -> {
+				// CompletableFuture 依赖 command 一定被执行才会完成，因此这里不可中断地等待许可
+				permits.acquireUninterruptibly();
+				runHoldingPermit(command);
+			});
+		} catch (RejectedExecutionException e) {
+			queued.decrementAndGet();
+			throw e;
+		}
+	}
+
+	/**
+	 * 在当前线程中同步执行任务，但同样受本下游的许可数约束。
+	 * 适用于已经运行在虚拟线程中、只需要对某个下游调用限流的场景。
+	 *
+	 * @param task 要执行的任务
+	 * @return 任务结果
+	 */
+	public <T> T call(Supplier<T> task) {
+		queued.incrementAndGet();
+		try {
+			permits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RejectedExecutionException("等待下游 " + name + " 的许可时被中断", e);
+		} finally {
+			queued.decrementAndGet();
+		}
+		active.incrementAndGet();
+		try {
+			return task.get();
+		} finally {
+			active.decrementAndGet();
+			permits.release();
+		}
+	}
+
+	/**
+	 * 异步执行任务，返回的 CompletableFuture 与执行它的虚拟线程 "捆绑"。
+	 * 与 {@link #execute(Runnable)} 不同，取消返回的 future（或被 orTimeout 等方式提前完成）
+	 * 会中断仍在运行或仍在等待许可的虚拟线程，使下游调用能够被及时取消。
+	 *
+	 * @param task 要执行的任务
+	 * @return 任务结果的 future
+	 */
+	public <T> CompletableFuture<T> submit(Supplier<T> task) {
+		CompletableFuture<T> result = new CompletableFuture<>();
+		AtomicReference<Thread> runner = new AtomicReference<>();
+		queued.incrementAndGet();
+		try {
+			sharedExecutor.execute(() -> {
+				runner.set(Thread.currentThread());
+				try {
+					if (result.isDone()) {
+						queued.decrementAndGet(); // 排队期间已被取消，无需再占用许可
+						return;
+					}
+					try {
+						permits.acquire();
+					} catch (InterruptedException e) {
+						queued.decrementAndGet();
+						result.completeExceptionally(e); // 通常 result 已被取消，这里只是兜底
+						return;
+					}
+					runHoldingPermit(() -> {
+						try {
+							result.complete(task.get());
+						} catch (Throwable ex) {
+							result.completeExceptionally(ex);
+						}
+					});
+				} finally {
+					runner.set(null);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			queued.decrementAndGet();
+			throw e;
+		}
+		result.whenComplete((value, ex) -> {
+			Thread worker = runner.get();
+			if (worker != null && worker != Thread.currentThread()) {
+				worker.interrupt(); // 由外部提前完成（取消/超时）时中断仍在工作的虚拟线程
+			}
+		});
+		return result;
+	}
+
+	private void runHoldingPermit(Runnable command) {
+		queued.decrementAndGet();
+		active.incrementAndGet();
+		try {
+			command.run();
+		} finally {
+			active.decrementAndGet();
+			permits.release();
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getActiveCount() {
+		return active.get();
+	}
+
+	public int getQueuedCount() {
+		return queued.get();
+	}
+}
@@ -0,0 +1,153 @@
+package wo1261931780.spring_nextgen_showcase.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import wo1261931780.spring_nextgen_showcase.client.RateLimitExceededException;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * 按客户端限流的令牌桶，以 GCRA (Generic Cell Rate Algorithm) 实现。
+ * <p>
+ * 每个客户端的桶只有一个 AtomicLong：理论到达时间 (TAT)。速率为 r、突发为 b 时，
+ * 每个请求把 TAT 推后 1/r，TAT 超前当前时间不超过 b/r 时放行，否则拒绝并返回需要等待的时间。
+ * 判断与更新是一次 CAS，不加锁，也不需要后台线程补充令牌，与 "每秒补充 r 个、最多存 b 个" 的令牌桶等价。
+ * </p>
+ * <p>
+ * 桶保存在有容量上限 ({@code maxClients}) 的 Caffeine 缓存中，空闲超过 {@code idleTimeout} 的桶被淘汰。
+ * 空闲时间不短于把突发额度完全恢复所需的时间 (b/r)，因此淘汰的桶都已恢复满额，重新创建的桶与之等价；
+ * 只有按容量淘汰仍在使用的桶时，该客户端会多得到一次突发额度。
+ * </p>
+ * <p>
+ * 指标（均带 {@code name} 标签）：{@code rate.limit.requests{result=allowed|rejected}}、{@code rate.limit.buckets}。
+ * </p>
+ * @author junw
+ */
+public class GcraRateLimiter {
+
+	private final String name;
+	private final boolean enabled;
+	private final Function<String, RateLimitProperties.Limit> limits;
+	private final LongSupplier ticker;
+	private final Cache<String, Bucket> buckets;
+
+	private final Counter allowedCounter;
+	private final Counter rejectedCounter;
+
+	public GcraRateLimiter(String name, RateLimitProperties properties, MeterRegistry meterRegistry) {
+		this(name, properties, meterRegistry, System::nanoTime);
+	}
+
+	GcraRateLimiter(String name, RateLimitProperties properties, MeterRegistry meterRegistry, LongSupplier ticker) {
+		this.name = name;
+		this.enabled = properties.isEnabled();
+		this.limits = properties::limitFor;
+		this.ticker = ticker;
+		new Bucket(properties.getDefaultLimit(), 0); // 启动时校验限额，而不是在第一个请求时失败
+		Duration idleTimeout = properties.getIdleTimeout();
+		for (RateLimitProperties.Limit limit : properties.getClients().values()) {
+			new Bucket(limit, 0);
+			idleTimeout = max(idleTimeout, refillTime(limit));
+		}
+		this.buckets = Caffeine.newBuilder()
+				.maximumSize(properties.getMaxClients())
+				.expireAfterAccess(max(idleTimeout, refillTime(properties.getDefaultLimit())))
+				.build();
+
+		this.allowedCounter = requestCounter(meterRegistry, name, "allowed");
+		this.rejectedCounter = requestCounter(meterRegistry, name, "rejected");
+		Gauge.builder("rate.limit.buckets", buckets, Cache::estimatedSize)
+				.description("Clients with a rate limit bucket in memory.")
+				.tag("name", name)
+				.register(meterRegistry);
+	}
+
+	private static Counter requestCounter(MeterRegistry meterRegistry, String name, String result) {
+		return Counter.builder("rate.limit.requests")
+				.description("Rate limited requests by outcome.")
+				.tag("name", name)
+				.tag("result", result)
+				.register(meterRegistry);
+	}
+
+	/**
+	 * 为客户端的一个请求取得许可。
+	 *
+	 * @param client 客户端名称
+	 * @throws RateLimitExceededException 客户端超出限额时抛出，包含最早可以重试的等待时间
+	 */
+	public void acquire(String client) {
+		long waitNanos = tryAcquire(client);
+		if (waitNanos > 0) {
+			throw new RateLimitExceededException(client, Duration.ofNanos(waitNanos));
+		}
+	}
+
+	/**
+	 * 尝试为客户端的一个请求取得许可。
+	 *
+	 * @param client 客户端名称
+	 * @return 0 表示放行（关闭限流时总是放行）；否则为需要等待的纳秒数（请求被拒绝，不消耗额度）
+	 */
+	public long tryAcquire(String client) {
+		if (!enabled) {
+			return 0;
+		}
+		Bucket bucket = buckets.get(client, key -> new Bucket(limits.apply(key), ticker.getAsLong()));
+		long waitNanos = bucket.tryAcquire(ticker.getAsLong());
+		(waitNanos == 0 ? allowedCounter : rejectedCounter).increment();
+		return waitNanos;
+	}
+
+	@Override
+	public String toString() {
+		return "GcraRateLimiter{" + name + ", buckets=" + buckets.estimatedSize() + '}';
+	}
+
+	private static Duration refillTime(RateLimitProperties.Limit limit) {
+		return Duration.ofNanos((long) Math.ceil(limit.getBurst() * 1e9 / limit.getPermitsPerSecond()));
+	}
+
+	private static Duration max(Duration a, Duration b) {
+		return a.compareTo(b) >= 0 ? a : b;
+	}
+
+	/**
+	 * 一个客户端的桶。
+	 */
+	static final class Bucket {
+
+		private final long emissionIntervalNanos; // 1/r
+		private final long toleranceNanos;        // b/r，TAT 最多超前当前时间的量
+		private final AtomicLong theoreticalArrival;
+
+		Bucket(RateLimitProperties.Limit limit, long now) {
+			if (limit.getPermitsPerSecond() <= 0 || limit.getBurst() <= 0) {
+				throw new IllegalArgumentException("限流速率与突发数必须大于 0: " + limit);
+			}
+			this.emissionIntervalNanos = Math.max(1, (long) (1e9 / limit.getPermitsPerSecond()));
+			this.toleranceNanos = emissionIntervalNanos * limit.getBurst();
+			this.theoreticalArrival = new AtomicLong(now);
+		}
+
+		long tryAcquire(long now) {
+			while (true) {
+				long tat = theoreticalArrival.get();
+				long next = (tat - now > 0 ? tat : now) + emissionIntervalNanos;
+				long excess = next - now - toleranceNanos;
+				if (excess > 0) {
+					return excess;
+				}
+				if (theoreticalArrival.compareAndSet(tat, next)) {
+					return 0;
+				}
+			}
+		}
+	}
+}
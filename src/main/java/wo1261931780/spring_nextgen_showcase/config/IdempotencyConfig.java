@@ -0,0 +1,25 @@
+package wo1261931780.spring_nextgen_showcase.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import wo1261931780.spring_nextgen_showcase.entity.Order;
+
+import java.time.Duration;
+
+/**
+ * 幂等请求存储的配置，参数通过 {@code showcase.idempotency.*} 配置。
+ * @author junw
+ */
+@Configuration
+public class IdempotencyConfig {
+
+	@Bean
+	public IdempotencyStore<Order> orderIdempotencyStore(MeterRegistry meterRegistry,
+														 @Value("${showcase.idempotency.shards:64}") int shards,
+														 @Value("${showcase.idempotency.max-entries:100000}") int maxEntries,
+														 @Value("${showcase.idempotency.ttl:24h}") Duration ttl) {
+		return new IdempotencyStore<>("orders", shards, maxEntries, ttl, meterRegistry);
+	}
+}
@@ -0,0 +1,248 @@
+package wo1261931780.spring_nextgen_showcase.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import wo1261931780.spring_nextgen_showcase.client.IdempotencyKeyReusedException;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * 基于 {@code Idempotency-Key} 的幂等请求存储：同一个键的请求只执行一次，重复的请求得到第一次请求的结果。
+ * <p>
+ * 键按哈希分布到若干个分片 (shard)，每个分片是一个按插入顺序排列的 LinkedHashMap，由分片自己的锁保护，
+ * 不同分片的请求互不阻塞；锁内只做查表与插入，请求本身在锁外执行。
+ * </p>
+ * <ul>
+ *     <li>第一次请求登记一个 "执行中" 的条目并执行；执行期间到达的重复请求等待同一个结果，不会再执行一次；</li>
+ *     <li>执行成功的结果保留 {@code ttl}；由于所有条目的有效期相同，插入顺序就是过期顺序，
+ *     每次访问分片时从表头移除过期条目，代价与过期条目数成正比；</li>
+ *     <li>执行失败的条目立即移除，客户端重试时会重新执行（例如 503 之后的重试）；</li>
+ *     <li>条目总数不超过 {@code maxEntries}（平均分配到各分片），分片已满时淘汰其中最早的条目，内存占用有硬上限；</li>
+ *     <li>同一个键携带不同的请求内容时抛出 {@link IdempotencyKeyReusedException}，而不是返回与请求不符的结果。</li>
+ * </ul>
+ * <p>
+ * 指标（均带 {@code name} 标签）：{@code idempotency.requests{result=executed|replayed|joined|mismatch}}、
+ * {@code idempotency.evictions{reason=expired|capacity}}、{@code idempotency.entries}。
+ * </p>
+ *
+ * @param <T> 请求结果的类型
+ * @author junw
+ */
+public class IdempotencyStore<T> {
+
+	/**
+	 * 一次查找的结果。
+	 *
+	 * @param result   请求结果的 future（每个调用方一个独立的副本，取消它不影响其他调用方）
+	 * @param replayed 结果是否来自之前（或同时进行中）的同一个请求
+	 */
+	public record Lookup<T>(CompletableFuture<T> result, boolean replayed) {
+	}
+
+	private final String name;
+	private final Shard[] shards;
+	private final long ttlNanos;
+	private final LongSupplier ticker;
+
+	private final MeterRegistry meterRegistry;
+	private final Counter executedCounter;
+	private final Counter replayedCounter;
+	private final Counter joinedCounter;
+	private final Counter mismatchCounter;
+
+	public IdempotencyStore(String name, int shardCount, int maxEntries, Duration ttl, MeterRegistry meterRegistry) {
+		this(name, shardCount, maxEntries, ttl, meterRegistry, System::nanoTime);
+	}
+
+	IdempotencyStore(String name, int shardCount, int maxEntries, Duration ttl, MeterRegistry meterRegistry,
+					 LongSupplier ticker) {
+		if (shardCount <= 0) {
+			throw new IllegalArgumentException("幂等存储 " + name + " 的分片数必须大于 0");
+		}
+		int count = Math.max(1, Integer.highestOneBit(shardCount - 1) << 1); // 向上取整为 2 的幂，便于用掩码选择分片
+		if (maxEntries < count) { // 否则每个分片至少一个条目会使总数超过 maxEntries
+			throw new IllegalArgumentException("幂等存储 " + name + " 的最大条目数 " + maxEntries
+					+ " 小于向上取整后的分片数 " + count);
+		}
+		this.name = name;
+		this.meterRegistry = meterRegistry;
+		this.ttlNanos = ttl.toNanos();
+		this.ticker = ticker;
+
+		this.executedCounter = requestCounter(meterRegistry, name, "executed");
+		this.replayedCounter = requestCounter(meterRegistry, name, "replayed");
+		this.joinedCounter = requestCounter(meterRegistry, name, "joined");
+		this.mismatchCounter = requestCounter(meterRegistry, name, "mismatch");
+		Counter expiredCounter = evictionCounter(meterRegistry, name, "expired");
+		Counter capacityCounter = evictionCounter(meterRegistry, name, "capacity");
+		int shardCapacity = maxEntries / count;
+		this.shards = new Shard[count];
+		for (int i = 0; i < count; i++) {
+			shards[i] = new Shard(shardCapacity, expiredCounter, capacityCounter);
+		}
+	}
+
+	/**
+	 * 构造完成后再注册读取本对象状态的仪表。
+	 */
+	@PostConstruct
+	void registerGauges() {
+		Gauge.builder("idempotency.entries", this, IdempotencyStore::size)
+				.description("Idempotency keys currently remembered, in flight or completed.")
+				.tag("name", name)
+				.register(meterRegistry);
+	}
+
+	private static Counter requestCounter(MeterRegistry meterRegistry, String name, String result) {
+		return Counter.builder("idempotency.requests")
+				.description("Requests carrying an idempotency key, by how they were served.")
+				.tag("name", name)
+				.tag("result", result)
+				.register(meterRegistry);
+	}
+
+	private static Counter evictionCounter(MeterRegistry meterRegistry, String name, String reason) {
+		return Counter.builder("idempotency.evictions")
+				.description("Idempotency keys forgotten, by reason.")
+				.tag("name", name)
+				.tag("reason", reason)
+				.register(meterRegistry);
+	}
+
+	/**
+	 * 以幂等的方式执行请求。
+	 *
+	 * @param key         幂等键
+	 * @param fingerprint 请求内容的指纹（以 equals 比较），同一个键的请求内容必须相同
+	 * @param action      第一次请求时执行的操作
+	 * @return 请求结果，以及结果是否来自之前的同一个请求
+	 * @throws IdempotencyKeyReusedException 同一个键携带了不同的请求内容时抛出
+	 */
+	public Lookup<T> execute(String key, Object fingerprint, Supplier<CompletableFuture<T>> action) {
+		Shard shard = shards[spread(key.hashCode()) & (shards.length - 1)];
+		Entry<T> entry;
+		boolean existing;
+		shard.lock.lock();
+		try {
+			shard.evictExpired(ticker.getAsLong());
+			@SuppressWarnings("unchecked")
+			Entry<T> found = (Entry<T>) shard.entries.get(key);
+			existing = found != null;
+			if (existing) {
+				if (!Objects.equals(found.fingerprint(), fingerprint)) {
+					mismatchCounter.increment();
+					throw new IdempotencyKeyReusedException(key);
+				}
+				entry = found;
+			} else {
+				entry = new Entry<>(fingerprint, new CompletableFuture<>(), ticker.getAsLong() + ttlNanos);
+				shard.entries.put(key, entry);
+			}
+		} finally {
+			shard.lock.unlock();
+		}
+
+		if (existing) {
+			(entry.result().isDone() ? replayedCounter : joinedCounter).increment();
+			return new Lookup<>(entry.result().copy(), true);
+		}
+		executedCounter.increment();
+		CompletableFuture<T> source;
+		try {
+			source = action.get();
+		} catch (RuntimeException e) {
+			source = CompletableFuture.failedFuture(e);
+		}
+		Entry<T> created = entry;
+		source.whenComplete((value, ex) -> {
+			if (ex != null) {
+				shard.remove(key, created); // 失败的结果不保留，先移除再通知，保证看到失败的客户端重试时会重新执行
+				created.result().completeExceptionally(ex);
+			} else {
+				created.result().complete(value);
+			}
+		});
+		return new Lookup<>(created.result().copy(), false);
+	}
+
+	/**
+	 * @return 当前记住的键的数量（包括执行中的），用于监控，可能略有滞后
+	 */
+	public int size() {
+		int size = 0;
+		for (Shard shard : shards) {
+			size += shard.size();
+		}
+		return size;
+	}
+
+	private static int spread(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+
+	private record Entry<T>(Object fingerprint, CompletableFuture<T> result, long expiresAt) {
+	}
+
+	private static final class Shard {
+
+		private final ReentrantLock lock = new ReentrantLock();
+		private final LinkedHashMap<String, Entry<?>> entries;
+		private final Counter expiredCounter;
+
+		Shard(int capacity, Counter expiredCounter, Counter capacityCounter) {
+			this.expiredCounter = expiredCounter;
+			this.entries = new LinkedHashMap<>(16, 0.75f, false) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, Entry<?>> eldest) {
+					if (size() > capacity) {
+						capacityCounter.increment();
+						return true;
+					}
+					return false;
+				}
+			};
+		}
+
+		/**
+		 * 从表头开始移除已过期的条目，调用方必须持有锁。
+		 */
+		void evictExpired(long now) {
+			Iterator<Entry<?>> iterator = entries.values().iterator();
+			while (iterator.hasNext()) {
+				if (iterator.next().expiresAt() - now > 0) {
+					break; // 之后的条目插入得更晚，都还没有过期
+				}
+				iterator.remove();
+				expiredCounter.increment();
+			}
+		}
+
+		void remove(String key, Entry<?> entry) {
+			lock.lock();
+			try {
+				entries.remove(key, entry);
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		int size() {
+			lock.lock();
+			try {
+				return entries.size();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+}
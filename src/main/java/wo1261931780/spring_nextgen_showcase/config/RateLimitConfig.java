@@ -0,0 +1,26 @@
+package wo1261931780.spring_nextgen_showcase.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 订单创建限流的配置，参数通过 {@code showcase.rate-limit.orders.*} 配置（见 {@link RateLimitProperties}）。
+ * @author junw
+ */
+@Configuration
+@EnableConfigurationProperties(RateLimitProperties.class)
+public class RateLimitConfig {
+
+	private static final Logger logger = LoggerFactory.getLogger(RateLimitConfig.class);
+
+	@Bean
+	public GcraRateLimiter orderRateLimiter(RateLimitProperties properties, MeterRegistry meterRegistry) {
+		logger.info("订单创建限流: {}, 默认限额 {}, 单独配置的客户端 {} 个", properties.isEnabled() ? "已启用" : "已关闭",
+				properties.getDefaultLimit(), properties.getClients().size());
+		return new GcraRateLimiter("orders", properties, meterRegistry);
+	}
+}
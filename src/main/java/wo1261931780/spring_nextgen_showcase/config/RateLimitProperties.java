@@ -0,0 +1,45 @@
+package wo1261931780.spring_nextgen_showcase.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 订单创建限流的配置 ({@code showcase.rate-limit.orders.*})。
+ * 每个客户端的限额可以在 {@code clients.<客户端名>} 下单独配置，未单独配置的客户端使用 {@code default-limit}。
+ * @author junw
+ */
+@Data
+@ConfigurationProperties(prefix = "showcase.rate-limit.orders")
+public class RateLimitProperties {
+
+	private boolean enabled = true;
+	private Limit defaultLimit = new Limit(20, 40);
+	private Map<String, Limit> clients = new HashMap<>();
+	private int maxClients = 100_000;
+	private Duration idleTimeout = Duration.ofMinutes(10);
+
+	/**
+	 * 一个客户端的限额。
+	 */
+	@Data
+	@NoArgsConstructor
+	@AllArgsConstructor
+	public static class Limit {
+		private double permitsPerSecond; // 长期平均速率
+		private int burst;               // 空闲之后允许连续发出的请求数
+	}
+
+	/**
+	 * @param client 客户端名称
+	 * @return 客户端的限额，没有单独配置时返回默认限额
+	 */
+	public Limit limitFor(String client) {
+		return clients.getOrDefault(client, defaultLimit);
+	}
+}
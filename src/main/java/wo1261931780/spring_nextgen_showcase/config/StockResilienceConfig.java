@@ -0,0 +1,30 @@
+package wo1261931780.spring_nextgen_showcase.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * 库存服务调用的容错配置：熔断器与舱壁。
+ * 参数通过 {@code showcase.stock.circuit-breaker.*} 与 {@code showcase.stock.bulkhead.*} 配置。
+ * @author junw
+ */
+@Configuration
+public class StockResilienceConfig {
+
+	@Bean
+	public CircuitBreaker stockCircuitBreaker(MeterRegistry meterRegistry,
+											  @Value("${showcase.stock.circuit-breaker.window-size:50}") int windowSize,
+											  @Value("${showcase.stock.circuit-breaker.minimum-calls:20}") int minimumCalls,
+											  @Value("${showcase.stock.circuit-breaker.failure-rate-threshold:50}") int failureRateThreshold,
+											  @Value("${showcase.stock.circuit-breaker.open-duration:5s}") Duration openDuration,
+											  @Value("${showcase.stock.circuit-breaker.half-open-calls:3}") int halfOpenCalls,
+											  @Value("${showcase.stock.bulkhead.max-concurrent-calls:64}") int maxConcurrentCalls,
+											  @Value("${showcase.stock.call-timeout:800ms}") Duration callTimeout) {
+		return new CircuitBreaker("stock", windowSize, minimumCalls, failureRateThreshold,
+				openDuration, halfOpenCalls, maxConcurrentCalls, callTimeout, meterRegistry);
+	}
+}
@@ -0,0 +1,105 @@
+package wo1261931780.spring_nextgen_showcase.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 全应用共享的虚拟线程执行设施。
+ * <p>
+ * 只持有一个 {@code Executors.newVirtualThreadPerTaskExecutor()}，所有请求处理器共用，
+ * 并为每个下游依赖提供一个带并发许可的 {@link DownstreamExecutor}：
+ * <ul>
+ *     <li>{@link #jpa()}：数据库 / JPA Repository 访问</li>
+ *     <li>{@link #stock()}：库存服务 HTTP 调用</li>
+ *     <li>{@link #product()}：产品服务 HTTP 调用</li>
+ * </ul>
+ * 许可数通过 {@code showcase.executor.permits.*} 配置。应用关闭时会停止接收新任务，
+ * 并在 {@code showcase.executor.shutdown-timeout} 内等待已提交任务完成。
+ * </p>
+ * <p>
+ * 注意：这里刻意没有把 ExecutorService 暴露为 Executor 类型的 bean，
+ * 否则 Spring Boot 自动配置的 applicationTaskExecutor（Spring MVC 异步请求使用）会因此退让。
+ * </p>
+ * @author junw
+ */
+@Component
+public class VirtualThreadExecutors {
+
+	private static final Logger logger = LoggerFactory.getLogger(VirtualThreadExecutors.class);
+
+	private final ExecutorService sharedExecutor = Executors.newVirtualThreadPerTaskExecutor();
+	private final Duration shutdownTimeout;
+	private final DownstreamExecutor jpaExecutor;
+	private final DownstreamExecutor stockExecutor;
+	private final DownstreamExecutor productExecutor;
+
+	@Autowired
+	public VirtualThreadExecutors(MeterRegistry meterRegistry,
+								  @Value("${showcase.executor.permits.jpa:10}") int jpaPermits,
+								  @Value("${showcase.executor.permits.stock:128}") int stockPermits,
+								  @Value("${showcase.executor.permits.product:64}") int productPermits,
+								  @Value("${showcase.executor.shutdown-timeout:10s}") Duration shutdownTimeout) {
+		this.shutdownTimeout = shutdownTimeout;
+		this.jpaExecutor = new DownstreamExecutor("jpa", jpaPermits, sharedExecutor, meterRegistry);
+		this.stockExecutor = new DownstreamExecutor("stock", stockPermits, sharedExecutor, meterRegistry);
+		this.productExecutor = new DownstreamExecutor("product", productPermits, sharedExecutor, meterRegistry);
+		logger.info("共享虚拟线程执行器已创建，下游许可数: jpa={}, stock={}, product={}", jpaPermits, stockPermits, productPermits);
+	}
+
+	/**
+	 * @return 共享的虚拟线程执行器本身（不受下游许可约束），用于编排多个下游调用的外层任务
+	 */
+	public Executor shared() {
+		return sharedExecutor;
+	}
+
+	/**
+	 * @return 访问数据库 (JPA) 使用的有界执行器
+	 */
+	public DownstreamExecutor jpa() {
+		return jpaExecutor;
+	}
+
+	/**
+	 * @return 调用库存服务使用的有界执行器
+	 */
+	public DownstreamExecutor stock() {
+		return stockExecutor;
+	}
+
+	/**
+	 * @return 调用产品服务使用的有界执行器
+	 */
+	public DownstreamExecutor product() {
+		return productExecutor;
+	}
+
+	/**
+	 * 优雅关闭：拒绝新任务，等待在途任务完成，超时后中断剩余任务。
+	 */
+	@PreDestroy
+	public void shutdown() {
+		logger.info("正在关闭共享虚拟线程执行器 (等待最多 {})...", shutdownTimeout);
+		sharedExecutor.shutdown();
+		try {
+			if (!sharedExecutor.awaitTermination(shutdownTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+				logger.warn("共享虚拟线程执行器未能在 {} 内结束，强制中断剩余任务", shutdownTimeout);
+				sharedExecutor.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			sharedExecutor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package wo1261931780.spring_nextgen_showcase.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import wo1261931780.spring_nextgen_showcase.entity.CustomerOrderSummary;
+import wo1261931780.spring_nextgen_showcase.service.CustomerOrderReadModel;
+
+import java.util.List;
+
+/**
+ * 按客户查询订单的接口，数据来自内存中的订单读模型 ({@link CustomerOrderReadModel})，不访问 orders 表。
+ * <ul>
+ *     <li>{@code GET /api/customers/{customerName}/orders/summary}：订单总数、各状态的订单数与最近的订单；</li>
+ *     <li>{@code GET /api/customers/{customerName}/orders/latest?limit=}：最近的订单。</li>
+ * </ul>
+ * 客户没有任何订单时返回 404。
+ * @author junw
+ */
+@RestController
+@RequestMapping("/api/customers/{customerName}/orders")
+public class CustomerOrderController {
+
+	private final CustomerOrderReadModel customerOrderReadModel;
+
+	@Autowired
+	public CustomerOrderController(CustomerOrderReadModel customerOrderReadModel) {
+		this.customerOrderReadModel = customerOrderReadModel;
+	}
+
+	/**
+	 * 查询客户的订单汇总。
+	 *
+	 * @param customerName 客户名称
+	 * @return 订单汇总
+	 */
+	@GetMapping("/summary")
+	public CustomerOrderSummary summary(@PathVariable String customerName) {
+		return findSummary(customerName);
+	}
+
+	/**
+	 * 查询客户最近的订单，按下单时间从新到旧排列。
+	 *
+	 * @param customerName 客户名称
+	 * @param limit        最多返回的订单数，不超过读模型保留的数量 ({@code showcase.orders.read-model.latest-size})
+	 * @return 最近的订单
+	 */
+	@GetMapping("/latest")
+	public List<CustomerOrderSummary.LatestOrder> latest(@PathVariable String customerName,
+														 @RequestParam(required = false) Integer limit) {
+		if (limit != null && limit <= 0) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit 必须大于 0");
+		}
+		List<CustomerOrderSummary.LatestOrder> orders = findSummary(customerName).getLatestOrders();
+		return limit == null || limit >= orders.size() ? orders : orders.subList(0, limit);
+	}
+
+	private CustomerOrderSummary findSummary(String customerName) {
+		CustomerOrderSummary summary = customerOrderReadModel.summary(customerName);
+		if (summary == null) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "客户 " + customerName + " 没有订单");
+		}
+		return summary;
+	}
+}
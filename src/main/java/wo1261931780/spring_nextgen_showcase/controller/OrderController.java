@@ -8,15 +8,45 @@ import io.micrometer.core.instrument.Metrics; // 另一种方式，但不推荐
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import jakarta.annotation.PostConstruct; // For initializing metrics after construction
+import lombok.Data;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.MediaType;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import wo1261931780.spring_nextgen_showcase.config.GcraRateLimiter;
+import wo1261931780.spring_nextgen_showcase.config.IdempotencyStore;
 import wo1261931780.spring_nextgen_showcase.entity.Order;
+import wo1261931780.spring_nextgen_showcase.entity.OrderCreationRequest;
+import wo1261931780.spring_nextgen_showcase.entity.OrderTicket;
+import wo1261931780.spring_nextgen_showcase.service.OrderAcceptanceService;
+import wo1261931780.spring_nextgen_showcase.service.OrderBulkIngestService;
+import wo1261931780.spring_nextgen_showcase.service.OrderStatusService;
+import wo1261931780.spring_nextgen_showcase.service.OrderWriter;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * 订单控制器，演示如何集成自定义业务指标以供 Prometheus 监控。
@@ -48,6 +78,17 @@ public class OrderController {
 
 	private static final Logger logger = LoggerFactory.getLogger(OrderController.class);
 
+	private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+	private static final String IDEMPOTENT_REPLAYED_HEADER = "Idempotent-Replayed";
+	private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 255;
+	// RFC 7240：客户端通过 Prefer: respond-async 选择异步受理
+	private static final String PREFER_HEADER = "Prefer";
+	private static final String PREFERENCE_APPLIED_HEADER = "Preference-Applied";
+	private static final String RESPOND_ASYNC = "respond-async";
+	private static final String ORDER_REQUESTS_PATH = "/api/orders/requests/";
+	// 未认证的请求（仅在关闭认证的环境中出现）共用一个限流桶
+	private static final String ANONYMOUS_CLIENT = "anonymous";
+
 	// Micrometer MeterRegistry 用于创建和管理指标
 	private final MeterRegistry meterRegistry;
 
@@ -57,14 +98,31 @@ public class OrderController {
 	private Counter ordersStatusPendingCounter;
 	private Counter ordersStatusCompletedCounter;
 
-	// 假设有一个 OrderService 来处理订单创建的业务逻辑
-	// 如果 OrderService 还没有创建订单的逻辑，这里可以先简化处理
-	// private final OrderService orderService;
+	// 订单由 OrderWriter 按批次写入数据库
+	private final OrderWriter orderWriter;
+	private final OrderBulkIngestService orderBulkIngestService;
+	// 记录带 Idempotency-Key 的请求，避免客户端重试时重复创建订单
+	private final IdempotencyStore<Order> orderIdempotencyStore;
+	private final OrderStatusService orderStatusService;
+	// 按客户端限制创建订单的速率，避免个别集成方占满写入能力
+	private final GcraRateLimiter orderRateLimiter;
+	// 异步受理模式 (Prefer: respond-async) 的受理队列与状态资源
+	private final OrderAcceptanceService orderAcceptanceService;
+	private final Duration ticketEventsTimeout;
 
 	@Autowired
-	public OrderController(MeterRegistry meterRegistry /*, OrderService orderService */) {
+	public OrderController(MeterRegistry meterRegistry, OrderWriter orderWriter, OrderBulkIngestService orderBulkIngestService,
+						   IdempotencyStore<Order> orderIdempotencyStore, OrderStatusService orderStatusService,
+						   GcraRateLimiter orderRateLimiter, OrderAcceptanceService orderAcceptanceService,
+						   @Value("${showcase.orders.acceptance.events-timeout:60s}") Duration ticketEventsTimeout) {
 		this.meterRegistry = meterRegistry;
-		// this.orderService = orderService;
+		this.orderWriter = orderWriter;
+		this.orderBulkIngestService = orderBulkIngestService;
+		this.orderIdempotencyStore = orderIdempotencyStore;
+		this.orderStatusService = orderStatusService;
+		this.orderRateLimiter = orderRateLimiter;
+		this.orderAcceptanceService = orderAcceptanceService;
+		this.ticketEventsTimeout = ticketEventsTimeout;
 
 		// 初始化指标 (在构造函数中或使用 @PostConstruct)
 		initializeMetrics();
@@ -91,54 +149,245 @@ public class OrderController {
 
 	/**
 	 * 创建一个新订单。
-	 * 每次调用此端点时，相关的 Prometheus 指标会增加。
+	 * 订单交给 OrderWriter 与其他并发请求的订单一起批量写入，事务提交后才返回 201，
+	 * 此时订单已经持久化，相关的 Prometheus 指标也在此时增加。请求体无效时返回 400，写入队列已满时返回 503。
+	 * <p>
+	 * 携带 {@code Idempotency-Key} 请求头时，同一个键的请求只创建一个订单：
+	 * 重复的请求（包括与第一次请求同时到达的）返回第一次请求创建的订单，并带有 {@code Idempotent-Replayed: true} 响应头；
+	 * 同一个键用于内容不同的请求时返回 422。
+	 * </p>
+	 * <p>
+	 * 每个客户端（已认证的调用方）创建订单的速率受 {@code showcase.rate-limit.orders.*} 限制，
+	 * 超出时返回带 Retry-After 的 429，请求不会进入写入队列。
+	 * </p>
 	 *
-	 * @param orderRequest 包含订单信息的请求体 (简化示例，实际可能是一个DTO)
+	 * @param principal      已认证的调用方，作为限流与幂等键作用域的客户端标识
+	 * @param idempotencyKey 可选的幂等键，由客户端为每个逻辑上的订单生成（例如 UUID），重试时保持不变
+	 * @param orderRequest   包含订单信息的请求体 (简化示例，实际可能是一个DTO)
 	 * @return 创建的订单对象和 HTTP 状态
 	 */
 	@PostMapping
-	public ResponseEntity<Order> createOrder(@RequestBody OrderCreationRequest orderRequest) {
-		logger.info("接收到创建订单请求: {}", orderRequest.getCustomerName());
+	public CompletableFuture<ResponseEntity<Order>> createOrder(
+			Principal principal,
+			@RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+			@RequestBody OrderCreationRequest orderRequest) {
+		String error = OrderCreationRequest.validationError(orderRequest);
+		if (error != null) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, error);
+		}
+		logger.debug("接收到创建订单请求: {}", orderRequest.getCustomerName());
+		String clientId = clientId(principal);
+		orderRateLimiter.acquire(clientId);
 
-		// 模拟订单创建逻辑
-		Order newOrder = new Order(orderRequest.getCustomerName());
-		// 实际应用中会调用 orderService.create(newOrder);
-		// newOrder = orderService.createOrder(newOrder); // 假设 OrderService 有此方法
+		if (idempotencyKey == null) {
+			return toResponse(persistOrder(orderRequest), false);
+		}
+		checkIdempotencyKey(idempotencyKey);
+		IdempotencyStore.Lookup<Order> lookup = orderIdempotencyStore.execute(scopedKey(clientId, idempotencyKey),
+				orderRequest, () -> persistOrder(orderRequest));
+		if (lookup.replayed()) {
+			logger.debug("Idempotency-Key {} 的重复请求，返回第一次请求的结果", idempotencyKey);
+		}
+		return toResponse(lookup.result(), lookup.replayed());
+	}
+
+	/**
+	 * 以异步受理模式创建订单（请求头 {@code Prefer: respond-async}）。
+	 * 请求只经过限流与基本校验就进入受理队列，立即返回 202、请求的状态资源，以及指向它的 Location 响应头；
+	 * 订单由受理队列的工作线程创建，状态可以通过 {@code GET /api/orders/requests/{id}} 轮询，
+	 * 或通过 {@code GET /api/orders/requests/{id}/events} 以 SSE 订阅。
+	 * 受理队列已满时返回 503 与 Retry-After，请求不会在服务端堆积。
+	 * <p>
+	 * 携带 {@code Idempotency-Key} 时，同一个键的多个请求各自得到一个状态资源，但只创建一个订单，
+	 * 它们完成时都指向同一个订单；同一个键用于内容不同的请求时，该请求以 FAILED 结束。
+	 * </p>
+	 *
+	 * @param principal      已认证的调用方，作为限流与幂等键作用域的客户端标识
+	 * @param idempotencyKey 可选的幂等键
+	 * @param orderRequest   包含订单信息的请求体
+	 * @return 202 与请求的初始状态
+	 */
+	@PostMapping(headers = PREFER_HEADER + "=" + RESPOND_ASYNC)
+	public ResponseEntity<OrderTicket> createOrderAsync(
+			Principal principal,
+			@RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+			@RequestBody OrderCreationRequest orderRequest) {
+		String clientId = clientId(principal);
+		orderRateLimiter.acquire(clientId);
+		String error = OrderCreationRequest.validationError(orderRequest);
+		if (error != null) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, error);
+		}
+		if (idempotencyKey != null) {
+			checkIdempotencyKey(idempotencyKey);
+		}
+		OrderTicket ticket = orderAcceptanceService.submit(() -> idempotencyKey == null
+				? persistOrder(orderRequest)
+				: orderIdempotencyStore.execute(scopedKey(clientId, idempotencyKey), orderRequest,
+						() -> persistOrder(orderRequest)).result());
+		logger.debug("订单请求 {} 已受理 (客户: {})", ticket.getId(), orderRequest.getCustomerName());
+		return ResponseEntity.accepted()
+				.location(URI.create(ORDER_REQUESTS_PATH + ticket.getId()))
+				.header(PREFERENCE_APPLIED_HEADER, RESPOND_ASYNC)
+				.body(ticket);
+	}
 
-		// 增加订单总数计数器
-		this.ordersTotalCounter.increment();
-		logger.info("orders.total 计数器已增加。当前值 (近似): {}", this.ordersTotalCounter.count());
+	/**
+	 * 查询异步受理的订单请求的状态。
+	 *
+	 * @param ticketId 请求ID
+	 * @return 请求的当前状态；请求不存在或已过保留期时 404
+	 */
+	@GetMapping("/requests/{ticketId}")
+	public ResponseEntity<OrderTicket> orderRequestStatus(@PathVariable UUID ticketId) {
+		OrderTicket ticket = orderAcceptanceService.status(ticketId);
+		return ticket != null ? ResponseEntity.ok(ticket) : ResponseEntity.notFound().build();
+	}
 
-		// 根据订单状态增加相应计数器
-		if ("PENDING".equalsIgnoreCase(newOrder.getStatus())) {
-			this.ordersStatusPendingCounter.increment();
+	/**
+	 * 以 SSE 订阅异步受理的订单请求的状态：先发送当前状态，之后每次变化发送一次（事件名为状态），
+	 * 请求结束（COMPLETED 或 FAILED）后关闭连接。
+	 *
+	 * @param ticketId 请求ID
+	 * @return SSE 连接；请求不存在或已过保留期时 404
+	 */
+	@GetMapping(value = "/requests/{ticketId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+	public SseEmitter orderRequestEvents(@PathVariable UUID ticketId) {
+		SseEmitter emitter = new SseEmitter(ticketEventsTimeout.toMillis());
+		AtomicReference<Runnable> unsubscribe = new AtomicReference<>();
+		Runnable cleanup = () -> {
+			Runnable action = unsubscribe.get();
+			if (action != null) {
+				action.run();
+			}
+		};
+		emitter.onCompletion(cleanup);
+		emitter.onTimeout(cleanup);
+		emitter.onError(ex -> cleanup.run());
+		unsubscribe.set(orderAcceptanceService.subscribe(ticketId, ticket -> sendTicket(emitter, ticket)));
+		if (unsubscribe.get() == null) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "订单请求不存在或已过期: " + ticketId);
 		}
-		// 当订单完成时: this.ordersStatusCompletedCounter.increment();
+		return emitter;
+	}
 
-		// 模拟返回创建的订单
-		// 实际应用中，ID 等信息会在保存到数据库后由JPA等设置
-		// newOrder.setId(java.util.UUID.randomUUID()); // 临时设置ID，如果Order类没有自动生成
+	private void sendTicket(SseEmitter emitter, OrderTicket ticket) {
+		try {
+			emitter.send(SseEmitter.event()
+					.name(ticket.getStatus().name())
+					.data(ticket, MediaType.APPLICATION_JSON));
+			if (OrderAcceptanceService.isFinished(ticket)) {
+				emitter.complete();
+			}
+		} catch (IOException | IllegalStateException e) {
+			emitter.completeWithError(e);
+		}
+	}
 
-		logger.info("订单创建成功: {}", newOrder);
-		return new ResponseEntity<>(newOrder, HttpStatus.CREATED);
+	private static String clientId(Principal principal) {
+		return principal != null ? principal.getName() : ANONYMOUS_CLIENT;
 	}
 
-	// 内部类或单独的DTO用于请求体
-	public static class OrderCreationRequest {
-		private String customerName;
-		// 可以添加其他需要的字段，如产品列表等
-		// private List<String> productIds;
+	/**
+	 * 幂等键由客户端生成，只在同一个调用方内唯一：存储时加上调用方前缀，
+	 * 避免不同调用方碰巧使用同一个键时重放彼此的订单，或被判定为内容不一致。
+	 */
+	private static String scopedKey(String clientId, String idempotencyKey) {
+		return clientId + ':' + idempotencyKey;
+	}
 
-		public String getCustomerName() {
-			return customerName;
+	private static void checkIdempotencyKey(String idempotencyKey) {
+		if (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+					IDEMPOTENCY_KEY_HEADER + " 不能为空，且不能超过 " + MAX_IDEMPOTENCY_KEY_LENGTH + " 个字符");
 		}
-		public void setCustomerName(String customerName) {
-			this.customerName = customerName;
+	}
+
+	/**
+	 * 写入订单，提交后增加订单指标。
+	 */
+	private CompletableFuture<Order> persistOrder(OrderCreationRequest orderRequest) {
+		Order newOrder = new Order(orderRequest.getCustomerName());
+		return orderWriter.write(newOrder)
+				.thenApply(saved -> {
+					// 增加订单总数计数器
+					this.ordersTotalCounter.increment();
+					// 根据订单状态增加相应计数器
+					if ("PENDING".equalsIgnoreCase(saved.getStatus())) {
+						this.ordersStatusPendingCounter.increment();
+					}
+					// 当订单完成时: this.ordersStatusCompletedCounter.increment();
+					logger.debug("订单创建成功: {}", saved);
+					return saved;
+				});
+	}
+
+	private CompletableFuture<ResponseEntity<Order>> toResponse(CompletableFuture<Order> order, boolean replayed) {
+		return order
+				.thenApply(saved -> {
+					ResponseEntity.BodyBuilder response = ResponseEntity.status(HttpStatus.CREATED);
+					if (replayed) {
+						response.header(IDEMPOTENT_REPLAYED_HEADER, "true");
+					}
+					return response.body(saved);
+				})
+				.exceptionally(ex -> {
+					Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+					if (cause instanceof RejectedExecutionException) {
+						throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, cause.getMessage(), cause);
+					}
+					logger.error("订单写入失败", cause);
+					throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "订单写入失败", cause);
+				});
+	}
+
+	/**
+	 * 批量导入订单（例如合作方每晚上传的订单文件）。
+	 * 请求体可以是订单的 JSON 数组，也可以是 NDJSON（每行一个订单），均以流的方式增量解析；
+	 * 响应以 NDJSON 逐条返回每个条目的结果 (ACCEPTED / REJECTED)，每写入一块订单就发送一块结果。
+	 * orders.total 等指标按块一次性增加，而不是每个订单增加一次。
+	 *
+	 * @param request  HTTP 请求，直接读取其请求体
+	 * @param response HTTP 响应，结果直接写入响应体
+	 * @throws IOException 读取请求体或写出结果失败（例如客户端断开连接）时抛出
+	 */
+	@PostMapping(value = "/bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+	public void bulkCreateOrders(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		boolean ndjson = MediaType.APPLICATION_NDJSON.isCompatibleWith(MediaType.parseMediaType(request.getContentType()));
+		logger.info("接收到订单批量导入请求 ({})", ndjson ? "NDJSON" : "JSON 数组");
+		response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+		response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+		orderBulkIngestService.ingest(request.getInputStream(), ndjson, response.getOutputStream(), persisted -> {
+			// 批量导入的订单都处于 PENDING 状态
+			this.ordersTotalCounter.increment(persisted);
+			this.ordersStatusPendingCounter.increment(persisted);
+		});
+	}
+
+	/**
+	 * 更新订单状态，并更新相应的状态计数器。
+	 * 状态变更与 ORDER_STATUS_CHANGED 事件在同一个事务中写入，事件由发件箱中继异步投递给下游系统。
+	 *
+	 * @param id      订单ID
+	 * @param request 新状态
+	 * @return 更新后的订单；状态无效时 400，订单不存在时 404，订单已处于终态时 409
+	 */
+	@PutMapping("/{id}/status")
+	public ResponseEntity<Order> updateStatus(@PathVariable UUID id, @RequestBody StatusUpdateRequest request) {
+		OrderStatusService.StatusChange change = orderStatusService.updateStatus(id, request.getStatus());
+		if (change.changed() && "COMPLETED".equals(change.order().getStatus())) {
+			this.ordersStatusCompletedCounter.increment();
 		}
-		// public List<String> getProductIds() { return productIds; }
-		// public void setProductIds(List<String> productIds) { this.productIds = productIds; }
+		return ResponseEntity.ok(change.order());
 	}
 
 	// 你可以添加其他端点来演示其他类型的指标，例如 Gauge, Timer, DistributionSummary
-	// 例如，一个端点用于更新订单状态，并更新相应的状态计数器
+
+	/**
+	 * 订单状态更新请求体。
+	 */
+	@Data
+	public static class StatusUpdateRequest {
+		private String status;
+	}
 }
@@ -0,0 +1,86 @@
+package wo1261931780.spring_nextgen_showcase.controller;
+
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import wo1261931780.spring_nextgen_showcase.entity.StockReservation;
+import wo1261931780.spring_nextgen_showcase.service.StockReservationService;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * 库存预占接口：下单时先预占库存，支付成功后确认，取消或超时则释放。
+ * <ul>
+ *     <li>{@code POST /api/stock-reservations}：预占，库存不足时返回 409 ProblemDetail；</li>
+ *     <li>{@code POST /api/stock-reservations/{id}/confirm}：确认预占；</li>
+ *     <li>{@code DELETE /api/stock-reservations/{id}}：释放预占。</li>
+ * </ul>
+ * 预占不存在（已确认、已释放或已过期）时确认与释放都返回 404。
+ * @author junw
+ */
+@RestController
+@RequestMapping("/api/stock-reservations")
+public class StockReservationController {
+
+	private final StockReservationService stockReservationService;
+
+	@Autowired
+	public StockReservationController(StockReservationService stockReservationService) {
+		this.stockReservationService = stockReservationService;
+	}
+
+	/**
+	 * 预占库存。
+	 *
+	 * @param request 产品ID -> 数量，以及可选的有效期（ISO-8601，例如 PT5M）
+	 * @return 201 与预占记录
+	 */
+	@PostMapping
+	public ResponseEntity<StockReservation> reserve(@RequestBody ReservationRequest request) {
+		StockReservation reservation = stockReservationService.reserve(request.getItems(), request.getTtl());
+		return ResponseEntity.status(HttpStatus.CREATED).body(reservation);
+	}
+
+	/**
+	 * 确认预占。
+	 *
+	 * @param id 预占ID
+	 * @return 204，预占不存在时 404
+	 */
+	@PostMapping("/{id}/confirm")
+	public ResponseEntity<Void> confirm(@PathVariable String id) {
+		return stockReservationService.confirm(id)
+				? ResponseEntity.noContent().build()
+				: ResponseEntity.notFound().build();
+	}
+
+	/**
+	 * 释放预占。
+	 *
+	 * @param id 预占ID
+	 * @return 204，预占不存在时 404
+	 */
+	@DeleteMapping("/{id}")
+	public ResponseEntity<Void> release(@PathVariable String id) {
+		return stockReservationService.release(id)
+				? ResponseEntity.noContent().build()
+				: ResponseEntity.notFound().build();
+	}
+
+	/**
+	 * 预占请求体。
+	 */
+	@Data
+	public static class ReservationRequest {
+		private Map<String, Integer> items;
+		private Duration ttl;
+	}
+}
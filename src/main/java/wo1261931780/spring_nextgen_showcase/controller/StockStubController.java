@@ -0,0 +1,192 @@
+package wo1261931780.spring_nextgen_showcase.controller;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import wo1261931780.spring_nextgen_showcase.client.ProductRepository;
+import wo1261931780.spring_nextgen_showcase.entity.StockChange;
+import wo1261931780.spring_nextgen_showcase.entity.StockSnapshot;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * 本地库存服务桩 (stub)，实现 StockServiceClient 所调用的 /api/stock 端点。
+ * <p>
+ * 仅用于本地开发和测试：库存数量由产品ID确定性地计算得出，
+ * 并可通过 {@code showcase.stock.stub.latency} 注入固定延迟，以模拟较慢的库存服务；
+ * 通过 {@code tail-latency} 与 {@code tail-probability} 让一小部分调用额外变慢，以模拟长尾延迟（用于演示对冲请求）。
+ * 默认关闭，通过 {@code showcase.stock.stub.enabled=true} 启用（dev profile 中已启用）；
+ * 它的修改端点会改变被 StockReplica 复制的库存，不能在生产环境中开启。
+ * </p>
+ * <p>
+ * 库存可以通过 {@code PUT /api/stock/{productId}} 修改，每次修改分配一个连续递增的序号，
+ * 并通过 {@code GET /api/stock/changes?after=} (Server-Sent Events) 推送给订阅方；
+ * {@code GET /api/stock/snapshot} 返回全部产品的库存快照，供 StockReplica 初始化与重新同步。
+ * 最近 {@code showcase.stock.stub.change-history} 条变更保留在内存中用于断线重连后的回放。
+ * </p>
+ * @author junw
+ */
+@RestController
+@RequestMapping("/api/stock")
+@ConditionalOnProperty(name = "showcase.stock.stub.enabled", havingValue = "true")
+public class StockStubController {
+
+	private static final Logger logger = LoggerFactory.getLogger(StockStubController.class);
+
+	private final Duration latency;
+	private final Duration tailLatency;
+	private final double tailProbability;
+	// 已处理的调用次数，便于观察请求合并等优化的效果
+	private final AtomicLong servedCalls = new AtomicLong();
+
+	private final ProductRepository productRepository;
+	private final TransactionTemplate transactionTemplate;
+	private final int changeHistory;
+
+	// 被修改过的库存，未修改的产品使用由产品ID计算出的默认库存
+	private final Map<String, Integer> overrides = new ConcurrentHashMap<>();
+	// 以下字段由 changeLock 保护：修改、回放与推送串行进行，保证订阅方收到的序号严格递增
+	private final Object changeLock = new Object();
+	private long sequence;
+	private final NavigableMap<Long, StockChange> history = new TreeMap<>();
+	private final List<SseEmitter> subscribers = new CopyOnWriteArrayList<>();
+
+	public StockStubController(ProductRepository productRepository, TransactionTemplate transactionTemplate,
+							   @Value("${showcase.stock.stub.latency:0ms}") Duration latency,
+							   @Value("${showcase.stock.stub.tail-latency:0ms}") Duration tailLatency,
+							   @Value("${showcase.stock.stub.tail-probability:0}") double tailProbability,
+							   @Value("${showcase.stock.stub.change-history:10000}") int changeHistory) {
+		this.productRepository = productRepository;
+		this.transactionTemplate = transactionTemplate;
+		this.latency = latency;
+		this.tailLatency = tailLatency;
+		this.tailProbability = tailProbability;
+		this.changeHistory = changeHistory;
+		logger.info("本地库存服务桩已启用，注入延迟: {}, 长尾延迟: {} (概率 {})", latency, tailLatency, tailProbability);
+	}
+
+	@GetMapping("/{productId}")
+	public Integer getStock(@PathVariable String productId) {
+		servedCalls.incrementAndGet();
+		simulateLatency();
+		return stockOf(productId);
+	}
+
+	@PostMapping("/batch")
+	public Map<String, Integer> getStocks(@RequestBody List<String> productIds) {
+		servedCalls.incrementAndGet();
+		simulateLatency();
+		Map<String, Integer> stocks = new LinkedHashMap<>();
+		productIds.forEach(id -> stocks.put(id, stockOf(id)));
+		return stocks;
+	}
+
+	@PutMapping("/{productId}")
+	public StockChange setStock(@PathVariable String productId, @RequestBody Integer stock) {
+		synchronized (changeLock) {
+			overrides.put(productId, stock);
+			StockChange change = new StockChange(++sequence, productId, stock, System.currentTimeMillis());
+			history.put(change.getSequence(), change);
+			if (history.size() > changeHistory) {
+				history.pollFirstEntry();
+			}
+			subscribers.forEach(emitter -> send(emitter, change));
+			return change;
+		}
+	}
+
+	@GetMapping("/snapshot")
+	public StockSnapshot snapshot() {
+		long snapshotSequence;
+		synchronized (changeLock) {
+			snapshotSequence = sequence; // 先取序号再读库存：快照至少包含该序号之前的所有变更
+		}
+		Map<String, Integer> stocks = new HashMap<>();
+		transactionTemplate.executeWithoutResult(status -> {
+			try (Stream<String> ids = productRepository.streamAllIds()) {
+				ids.forEach(id -> stocks.put(id, stockOf(id)));
+			}
+		});
+		stocks.putAll(overrides);
+		return new StockSnapshot(snapshotSequence, stocks);
+	}
+
+	@GetMapping(value = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+	public SseEmitter changes(@RequestParam(defaultValue = "0") long after) {
+		SseEmitter emitter = new SseEmitter(0L); // 不超时，直到任意一方断开
+		synchronized (changeLock) {
+			boolean historyMissing = after < sequence && (history.isEmpty() || history.firstKey() > after + 1);
+			if (historyMissing || after > sequence) {
+				throw new ResponseStatusException(HttpStatus.GONE, "无法从序号 " + after + " 继续，请重新获取快照");
+			}
+			history.tailMap(after, false).values().forEach(change -> send(emitter, change));
+			subscribers.add(emitter);
+		}
+		emitter.onCompletion(() -> subscribers.remove(emitter));
+		emitter.onTimeout(() -> subscribers.remove(emitter));
+		emitter.onError(ex -> subscribers.remove(emitter));
+		return emitter;
+	}
+
+	@GetMapping("/stub/calls")
+	public long servedCalls() {
+		return servedCalls.get();
+	}
+
+	private int stockOf(String productId) {
+		Integer stock = overrides.get(productId);
+		return stock != null ? stock : Math.floorMod(productId.hashCode(), 100);
+	}
+
+	private void send(SseEmitter emitter, StockChange change) {
+		try {
+			emitter.send(SseEmitter.event()
+					.id(Long.toString(change.getSequence()))
+					.data(change, MediaType.APPLICATION_JSON));
+		} catch (IOException | IllegalStateException e) {
+			subscribers.remove(emitter);
+			emitter.completeWithError(e);
+		}
+	}
+
+	private void simulateLatency() {
+		Duration delay = latency;
+		if (tailProbability > 0 && ThreadLocalRandom.current().nextDouble() < tailProbability) {
+			delay = delay.plus(tailLatency);
+		}
+		if (delay.isZero()) {
+			return;
+		}
+		try {
+			Thread.sleep(delay);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package wo1261931780.spring_nextgen_showcase.entity;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.UUID;
+
+/**
+ * 批量导入订单时单个条目的结果，每个条目对应一行 NDJSON 输出。
+ * 无效或写入失败的条目以 REJECTED 状态单独标记，不影响其他条目。
+ * @author junw
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BulkOrderResult {
+
+	public enum Status {
+		ACCEPTED,
+		REJECTED
+	}
+
+	private long index;    // 条目在请求中的序号：JSON 数组中的下标，或 NDJSON 中的行号（从 0 开始）
+	private Status status;
+	private UUID orderId;  // status 为 REJECTED 时为 null
+	private String error;  // status 为 ACCEPTED 时为 null
+
+	public static BulkOrderResult accepted(long index, UUID orderId) {
+		return new BulkOrderResult(index, Status.ACCEPTED, orderId, null);
+	}
+
+	public static BulkOrderResult rejected(long index, String error) {
+		return new BulkOrderResult(index, Status.REJECTED, null, error);
+	}
+}
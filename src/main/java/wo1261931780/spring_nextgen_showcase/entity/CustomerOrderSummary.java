@@ -0,0 +1,38 @@
+package wo1261931780.spring_nextgen_showcase.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 单个客户的订单汇总（读模型），由内存中的聚合直接生成，查询时不访问 orders 表。
+ * @author junw
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CustomerOrderSummary {
+
+	private String customerName;
+	private long totalOrders;
+	private Map<String, Long> ordersByStatus; // 状态 -> 订单数，只包含数量大于 0 的状态
+	private LocalDateTime lastOrderDate;
+	private List<LatestOrder> latestOrders;   // 最近的订单，按下单时间从新到旧排列
+
+	/**
+	 * 最近订单列表中的一项。
+	 */
+	@Data
+	@NoArgsConstructor
+	@AllArgsConstructor
+	public static class LatestOrder {
+		private UUID id;
+		private LocalDateTime orderDate;
+		private String status;
+	}
+}
@@ -3,8 +3,6 @@ package wo1261931780.spring_nextgen_showcase.entity;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
 import jakarta.persistence.Table;
-import jakarta.persistence.GeneratedValue;
-import jakarta.persistence.GenerationType;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -28,7 +26,7 @@ public class Order {
 
 	// --- Getters and Setters ---
 	@Id
-	@GeneratedValue(strategy = GenerationType.UUID) // 使用UUID作为主键
+	@UuidV7 // 按时间递增的 UUIDv7 主键，新订单追加在主键索引的末端附近，避免随机 UUID 造成的页分裂
 	private UUID id;
 
 	private String customerName;
@@ -0,0 +1,40 @@
+package wo1261931780.spring_nextgen_showcase.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 创建订单的请求体，单个创建 (POST /api/orders) 与批量导入 (POST /api/orders/bulk) 共用。
+ * @author junw
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderCreationRequest {
+
+	public static final int MAX_CUSTOMER_NAME_LENGTH = 255;
+
+	private String customerName;
+	// 可以添加其他需要的字段，如产品列表等
+	// private List<String> productIds;
+
+	/**
+	 * 不访问任何外部资源的基本校验。
+	 *
+	 * @param request 请求体
+	 * @return 校验失败的原因，通过时返回 null
+	 */
+	public static String validationError(OrderCreationRequest request) {
+		if (request == null) {
+			return "请求体不能为 null";
+		}
+		if (request.customerName == null || request.customerName.isBlank()) {
+			return "customerName 不能为空";
+		}
+		if (request.customerName.length() > MAX_CUSTOMER_NAME_LENGTH) {
+			return "customerName 不能超过 " + MAX_CUSTOMER_NAME_LENGTH + " 个字符";
+		}
+		return null;
+	}
+}
@@ -0,0 +1,39 @@
+package wo1261931780.spring_nextgen_showcase.entity;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * 异步受理的订单请求的状态（状态资源），通过 {@code GET /api/orders/requests/{id}} 轮询或 SSE 订阅。
+ * 每次状态变化都生成一个新的不可变快照，不会在发出之后再被修改。
+ * @author junw
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class OrderTicket {
+
+	public enum Status {
+		ACCEPTED,   // 已进入受理队列，等待处理
+		PROCESSING, // 正在处理
+		COMPLETED,  // 订单已创建并持久化
+		FAILED      // 处理失败，可以重新提交
+	}
+
+	private UUID id;
+	private Status status;
+	private UUID orderId;    // status 为 COMPLETED 时为创建的订单ID
+	private String error;    // status 为 FAILED 时为失败原因
+	private Instant acceptedAt;
+	private Instant updatedAt;
+
+	public OrderTicket next(Status status, UUID orderId, String error) {
+		return new OrderTicket(id, status, orderId, error, acceptedAt, Instant.now());
+	}
+}
@@ -0,0 +1,53 @@
+package wo1261931780.spring_nextgen_showcase.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * 订单生命周期事件的发件箱 (transactional outbox) 记录。
+ * <p>
+ * 与订单在同一个事务中写入，由 OutboxRelay 按 ID 顺序读取、投递给 OrderEventSink 后删除。
+ * ID 使用序列生成（每次预分配一段），插入前即可确定，不影响 JDBC 批处理。
+ * </p>
+ * @author junw
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "order_outbox")
+public class OutboxEvent {
+
+	public enum Type {
+		ORDER_CREATED,
+		ORDER_STATUS_CHANGED
+	}
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "order_outbox_seq")
+	@SequenceGenerator(name = "order_outbox_seq", sequenceName = "order_outbox_seq", allocationSize = 500)
+	private Long id;
+
+	private UUID orderId;   // 事件所属的订单，同一个订单的事件按 ID 顺序投递
+	@Enumerated(EnumType.STRING) // 按名称存储，调整枚举顺序或新增类型不会改变已有记录的含义
+	@Column(length = 32)
+	private Type type;
+
+	@Column(length = 4000)
+	private String payload; // 事件内容 (JSON)
+
+	private Instant createdAt;
+}
@@ -11,7 +11,10 @@ package wo1261931780.spring_nextgen_showcase.entity;
  */
 
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -29,6 +32,8 @@ import java.math.BigDecimal;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity // 假设这是一个JPA实体，如果 ProductRepository.findById(id) 存在的话
+@EntityListeners(ProductEntityListener.class) // 写入时发布 ProductChangedEvent，用于缓存失效等
+@Table(indexes = @Index(name = "idx_product_name", columnList = "name")) // 支持按名称前缀过滤的分页查询
 public class Product {
 
 	@Id
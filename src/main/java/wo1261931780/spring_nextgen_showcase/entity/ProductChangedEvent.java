@@ -0,0 +1,27 @@
+package wo1261931780.spring_nextgen_showcase.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 产品写入事件，在 Product 实体被插入、更新或删除时由 {@link ProductEntityListener} 发布。
+ * <p>
+ * 缓存、索引等依赖产品数据的组件通过 {@code @EventListener} 或 {@code @TransactionalEventListener}
+ * 订阅此事件以保持与数据库一致。
+ * </p>
+ * @author junw
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class ProductChangedEvent {
+
+	public enum Type {
+		SAVED,
+		DELETED
+	}
+
+	private final String productId;
+	private final Type type;
+}
@@ -12,6 +12,7 @@ import lombok.NoArgsConstructor;
 /**
  * 用于封装产品详细信息，包括产品基本信息和库存数量。
  * 在 ProductController 中作为响应体返回。
+ * 库存服务不可用时，库存可能是 "最后已知库存"，此时 {@code stockStale} 为 true。
  * @author junw
  */
 @Data
@@ -19,14 +20,92 @@ import lombok.NoArgsConstructor;
 @AllArgsConstructor
 public class ProductDetail {
 
+	/**
+	 * 库存服务不可用或超时时使用的 "库存未知" 标记值。
+	 */
+	public static final int UNKNOWN_STOCK = -1;
+
 	private Product product;
-	private Integer stock; // 库存数量
+	private Integer stock; // 库存数量，UNKNOWN_STOCK 表示库存未知
+	private boolean stockStale; // 库存是否为库存服务不可用时返回的最后已知值（可能已经过期）
+
+	public ProductDetail(Product product, Integer stock) {
+		this(product, stock, false);
+	}
+
+	/**
+	 * 创建一个库存未知的产品详情（库存服务失败或未能在截止时间内返回时的降级结果）。
+	 *
+	 * @param product 产品信息
+	 * @return 库存为 UNKNOWN_STOCK 的 ProductDetail
+	 */
+	public static ProductDetail withUnknownStock(Product product) {
+		return new ProductDetail(product, UNKNOWN_STOCK);
+	}
+
+	/**
+	 * 创建一个库存为最后已知值的产品详情（库存服务熔断或失败时的降级结果）。
+	 *
+	 * @param product 产品信息
+	 * @param stock   最后已知的库存数量
+	 * @return stockStale 为 true 的 ProductDetail
+	 */
+	public static ProductDetail withStaleStock(Product product, Integer stock) {
+		return new ProductDetail(product, stock, true);
+	}
+
+	/**
+	 * @return 库存是否来自库存服务的实时结果（既不是未知，也不是过期的最后已知值）
+	 */
+	public boolean hasLiveStock() {
+		return !stockStale && stock != null && stock != UNKNOWN_STOCK;
+	}
+
+	/**
+	 * 计算产品详情的强 ETag（带引号）。
+	 * <p>
+	 * 直接对产品各字段与库存数量做 64 位哈希，不需要先序列化响应体；
+	 * 任何一个会出现在响应中的字段变化，ETag 都会随之变化。
+	 * </p>
+	 *
+	 * @param product 产品信息
+	 * @param stock   库存数量
+	 * @return ETag，例如 {@code "5f1c0d9a3b2e4f60"}
+	 */
+	public static String etagOf(Product product, Integer stock) {
+		long hash = 0xcbf29ce484222325L; // FNV-1a 64 位初始值
+		hash = mix(hash, product.getId());
+		hash = mix(hash, product.getName());
+		hash = mix(hash, product.getDescription());
+		hash = mix(hash, product.getPrice() != null ? product.getPrice().toString() : null); // 与 JSON 中的精度一致
+		hash = mix(hash, String.valueOf(stock));
+		return "\"" + Long.toHexString(hash) + "\"";
+	}
+
+	/**
+	 * @return 当前产品详情的 ETag，见 {@link #etagOf(Product, Integer)}
+	 */
+	public String etag() {
+		return etagOf(product, stock);
+	}
+
+	private static long mix(long hash, String value) {
+		if (value != null) {
+			for (int i = 0; i < value.length(); i++) {
+				hash ^= value.charAt(i);
+				hash *= 0x100000001b3L;
+			}
+		}
+		hash ^= value == null ? 0xff : 0xfe; // 字段分隔符，区分 null 与空字符串，并避免相邻字段拼接产生相同结果
+		return hash * 0x100000001b3L;
+	}
 
 	@Override
 	public String toString() {
 		return "ProductDetail{" +
 				"product=" + (product != null ? product.getName() : "null") + // 避免 product 为 null 时出错
 				", stock=" + stock +
+				(stockStale ? " (stale)" : "") +
 				'}';
 	}
 }
@@ -0,0 +1,34 @@
+package wo1261931780.spring_nextgen_showcase.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 批量产品详情接口中的单个结果项。
+ * 每个请求的产品ID都会对应一个结果项，找不到的产品以 NOT_FOUND 状态单独标记，
+ * 而不会让整个批量请求返回 404。
+ * @author junw
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductDetailItem {
+
+	public enum Status {
+		FOUND,
+		NOT_FOUND
+	}
+
+	private String id;
+	private Status status;
+	private ProductDetail detail; // status 为 NOT_FOUND 时为 null
+
+	public static ProductDetailItem found(String id, ProductDetail detail) {
+		return new ProductDetailItem(id, Status.FOUND, detail);
+	}
+
+	public static ProductDetailItem notFound(String id) {
+		return new ProductDetailItem(id, Status.NOT_FOUND, null);
+	}
+}
@@ -0,0 +1,39 @@
+package wo1261931780.spring_nextgen_showcase.entity;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+/**
+ * Product 实体的 JPA 生命周期监听器。
+ * <p>
+ * 无论产品是通过 ProductRepository 还是其他 EntityManager 操作写入的，
+ * 都会在这里转换为 {@link ProductChangedEvent} 发布到 Spring 容器。
+ * Spring Boot 为 Hibernate 配置了 SpringBeanContainer，因此这里可以使用构造函数注入。
+ * </p>
+ * @author junw
+ */
+@Component
+public class ProductEntityListener {
+
+	private final ApplicationEventPublisher eventPublisher;
+
+	@Autowired
+	public ProductEntityListener(ApplicationEventPublisher eventPublisher) {
+		this.eventPublisher = eventPublisher;
+	}
+
+	@PostPersist
+	@PostUpdate
+	public void afterSave(Product product) {
+		eventPublisher.publishEvent(new ProductChangedEvent(product.getId(), ProductChangedEvent.Type.SAVED));
+	}
+
+	@PostRemove
+	public void afterRemove(Product product) {
+		eventPublisher.publishEvent(new ProductChangedEvent(product.getId(), ProductChangedEvent.Type.DELETED));
+	}
+}
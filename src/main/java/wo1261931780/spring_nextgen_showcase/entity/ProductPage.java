@@ -0,0 +1,21 @@
+package wo1261931780.spring_nextgen_showcase.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 键集分页浏览产品目录时的一页结果。
+ * nextPageToken 是不透明的续页令牌，原样传回即可获取下一页；为 null 表示已经是最后一页。
+ * @author junw
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductPage {
+
+	private List<Product> items;
+	private String nextPageToken;
+}
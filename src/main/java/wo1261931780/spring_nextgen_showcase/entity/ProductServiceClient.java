@@ -14,6 +14,7 @@ import org.springframework.web.bind.annotation.RequestBody; // 同上
 import org.springframework.web.service.annotation.GetExchange;
 import org.springframework.web.service.annotation.HttpExchange;
 import org.springframework.web.service.annotation.PostExchange;
+import reactor.core.publisher.Mono;
 
 /**
  * 声明式的产品服务 HTTP 客户端接口。
@@ -50,6 +51,16 @@ public interface ProductServiceClient {
 	@GetExchange("/{id}")
 	Product getProduct(@PathVariable("id") String id); // @PathVariable 用于路径变量绑定
 
+	/**
+	 * 根据产品ID获取产品信息的非阻塞版本。
+	 * 返回 Mono 时，声明式客户端直接基于 WebClient 发起请求，不会阻塞调用线程。
+	 *
+	 * @param id 产品ID
+	 * @return 产品信息的 Mono
+	 */
+	@GetExchange("/{id}")
+	Mono<Product> getProductReactive(@PathVariable("id") String id);
+
 	/**
 	 * 创建一个新产品。
 	 * 对应的 HTTP POST 请求会发往 <baseUrl>/products
@@ -0,0 +1,42 @@
+package wo1261931780.spring_nextgen_showcase.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 批量校验订单产品时单个产品的结果。
+ * @author junw
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductValidationItem {
+
+	public enum Status {
+		VALID,
+		NOT_FOUND,   // 产品服务确认产品不存在，订单不可能通过校验
+		UNAVAILABLE, // 产品服务调用失败或超时，无法确定产品是否存在，可以稍后重试
+		SKIPPED      // 已有其他产品不存在，不再校验
+	}
+
+	private String productId;
+	private Status status;
+	private String error; // status 为 VALID 时为 null
+
+	public static ProductValidationItem valid(String productId) {
+		return new ProductValidationItem(productId, Status.VALID, null);
+	}
+
+	public static ProductValidationItem notFound(String productId) {
+		return new ProductValidationItem(productId, Status.NOT_FOUND, "产品不存在");
+	}
+
+	public static ProductValidationItem unavailable(String productId, String error) {
+		return new ProductValidationItem(productId, Status.UNAVAILABLE, error);
+	}
+
+	public static ProductValidationItem skipped(String productId) {
+		return new ProductValidationItem(productId, Status.SKIPPED, "已有其他产品不存在，未校验");
+	}
+}
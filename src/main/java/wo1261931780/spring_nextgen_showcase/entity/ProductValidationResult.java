@@ -0,0 +1,25 @@
+package wo1261931780.spring_nextgen_showcase.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 批量校验订单产品的结果：每个不同的产品ID对应一个结果项，顺序与请求中首次出现的顺序一致。
+ * @author junw
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductValidationResult {
+
+	private boolean valid; // 全部产品均为 VALID 时为 true
+	private List<ProductValidationItem> items;
+
+	public static ProductValidationResult of(List<ProductValidationItem> items) {
+		boolean valid = items.stream().allMatch(item -> item.getStatus() == ProductValidationItem.Status.VALID);
+		return new ProductValidationResult(valid, items);
+	}
+}
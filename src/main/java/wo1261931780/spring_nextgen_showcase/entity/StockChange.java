@@ -0,0 +1,24 @@
+package wo1261931780.spring_nextgen_showcase.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 库存服务变更流中的一条库存变更：把某个产品的库存设置为新值。
+ * <p>
+ * {@code sequence} 由库存服务全局单调递增分配、连续不间断，订阅方据此检测丢失的变更；
+ * {@code timestamp} 为库存服务产生该变更的时间（epoch 毫秒），用于计算复制延迟。
+ * </p>
+ * @author junw
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockChange {
+
+	private long sequence;
+	private String productId;
+	private int stock;
+	private long timestamp;
+}
@@ -0,0 +1,32 @@
+package wo1261931780.spring_nextgen_showcase.entity;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * 库存预占引擎中每个产品库存计数器的持久化副本。
+ * <p>
+ * 由 StockReservationService 以后写 (write-behind) 的方式批量异步刷新，只反映最近一次刷新时的值；
+ * 应用启动时用于恢复计数器。
+ * </p>
+ * @author junw
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "stock_levels")
+public class StockLevel {
+
+	@Id
+	private String productId;
+	private int available; // 可售数量（不含已预占的部分）
+	private int reserved;  // 已预占、尚未确认或释放的数量
+	private Instant updatedAt;
+}
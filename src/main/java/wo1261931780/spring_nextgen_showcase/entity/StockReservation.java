@@ -0,0 +1,23 @@
+package wo1261931780.spring_nextgen_showcase.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * 一次库存预占：为一个订单同时预占的多个产品及数量。
+ * 在 {@code expiresAt} 之前必须确认或释放，否则会被自动释放。
+ * @author junw
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class StockReservation {
+
+	private final String id;
+	private final Map<String, Integer> items; // 产品ID -> 预占数量
+	private final Instant expiresAt;
+}
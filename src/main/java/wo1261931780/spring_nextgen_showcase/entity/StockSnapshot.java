@@ -0,0 +1,21 @@
+package wo1261931780.spring_nextgen_showcase.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * 库存服务的全量快照：截至 {@code sequence} 的所有库存（可能已经包含之后的部分变更，
+ * 变更都是 "设置为某值"，重复应用是幂等的）。订阅方从 {@code sequence} 之后继续消费变更流。
+ * @author junw
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockSnapshot {
+
+	private long sequence;
+	private Map<String, Integer> stocks;
+}
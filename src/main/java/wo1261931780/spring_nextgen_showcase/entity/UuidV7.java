@@ -0,0 +1,28 @@
+package wo1261931780.spring_nextgen_showcase.entity;
+
+import org.hibernate.annotations.IdGeneratorType;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标注在 UUID 类型的主键上，插入时由 {@link UuidV7Generator} 生成按时间递增的 UUIDv7。
+ * <p>
+ * 用法：
+ * <pre>
+ * {@code
+ * @Id
+ * @UuidV7
+ * private UUID id;
+ * }
+ * </pre>
+ * </p>
+ * @author junw
+ */
+@IdGeneratorType(UuidV7Generator.class)
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.METHOD})
+public @interface UuidV7 {
+}
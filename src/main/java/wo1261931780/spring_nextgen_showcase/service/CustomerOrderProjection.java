@@ -0,0 +1,139 @@
+package wo1261931780.spring_nextgen_showcase.service;
+
+import wo1261931780.spring_nextgen_showcase.entity.CustomerOrderSummary;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按客户聚合的订单投影：每个客户一个聚合，记录订单总数、各状态的订单数，以及最近的 {@code latestSize} 个订单。
+ * <p>
+ * 聚合随订单的创建与状态变化增量更新，每次更新与查询只涉及一个客户的聚合，代价与订单总数无关；
+ * 每个聚合由自己的锁保护，不同客户的更新互不阻塞。
+ * 状态变化以 "从 A 到 B" 的增量计数，同一个订单的变化只要按发生顺序应用，结果就与 orders 表一致。
+ * </p>
+ * <p>
+ * 没有客户名称 (customerName 为 null) 的订单不属于任何客户，投影忽略它们。
+ * </p>
+ * @author junw
+ */
+public class CustomerOrderProjection {
+
+	// 最近订单按下单时间从新到旧排列，时间相同时按ID（UUIDv7，按时间递增）从大到小
+	private static final Comparator<CustomerOrderSummary.LatestOrder> NEWEST_FIRST =
+			Comparator.comparing(CustomerOrderSummary.LatestOrder::getOrderDate)
+					.thenComparing(CustomerOrderSummary.LatestOrder::getId)
+					.reversed();
+
+	private final int latestSize;
+	private final ConcurrentHashMap<String, Aggregate> aggregates = new ConcurrentHashMap<>();
+
+	public CustomerOrderProjection(int latestSize) {
+		if (latestSize <= 0) {
+			throw new IllegalArgumentException("最近订单的数量必须大于 0");
+		}
+		this.latestSize = latestSize;
+	}
+
+	/**
+	 * 应用一个已经提交的新订单。
+	 *
+	 * @return 是否已应用（没有客户名称的订单被忽略）
+	 */
+	public boolean orderCreated(String customerName, UUID orderId, LocalDateTime orderDate, String status) {
+		if (customerName == null) {
+			return false;
+		}
+		aggregates.computeIfAbsent(customerName, name -> new Aggregate())
+				.created(new CustomerOrderSummary.LatestOrder(orderId, orderDate, status));
+		return true;
+	}
+
+	/**
+	 * 应用一次订单状态变化。
+	 *
+	 * @return 是否已应用（没有客户名称的订单被忽略）
+	 */
+	public boolean statusChanged(String customerName, UUID orderId, String previousStatus, String newStatus) {
+		if (customerName == null) {
+			return false;
+		}
+		aggregates.computeIfAbsent(customerName, name -> new Aggregate())
+				.statusChanged(orderId, previousStatus, newStatus);
+		return true;
+	}
+
+	/**
+	 * @param customerName 客户名称
+	 * @return 客户的订单汇总，客户没有订单（或 customerName 为 null）时返回 null
+	 */
+	public CustomerOrderSummary summary(String customerName) {
+		if (customerName == null) {
+			return null;
+		}
+		Aggregate aggregate = aggregates.get(customerName);
+		return aggregate == null ? null : aggregate.summary(customerName);
+	}
+
+	/**
+	 * @return 有订单的客户数量
+	 */
+	public int customers() {
+		return aggregates.size();
+	}
+
+	private final class Aggregate {
+
+		private long total;
+		private final Map<String, Long> byStatus = new HashMap<>();
+		private final List<CustomerOrderSummary.LatestOrder> latest = new ArrayList<>(latestSize + 1);
+
+		synchronized void created(CustomerOrderSummary.LatestOrder order) {
+			total++;
+			byStatus.merge(order.getStatus(), 1L, Long::sum);
+			// 并发提交的订单可能乱序到达，插入到按时间排序的位置，超出数量时丢弃最旧的
+			int position = 0;
+			while (position < latest.size() && NEWEST_FIRST.compare(latest.get(position), order) < 0) {
+				position++;
+			}
+			if (position < latestSize) {
+				latest.add(position, order);
+				if (latest.size() > latestSize) {
+					latest.removeLast();
+				}
+			}
+		}
+
+		synchronized void statusChanged(UUID orderId, String previousStatus, String newStatus) {
+			byStatus.merge(previousStatus, -1L, Long::sum);
+			byStatus.merge(newStatus, 1L, Long::sum);
+			for (CustomerOrderSummary.LatestOrder order : latest) {
+				if (order.getId().equals(orderId)) {
+					order.setStatus(newStatus);
+					break;
+				}
+			}
+		}
+
+		synchronized CustomerOrderSummary summary(String customerName) {
+			Map<String, Long> counts = new TreeMap<>();
+			byStatus.forEach((status, count) -> {
+				if (count != 0) {
+					counts.put(status, count);
+				}
+			});
+			List<CustomerOrderSummary.LatestOrder> orders = latest.stream()
+					.map(order -> new CustomerOrderSummary.LatestOrder(order.getId(), order.getOrderDate(), order.getStatus()))
+					.toList();
+			LocalDateTime lastOrderDate = orders.isEmpty() ? null : orders.getFirst().getOrderDate();
+			return new CustomerOrderSummary(customerName, total, counts, lastOrderDate, orders);
+		}
+	}
+}
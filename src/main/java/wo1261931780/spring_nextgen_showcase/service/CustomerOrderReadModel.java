@@ -0,0 +1,140 @@
+package wo1261931780.spring_nextgen_showcase.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import wo1261931780.spring_nextgen_showcase.client.OrderRepository;
+import wo1261931780.spring_nextgen_showcase.entity.CustomerOrderSummary;
+import wo1261931780.spring_nextgen_showcase.entity.Order;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * 按客户的订单读模型 (CQRS)：在内存中维护每个客户的订单数与最近订单，仪表盘查询不再对 orders 表执行 GROUP BY。
+ * <ul>
+ *     <li>启动时以流的方式扫描一次 orders 表重建（在 Web 服务器开始接收请求之前完成，不会与新订单交错）；</li>
+ *     <li>此后由 {@link OrderWriter} 在订单提交后、由 {@link OrderStatusService} 在状态变化时增量更新；</li>
+ *     <li>查询只读取一个客户的聚合，代价与订单总数无关。</li>
+ * </ul>
+ * 读模型只保存在本节点的内存中；多节点部署时各节点只看到自己写入的订单，需要改为从发件箱事件更新。
+ * 没有客户名称的订单不计入任何客户。
+ * <p>
+ * 增量更新发生在订单已经提交之后，更新失败只记录日志与指标，不会抛给调用方（订单不能因此被回滚或重写）。
+ * 指标：{@code orders.read-model.customers}、{@code orders.read-model.failures}。
+ * </p>
+ * @author junw
+ */
+@Service
+public class CustomerOrderReadModel {
+
+	private static final Logger logger = LoggerFactory.getLogger(CustomerOrderReadModel.class);
+
+	private final OrderRepository orderRepository;
+	private final TransactionTemplate transactionTemplate;
+	private final MeterRegistry meterRegistry;
+	private final int latestSize;
+
+	private volatile CustomerOrderProjection projection;
+
+	private final Counter failureCounter;
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Autowired
+	public CustomerOrderReadModel(OrderRepository orderRepository, TransactionTemplate transactionTemplate,
+								  MeterRegistry meterRegistry,
+								  @Value("${showcase.orders.read-model.latest-size:10}") int latestSize) {
+		this.orderRepository = orderRepository;
+		this.transactionTemplate = transactionTemplate;
+		this.meterRegistry = meterRegistry;
+		this.latestSize = latestSize;
+		this.projection = new CustomerOrderProjection(latestSize);
+		this.failureCounter = Counter.builder("orders.read-model.failures")
+				.description("Committed order changes that could not be applied to the in-memory order read model.")
+				.register(meterRegistry);
+	}
+
+	/**
+	 * 构造完成后注册指标并重建读模型。
+	 */
+	@PostConstruct
+	void initialize() {
+		Gauge.builder("orders.read-model.customers", this, readModel -> readModel.projection.customers())
+				.description("Customers tracked by the in-memory order read model.")
+				.register(meterRegistry);
+		rebuild();
+	}
+
+	/**
+	 * 从 orders 表重建读模型。在 Bean 初始化阶段执行，此时 Web 服务器尚未开始接收请求，没有并发写入的订单。
+	 */
+	public void rebuild() {
+		long start = System.nanoTime();
+		CustomerOrderProjection rebuilt = new CustomerOrderProjection(latestSize);
+		long[] counts = transactionTemplate.execute(status -> {
+			long scanned = 0;
+			long skipped = 0;
+			try (Stream<Order> orders = orderRepository.streamAll()) {
+				for (Order order : (Iterable<Order>) orders::iterator) {
+					if (!rebuilt.orderCreated(order.getCustomerName(), order.getId(), order.getOrderDate(), order.getStatus())) {
+						skipped++;
+					}
+					entityManager.detach(order); // 与产品导出一样，避免持久化上下文随扫描规模增长
+					scanned++;
+				}
+			}
+			return new long[]{scanned, skipped};
+		});
+		projection = rebuilt;
+		logger.info("订单读模型已从 {} 个订单重建 ({} 个客户, 忽略 {} 个没有客户名称的订单), 耗时 {} ms", counts[0],
+				rebuilt.customers(), counts[1], (System.nanoTime() - start) / 1_000_000);
+	}
+
+	/**
+	 * 应用已经提交的新订单。不抛出异常：单个订单应用失败时记录日志与指标，继续应用其余订单。
+	 */
+	public void ordersCreated(List<Order> orders) {
+		CustomerOrderProjection current = projection;
+		for (Order order : orders) {
+			try {
+				current.orderCreated(order.getCustomerName(), order.getId(), order.getOrderDate(), order.getStatus());
+			} catch (RuntimeException e) {
+				failureCounter.increment();
+				logger.error("订单 {} 已提交，但未能应用到订单读模型", order.getId(), e);
+			}
+		}
+	}
+
+	/**
+	 * 应用一次订单状态变化。调用方必须保证同一个订单的变化按发生顺序应用。
+	 * 不抛出异常：应用失败时记录日志与指标。
+	 */
+	public void statusChanged(String customerName, UUID orderId, String previousStatus, String newStatus) {
+		try {
+			projection.statusChanged(customerName, orderId, previousStatus, newStatus);
+		} catch (RuntimeException e) {
+			failureCounter.increment();
+			logger.error("订单 {} 的状态变化 {} -> {} 未能应用到订单读模型", orderId, previousStatus, newStatus, e);
+		}
+	}
+
+	/**
+	 * @param customerName 客户名称
+	 * @return 客户的订单汇总，客户没有订单时返回 null
+	 */
+	public CustomerOrderSummary summary(String customerName) {
+		return projection.summary(customerName);
+	}
+}
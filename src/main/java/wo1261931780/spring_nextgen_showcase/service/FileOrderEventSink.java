@@ -0,0 +1,64 @@
+package wo1261931780.spring_nextgen_showcase.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import wo1261931780.spring_nextgen_showcase.entity.OutboxEvent;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * 以 NDJSON 格式追加写入文件的事件投递目标（{@code showcase.outbox.sink.type=file}）。
+ * <p>
+ * 每批事件一次写入并 fsync 之后才返回，因此 publish 返回后事件已经落盘。
+ * 文件路径通过 {@code showcase.outbox.sink.file} 配置。
+ * </p>
+ * @author junw
+ */
+@Component
+@ConditionalOnProperty(name = "showcase.outbox.sink.type", havingValue = "file")
+public class FileOrderEventSink implements OrderEventSink {
+
+	private static final byte NEWLINE = '\n';
+
+	private final ObjectWriter eventWriter;
+	private final FileChannel channel;
+
+	@Autowired
+	public FileOrderEventSink(ObjectMapper objectMapper,
+							  @Value("${showcase.outbox.sink.file:order-events.ndjson}") Path file) throws IOException {
+		this.eventWriter = objectMapper.writerFor(OutboxEvent.class);
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+
+	@Override
+	public void publish(List<OutboxEvent> events) throws IOException {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream(events.size() * 256);
+		for (OutboxEvent event : events) {
+			buffer.write(eventWriter.writeValueAsBytes(event));
+			buffer.write(NEWLINE);
+		}
+		ByteBuffer bytes = ByteBuffer.wrap(buffer.toByteArray());
+		synchronized (channel) {
+			while (bytes.hasRemaining()) {
+				channel.write(bytes);
+			}
+			channel.force(false);
+		}
+	}
+
+	@PreDestroy
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -0,0 +1,205 @@
+package wo1261931780.spring_nextgen_showcase.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import wo1261931780.spring_nextgen_showcase.config.VirtualThreadExecutors;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 带 "对冲请求 (hedged request)" 的库存查询。
+ * <p>
+ * 库存服务的尾延迟决定了产品详情页的 p99。发出第一次调用后，如果在观测到的 p9x 延迟
+ * （{@code showcase.stock.hedge.percentile}，取自本地延迟直方图）内仍未返回，就再发出一次相同的调用，
+ * 以先返回的结果为准，并取消（中断）另一个调用。每次调用都经过 {@link StockBatchAggregator}，
+ * 启用微批时对冲请求同样会被合并进下一个批次。
+ * </p>
+ * <p>
+ * 对冲会增加库存服务的负载，因此受预算约束：每次首发调用积攒 {@code budget-percent}% 次对冲的额度，
+ * 额度不足时不发出对冲，即对冲请求最多占流量的 {@code budget-percent}%（允许少量突发）。
+ * 预算用一个 AtomicLong 以 CAS 方式扣减，无锁。延迟样本不足 {@code min-samples} 时不对冲。
+ * </p>
+ * <p>
+ * 指标：
+ * <ul>
+ *     <li>{@code stock.client.latency}：每次库存调用的耗时（含被对冲取消的调用，按取消时的耗时记录，避免低估尾延迟）</li>
+ *     <li>{@code stock.hedge.sent}：发出的对冲请求数</li>
+ *     <li>{@code stock.hedge.wins}：对冲请求先于首发调用返回的次数</li>
+ *     <li>{@code stock.hedge.throttled}：因预算不足而未发出的对冲数</li>
+ * </ul>
+ * </p>
+ * @author junw
+ */
+@Service
+public class HedgedStockClient {
+
+	private static final Logger logger = LoggerFactory.getLogger(HedgedStockClient.class);
+
+	// 预算的计量单位：一次对冲消耗 100 个单位，每次首发调用积攒 budgetPercent 个单位
+	private static final long HEDGE_COST = 100;
+	private static final int MAX_BURST = 10;
+	// 对冲延迟的刷新间隔，避免每个请求都计算一次分位数快照
+	private static final long DELAY_REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	private final StockBatchAggregator stockBatchAggregator;
+	private final VirtualThreadExecutors executors;
+
+	private final boolean enabled;
+	private final double percentile;
+	private final long budgetPercent;
+	private final long minSamples;
+	private final Duration minDelay;
+	private final Duration maxDelay;
+
+	private final AtomicLong budget = new AtomicLong(HEDGE_COST); // 启动时允许一次对冲
+	private volatile long hedgeDelayNanos = -1; // -1 表示样本不足，不对冲
+	private volatile long delayRefreshedAt;
+
+	private final Timer latencyTimer;
+	private final Counter sentCounter;
+	private final Counter winsCounter;
+	private final Counter throttledCounter;
+
+	@Autowired
+	public HedgedStockClient(StockBatchAggregator stockBatchAggregator, VirtualThreadExecutors executors, MeterRegistry meterRegistry,
+							 @Value("${showcase.stock.hedge.enabled:false}") boolean enabled,
+							 @Value("${showcase.stock.hedge.percentile:0.95}") double percentile,
+							 @Value("${showcase.stock.hedge.budget-percent:5}") long budgetPercent,
+							 @Value("${showcase.stock.hedge.min-samples:100}") long minSamples,
+							 @Value("${showcase.stock.hedge.min-delay:5ms}") Duration minDelay,
+							 @Value("${showcase.stock.hedge.max-delay:500ms}") Duration maxDelay) {
+		this.stockBatchAggregator = stockBatchAggregator;
+		this.executors = executors;
+		this.enabled = enabled;
+		this.percentile = percentile;
+		this.budgetPercent = budgetPercent;
+		this.minSamples = minSamples;
+		this.minDelay = minDelay;
+		this.maxDelay = maxDelay;
+
+		this.latencyTimer = Timer.builder("stock.client.latency")
+				.description("Latency of individual calls to the stock service, including hedges.")
+				.publishPercentiles(percentile)
+				.distributionStatisticExpiry(Duration.ofMinutes(1)) // 只反映最近的延迟分布
+				.register(meterRegistry);
+		this.sentCounter = Counter.builder("stock.hedge.sent")
+				.description("Hedged stock calls sent because the first call exceeded the observed latency percentile.")
+				.register(meterRegistry);
+		this.winsCounter = Counter.builder("stock.hedge.wins")
+				.description("Hedged stock calls that answered before the first call.")
+				.register(meterRegistry);
+		this.throttledCounter = Counter.builder("stock.hedge.throttled")
+				.description("Hedges not sent because the hedge budget was exhausted.")
+				.register(meterRegistry);
+		logger.info("库存查询对冲: {}, p{} 延迟, 预算 {}% 的流量", enabled ? "已启用" : "已关闭",
+				Math.round(percentile * 100), budgetPercent);
+	}
+
+	/**
+	 * 异步查询库存，必要时发出对冲请求。
+	 * 首发调用与对冲调用都失败时才以异常结束；结果确定后取消仍在进行的调用。
+	 *
+	 * @param productId 产品ID
+	 * @return 库存数量的 future
+	 */
+	public CompletableFuture<Integer> getStock(String productId) {
+		CompletableFuture<Integer> result = new CompletableFuture<>();
+		AtomicInteger pending = new AtomicInteger(1);
+		CompletableFuture<Integer> primary = attempt(productId, result, pending, false);
+		if (!enabled) {
+			return result;
+		}
+		earnBudget();
+
+		long delay = hedgeDelayNanos();
+		if (delay < 0) {
+			return result;
+		}
+		CompletableFuture.runAsync(() -> {
+			if (result.isDone()) {
+				return;
+			}
+			if (!tryAcquireHedge()) {
+				throttledCounter.increment();
+				return;
+			}
+			pending.incrementAndGet();
+			sentCounter.increment();
+			logger.debug("产品ID: {} 的库存查询超过 {} µs 未返回，发出对冲请求", productId, delay / 1000);
+			CompletableFuture<Integer> hedge = attempt(productId, result, pending, true);
+			result.whenComplete((stock, ex) -> hedge.cancel(true));
+		}, CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS, executors.shared()));
+
+		result.whenComplete((stock, ex) -> primary.cancel(true));
+		return result;
+	}
+
+	/**
+	 * 发出一次库存调用，成功时尝试以其结果完成 result；所有在途调用都失败时以最后一个异常结束 result。
+	 */
+	private CompletableFuture<Integer> attempt(String productId, CompletableFuture<Integer> result,
+											   AtomicInteger pending, boolean hedge) {
+		long start = System.nanoTime();
+		CompletableFuture<Integer> call = stockBatchAggregator.getStock(productId);
+		call.whenComplete((stock, ex) -> {
+			// 被取消的调用也记录其已经花费的时间：它至少这么慢，忽略它会让分位数偏低
+			latencyTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+			if (ex == null) {
+				if (result.complete(stock) && hedge) {
+					winsCounter.increment();
+				}
+			} else if (pending.decrementAndGet() == 0) {
+				result.completeExceptionally(ex);
+			}
+		});
+		return call;
+	}
+
+	private void earnBudget() {
+		long max = HEDGE_COST * MAX_BURST;
+		budget.getAndUpdate(tokens -> Math.min(tokens + budgetPercent, max));
+	}
+
+	private boolean tryAcquireHedge() {
+		long tokens;
+		do {
+			tokens = budget.get();
+			if (tokens < HEDGE_COST) {
+				return false;
+			}
+		} while (!budget.compareAndSet(tokens, tokens - HEDGE_COST));
+		return true;
+	}
+
+	/**
+	 * 当前的对冲延迟：观测到的 p9x 延迟，限制在 [min-delay, max-delay] 之内；样本不足时返回 -1。
+	 */
+	private long hedgeDelayNanos() {
+		long now = System.nanoTime();
+		if (now - delayRefreshedAt < DELAY_REFRESH_NANOS && delayRefreshedAt != 0) {
+			return hedgeDelayNanos;
+		}
+		delayRefreshedAt = now;
+		long delay = -1;
+		if (latencyTimer.count() >= minSamples) {
+			for (ValueAtPercentile value : latencyTimer.takeSnapshot().percentileValues()) {
+				if (value.percentile() == percentile) {
+					delay = Math.max(minDelay.toNanos(), Math.min(maxDelay.toNanos(), (long) value.value(TimeUnit.NANOSECONDS)));
+				}
+			}
+		}
+		hedgeDelayNanos = delay;
+		return delay;
+	}
+}
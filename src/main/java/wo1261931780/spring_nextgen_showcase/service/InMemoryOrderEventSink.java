@@ -0,0 +1,43 @@
+package wo1261931780.spring_nextgen_showcase.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import wo1261931780.spring_nextgen_showcase.entity.OutboxEvent;
+
+import java.util.ArrayDeque;
+import java.util.List;
+
+/**
+ * 保存在内存中的事件投递目标，只保留最近 {@code showcase.outbox.sink.in-memory-capacity} 个事件。
+ * 用于本地开发与测试（{@code showcase.outbox.sink.type=in-memory}，默认）。
+ * @author junw
+ */
+@Component
+@ConditionalOnProperty(name = "showcase.outbox.sink.type", havingValue = "in-memory", matchIfMissing = true)
+public class InMemoryOrderEventSink implements OrderEventSink {
+
+	private final int capacity;
+	private final ArrayDeque<OutboxEvent> events = new ArrayDeque<>();
+
+	public InMemoryOrderEventSink(@Value("${showcase.outbox.sink.in-memory-capacity:10000}") int capacity) {
+		this.capacity = capacity;
+	}
+
+	@Override
+	public synchronized void publish(List<OutboxEvent> batch) {
+		for (OutboxEvent event : batch) {
+			if (events.size() == capacity) {
+				events.removeFirst();
+			}
+			events.addLast(event);
+		}
+	}
+
+	/**
+	 * @return 最近投递的事件，按投递顺序排列
+	 */
+	public synchronized List<OutboxEvent> recent() {
+		return List.copyOf(events);
+	}
+}
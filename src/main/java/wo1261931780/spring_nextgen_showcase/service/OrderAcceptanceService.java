@@ -0,0 +1,371 @@
+package wo1261931780.spring_nextgen_showcase.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import wo1261931780.spring_nextgen_showcase.client.OrderQueueFullException;
+import wo1261931780.spring_nextgen_showcase.config.VirtualThreadExecutors;
+import wo1261931780.spring_nextgen_showcase.entity.Order;
+import wo1261931780.spring_nextgen_showcase.entity.OrderTicket;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 订单的异步受理：请求进入有界的受理队列后立即返回一个状态资源 ({@link OrderTicket})，
+ * 由 {@code showcase.orders.acceptance.workers} 个虚拟线程从队列中取出并发起处理。
+ * <ul>
+ *     <li>队列已满时 {@link #submit(Supplier)} 抛出 {@link OrderQueueFullException}（503 与 Retry-After），
+ *     内存占用不会随请求量无限增长；</li>
+ *     <li>工作线程只负责发起处理，不等待订单持久化确认：结果通过 future 回调写回状态，
+ *     同时处理中的请求数由 {@code max-in-flight} 限制，因此多个请求的订单可以进入 OrderWriter 的同一批次；</li>
+ *     <li>超过 {@code processing-timeout} 仍未结束的请求以 FAILED 结束（订单是否已写入未知），占用的名额随之归还；</li>
+ *     <li>状态保存在有容量上限的缓存中，结束的请求保留 {@code ticket-retention}，之后查询返回 404；</li>
+ *     <li>每次状态变化都会推送给订阅方（SSE），请求结束后订阅自动结束。推送在共享的虚拟线程执行器中按订阅方逐个串行进行，
+ *     慢的订阅方只会拖慢它自己，不会阻塞工作线程或其他订阅方。</li>
+ * </ul>
+ * 关闭时不再受理新请求，在 {@code shutdown-timeout} 内处理完已受理的请求。
+ * <p>
+ * 指标：{@code orders.acceptance.queued}、{@code orders.acceptance.rejected}、
+ * {@code orders.acceptance.processed{result=completed|failed}}、{@code orders.acceptance.latency}（从受理到结束的时间）。
+ * </p>
+ * @author junw
+ */
+@Service
+public class OrderAcceptanceService {
+
+	private static final Logger logger = LoggerFactory.getLogger(OrderAcceptanceService.class);
+
+	// 队列空闲时检查关闭标志的间隔
+	private static final long IDLE_POLL_MILLIS = 100;
+
+	private final int queueCapacity;
+	private final int workerCount;
+	private final int maxInFlight;
+	private final Duration retryAfter;
+	private final Duration processingTimeout;
+	private final Duration shutdownTimeout;
+	private final Semaphore inFlight;
+	private final Executor listenerExecutor;
+	private final BlockingQueue<Job> queue;
+	private final Cache<UUID, Tracker> tickets;
+	private final List<Thread> workers = new ArrayList<>();
+	private volatile boolean running = true;
+
+	private final Counter rejectedCounter;
+	private final Counter completedCounter;
+	private final Counter failedCounter;
+	private final Timer latencyTimer;
+
+	@Autowired
+	public OrderAcceptanceService(MeterRegistry meterRegistry, VirtualThreadExecutors executors,
+								  @Value("${showcase.orders.acceptance.workers:4}") int workerCount,
+								  @Value("${showcase.orders.acceptance.max-in-flight:1000}") int maxInFlight,
+								  @Value("${showcase.orders.acceptance.queue-capacity:10000}") int queueCapacity,
+								  @Value("${showcase.orders.acceptance.retry-after:1s}") Duration retryAfter,
+								  @Value("${showcase.orders.acceptance.processing-timeout:30s}") Duration processingTimeout,
+								  @Value("${showcase.orders.acceptance.ticket-retention:10m}") Duration ticketRetention,
+								  @Value("${showcase.orders.acceptance.max-tickets:100000}") long maxTickets,
+								  @Value("${showcase.orders.acceptance.shutdown-timeout:10s}") Duration shutdownTimeout) {
+		this.workerCount = workerCount;
+		this.queueCapacity = queueCapacity;
+		this.maxInFlight = maxInFlight;
+		this.retryAfter = retryAfter;
+		this.processingTimeout = processingTimeout;
+		this.shutdownTimeout = shutdownTimeout;
+		this.inFlight = new Semaphore(maxInFlight);
+		this.listenerExecutor = executors.shared();
+		this.queue = new ArrayBlockingQueue<>(queueCapacity);
+		this.tickets = Caffeine.newBuilder()
+				.expireAfterWrite(ticketRetention) // 每次状态变化都会重新写入，保留时间从最后一次变化开始计算
+				.maximumSize(maxTickets)
+				.build();
+
+		this.rejectedCounter = Counter.builder("orders.acceptance.rejected")
+				.description("Asynchronous order requests rejected because the acceptance queue was full.")
+				.register(meterRegistry);
+		this.completedCounter = resultCounter(meterRegistry, "completed");
+		this.failedCounter = resultCounter(meterRegistry, "failed");
+		this.latencyTimer = Timer.builder("orders.acceptance.latency")
+				.description("Time from accepting an asynchronous order request until it completed or failed.")
+				.register(meterRegistry);
+		Gauge.builder("orders.acceptance.queued", queue, BlockingQueue::size)
+				.description("Asynchronous order requests waiting for a worker.")
+				.register(meterRegistry);
+
+		logger.info("订单异步受理: {} 个工作线程, 最多同时处理 {} 个请求, 队列容量 {}", workerCount, maxInFlight, queueCapacity);
+	}
+
+	/**
+	 * 构造完成后再启动工作线程，线程只会看到完整初始化的对象。
+	 */
+	@PostConstruct
+	void start() {
+		for (int i = 0; i < workerCount; i++) {
+			workers.add(Thread.ofVirtual().name("order-acceptance-" + i).start(this::workLoop));
+		}
+	}
+
+	private static Counter resultCounter(MeterRegistry meterRegistry, String result) {
+		return Counter.builder("orders.acceptance.processed")
+				.description("Asynchronous order requests finished, by result.")
+				.tag("result", result)
+				.register(meterRegistry);
+	}
+
+	/**
+	 * 受理一个订单请求。
+	 *
+	 * @param work 处理请求的操作，在工作线程中执行，返回的 future 在订单持久化后完成
+	 * @return 初始状态 (ACCEPTED)
+	 * @throws OrderQueueFullException 受理队列已满或服务正在关闭时抛出
+	 */
+	public OrderTicket submit(Supplier<CompletableFuture<Order>> work) {
+		Instant now = Instant.now();
+		OrderTicket ticket = new OrderTicket(UUID.randomUUID(), OrderTicket.Status.ACCEPTED, null, null, now, now);
+		Tracker tracker = new Tracker(ticket);
+		Job job = new Job(tracker, work, System.nanoTime());
+		tickets.put(ticket.getId(), tracker);
+		if (!running || !queue.offer(job)) {
+			tickets.invalidate(ticket.getId());
+			rejectedCounter.increment();
+			throw new OrderQueueFullException(queueCapacity, retryAfter);
+		}
+		return ticket;
+	}
+
+	/**
+	 * @param ticketId 请求ID
+	 * @return 请求的当前状态，请求不存在或已过保留期时返回 null
+	 */
+	public OrderTicket status(UUID ticketId) {
+		Tracker tracker = tickets.getIfPresent(ticketId);
+		return tracker == null ? null : tracker.current();
+	}
+
+	/**
+	 * 订阅请求的状态变化：先以当前状态调用一次 listener，之后每次变化调用一次，直到请求结束。
+	 * listener 在共享的虚拟线程执行器中按顺序调用（同一个订阅方不会被并发调用），可以执行阻塞的网络写入。
+	 *
+	 * @param ticketId 请求ID
+	 * @param listener 状态变化的回调
+	 * @return 取消订阅的操作；请求不存在时返回 null
+	 */
+	public Runnable subscribe(UUID ticketId, Consumer<OrderTicket> listener) {
+		Tracker tracker = tickets.getIfPresent(ticketId);
+		if (tracker == null) {
+			return null;
+		}
+		Subscriber subscriber = new Subscriber(listener, listenerExecutor);
+		tracker.subscribe(subscriber);
+		return () -> tracker.unsubscribe(subscriber);
+	}
+
+	/**
+	 * @param ticket 请求状态
+	 * @return 请求是否已经结束（不会再变化）
+	 */
+	public static boolean isFinished(OrderTicket ticket) {
+		return ticket.getStatus() == OrderTicket.Status.COMPLETED || ticket.getStatus() == OrderTicket.Status.FAILED;
+	}
+
+	private void workLoop() {
+		while (true) {
+			Job job;
+			try {
+				inFlight.acquire(); // 先取得处理名额，名额用完时请求留在队列中
+				job = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				break;
+			}
+			if (job == null) {
+				inFlight.release();
+				if (!running) {
+					break; // 关闭时先处理完队列中已受理的请求
+				}
+				continue;
+			}
+			start(job);
+		}
+	}
+
+	/**
+	 * 发起处理，不等待结果：future 结束（或超时）时写回状态并归还处理名额。
+	 */
+	private void start(Job job) {
+		update(job.tracker(), OrderTicket.Status.PROCESSING, null, null);
+		CompletableFuture<Order> result;
+		try {
+			// 在副本上施加超时，不影响 OrderWriter 或幂等存储持有的原始 future
+			result = job.work().get().copy().orTimeout(processingTimeout.toMillis(), TimeUnit.MILLISECONDS);
+		} catch (RuntimeException e) {
+			finish(job, null, e);
+			return;
+		}
+		result.whenComplete((order, error) -> finish(job, order, error));
+	}
+
+	private void finish(Job job, Order order, Throwable error) {
+		try {
+			if (error == null) {
+				update(job.tracker(), OrderTicket.Status.COMPLETED, order.getId(), null);
+				completedCounter.increment();
+			} else {
+				Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+				fail(job, cause instanceof TimeoutException
+						? "订单处理未能在 " + processingTimeout + " 内完成，订单是否已创建未知"
+						: cause.getMessage());
+			}
+		} finally {
+			latencyTimer.record(System.nanoTime() - job.acceptedNanos(), TimeUnit.NANOSECONDS);
+			inFlight.release();
+		}
+	}
+
+	private void fail(Job job, String error) {
+		logger.warn("异步订单请求 {} 处理失败: {}", job.tracker().current().getId(), error);
+		update(job.tracker(), OrderTicket.Status.FAILED, null, error);
+		failedCounter.increment();
+	}
+
+	private void update(Tracker tracker, OrderTicket.Status status, UUID orderId, String error) {
+		OrderTicket ticket = tracker.update(status, orderId, error);
+		tickets.put(ticket.getId(), tracker); // 重新写入以刷新保留期
+	}
+
+	/**
+	 * 停止受理新请求，并在 {@code showcase.orders.acceptance.shutdown-timeout} 内处理完已受理的请求。
+	 */
+	@PreDestroy
+	public void shutdown() throws InterruptedException {
+		running = false;
+		long deadline = System.nanoTime() + shutdownTimeout.toNanos();
+		for (Thread worker : workers) {
+			if (!worker.join(Duration.ofNanos(Math.max(1, deadline - System.nanoTime())))) {
+				logger.warn("订单受理工作线程未能在 {} 内处理完已受理的请求，队列中还有 {} 个", shutdownTimeout, queue.size());
+				return;
+			}
+		}
+		// 队列已经取空，再等待已发起的请求结束
+		if (!inFlight.tryAcquire(maxInFlight, Math.max(1, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+			logger.warn("仍有 {} 个订单请求未能在 {} 内处理完", maxInFlight - inFlight.availablePermits(), shutdownTimeout);
+		}
+	}
+
+	private record Job(Tracker tracker, Supplier<CompletableFuture<Order>> work, long acceptedNanos) {
+	}
+
+	/**
+	 * 一个请求的当前状态与订阅方。状态的变化与放入订阅方的待推送队列由同一把锁串行化，
+	 * 订阅方按顺序收到每个状态，且不会重复或遗漏；锁内不调用 listener，也不做任何阻塞操作。
+	 */
+	private static final class Tracker {
+
+		private OrderTicket ticket;
+		private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+		Tracker(OrderTicket ticket) {
+			this.ticket = ticket;
+		}
+
+		synchronized OrderTicket current() {
+			return ticket;
+		}
+
+		synchronized OrderTicket update(OrderTicket.Status status, UUID orderId, String error) {
+			ticket = ticket.next(status, orderId, error);
+			subscribers.forEach(subscriber -> subscriber.offer(ticket));
+			if (isFinished(ticket)) {
+				subscribers.clear();
+			}
+			return ticket;
+		}
+
+		synchronized void subscribe(Subscriber subscriber) {
+			subscriber.offer(ticket);
+			if (!isFinished(ticket)) {
+				subscribers.add(subscriber);
+			}
+		}
+
+		void unsubscribe(Subscriber subscriber) {
+			subscribers.remove(subscriber);
+		}
+	}
+
+	/**
+	 * 一个订阅方的待推送状态。任意时刻最多有一个任务在执行器中为它推送，推送按放入的顺序进行。
+	 */
+	private static final class Subscriber {
+
+		private final Consumer<OrderTicket> listener;
+		private final Executor executor;
+		private final Queue<OrderTicket> pending = new ConcurrentLinkedQueue<>();
+		private final AtomicBoolean scheduled = new AtomicBoolean();
+
+		Subscriber(Consumer<OrderTicket> listener, Executor executor) {
+			this.listener = listener;
+			this.executor = executor;
+		}
+
+		void offer(OrderTicket ticket) {
+			pending.add(ticket);
+			schedule();
+		}
+
+		private void schedule() {
+			if (!scheduled.compareAndSet(false, true)) {
+				return; // 正在推送的任务会继续处理新放入的状态
+			}
+			try {
+				executor.execute(this::deliver);
+			} catch (RejectedExecutionException e) {
+				scheduled.set(false); // 应用正在关闭
+				pending.clear();
+			}
+		}
+
+		private void deliver() {
+			OrderTicket ticket;
+			while ((ticket = pending.poll()) != null) {
+				try {
+					listener.accept(ticket);
+				} catch (RuntimeException e) {
+					logger.debug("推送订单请求状态失败: {}", e.toString());
+				}
+			}
+			scheduled.set(false);
+			if (!pending.isEmpty()) {
+				schedule(); // 在清除标志之前放入的状态
+			}
+		}
+	}
+}
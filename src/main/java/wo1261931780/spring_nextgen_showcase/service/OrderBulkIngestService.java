@@ -0,0 +1,269 @@
+package wo1261931780.spring_nextgen_showcase.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import wo1261931780.spring_nextgen_showcase.entity.BulkOrderResult;
+import wo1261931780.spring_nextgen_showcase.entity.Order;
+import wo1261931780.spring_nextgen_showcase.entity.OrderCreationRequest;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntConsumer;
+
+/**
+ * 订单批量导入服务：流式解析请求体，按块校验并批量写入订单，并以 NDJSON 逐条输出每个条目的结果。
+ * <p>
+ * 请求体可以是一个 JSON 数组，也可以是 NDJSON（每行一个订单）。两种格式都是增量解析的：
+ * 每次只读入 {@code showcase.orders.bulk.chunk-size} 个条目，校验后通过 {@link OrderWriter#writeAll(List)} 批量写入，
+ * 写出这一块的结果后再读取下一块，因此无论文件多大，内存占用只与块大小有关。
+ * </p>
+ * <p>
+ * 格式或内容无效的条目单独标记为 REJECTED，不影响其他条目。NDJSON 中的一行语法错误只影响该行；
+ * JSON 数组中的语法错误之后无法可靠地定位下一个元素，因此输出该错误后停止解析（之前的条目已经写入）。
+ * 块中的订单提交之后才输出它们的 ACCEPTED 结果，并通过回调一次性通知写入的数量。
+ * </p>
+ * @author junw
+ */
+@Service
+public class OrderBulkIngestService {
+
+	private static final Logger logger = LoggerFactory.getLogger(OrderBulkIngestService.class);
+
+	private static final byte NEWLINE = '\n';
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final OrderWriter orderWriter;
+	private final ObjectMapper objectMapper;
+	private final ObjectReader requestReader;
+	private final ObjectWriter resultWriter;
+	private final int chunkSize;
+
+	@Autowired
+	public OrderBulkIngestService(OrderWriter orderWriter, ObjectMapper objectMapper,
+								  @Value("${showcase.orders.bulk.chunk-size:500}") int chunkSize) {
+		this.orderWriter = orderWriter;
+		this.objectMapper = objectMapper;
+		this.requestReader = objectMapper.readerFor(OrderCreationRequest.class);
+		this.resultWriter = objectMapper.writerFor(BulkOrderResult.class);
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * 导入请求体中的全部订单，并把每个条目的结果以 NDJSON 格式写到输出流中。
+	 *
+	 * @param in          请求体
+	 * @param ndjson      请求体是否为 NDJSON（否则为 JSON 数组）
+	 * @param out         输出流（通常是 HTTP 响应体），由调用方负责关闭
+	 * @param onPersisted 每写入一块订单后以写入成功的数量调用一次
+	 * @throws IOException             读取请求体或写出结果失败（例如客户端断开连接）时抛出
+	 * @throws ResponseStatusException 请求体不是 JSON 数组时抛出 400（此时尚未写出任何结果）
+	 */
+	public void ingest(InputStream in, boolean ndjson, OutputStream out, IntConsumer onPersisted) throws IOException {
+		EntrySource source = ndjson ? new NdjsonSource(in) : new JsonArraySource(in);
+		BufferedOutputStream buffered = new BufferedOutputStream(out, BUFFER_SIZE);
+		List<Entry> chunk = new ArrayList<>(chunkSize);
+		long accepted = 0;
+		long rejected = 0;
+		try (source) {
+			Entry entry;
+			do {
+				entry = source.next();
+				if (entry != null) {
+					chunk.add(entry);
+				}
+				if (!chunk.isEmpty() && (entry == null || chunk.size() == chunkSize)) {
+					int persisted = writeChunk(chunk, buffered, onPersisted);
+					accepted += persisted;
+					rejected += chunk.size() - persisted;
+					chunk.clear();
+				}
+			} while (entry != null);
+		} catch (IOException e) {
+			logger.info("订单批量导入在处理 {} 个条目后中止 (客户端可能已断开连接): {}", accepted + rejected, e.getMessage());
+			throw e;
+		}
+		logger.info("订单批量导入完成: 接受 {} 个, 拒绝 {} 个", accepted, rejected);
+	}
+
+	/**
+	 * 写入一块订单并输出这一块的结果。
+	 *
+	 * @return 写入成功的订单数
+	 */
+	private int writeChunk(List<Entry> chunk, BufferedOutputStream buffered, IntConsumer onPersisted) throws IOException {
+		List<Order> orders = new ArrayList<>(chunk.size());
+		for (Entry entry : chunk) {
+			if (entry.error() == null) {
+				orders.add(new Order(entry.request().getCustomerName()));
+			}
+		}
+		List<CompletableFuture<Order>> written = orderWriter.writeAll(orders);
+
+		int persisted = 0;
+		int next = 0;
+		for (Entry entry : chunk) {
+			BulkOrderResult result;
+			if (entry.error() != null) {
+				result = BulkOrderResult.rejected(entry.index(), entry.error());
+			} else {
+				CompletableFuture<Order> future = written.get(next++);
+				if (future.isCompletedExceptionally()) {
+					result = BulkOrderResult.rejected(entry.index(), "订单写入失败: " + future.exceptionNow().getMessage());
+				} else {
+					result = BulkOrderResult.accepted(entry.index(), future.resultNow().getId());
+					persisted++;
+				}
+			}
+			buffered.write(resultWriter.writeValueAsBytes(result));
+			buffered.write(NEWLINE);
+		}
+		onPersisted.accept(persisted);
+		buffered.flush(); // 每块结果及时发送给调用方，便于其跟踪进度
+		return persisted;
+	}
+
+	private Entry parse(long index, JsonNode node) {
+		OrderCreationRequest request;
+		try {
+			request = requestReader.readValue(node);
+		} catch (IOException e) {
+			return Entry.invalid(index, "条目格式错误: " + originalMessage(e));
+		}
+		String error = request == null ? "条目不能为 null" : OrderCreationRequest.validationError(request);
+		return error == null ? new Entry(index, request, null) : Entry.invalid(index, error);
+	}
+
+	private static String originalMessage(IOException e) {
+		return e instanceof JsonProcessingException jsonException ? jsonException.getOriginalMessage() : e.getMessage();
+	}
+
+	/**
+	 * 请求体中的一个条目：解析并校验通过时 error 为 null。
+	 */
+	private record Entry(long index, OrderCreationRequest request, String error) {
+
+		static Entry invalid(long index, String error) {
+			return new Entry(index, null, error);
+		}
+	}
+
+	/**
+	 * 增量读取条目的来源。
+	 */
+	private interface EntrySource extends AutoCloseable {
+
+		/**
+		 * @return 下一个条目，没有更多条目时返回 null
+		 */
+		Entry next() throws IOException;
+
+		@Override
+		void close() throws IOException;
+	}
+
+	/**
+	 * NDJSON：逐行读取，每个非空行是一个条目，一行的语法错误只影响该行。
+	 */
+	private final class NdjsonSource implements EntrySource {
+
+		private final BufferedReader reader;
+		private long lineNumber = -1;
+
+		NdjsonSource(InputStream in) {
+			this.reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), BUFFER_SIZE);
+		}
+
+		@Override
+		public Entry next() throws IOException {
+			String line;
+			do {
+				line = reader.readLine();
+				lineNumber++;
+				if (line == null) {
+					return null;
+				}
+			} while (line.isBlank());
+			JsonNode node;
+			try {
+				node = objectMapper.readTree(line);
+			} catch (JsonProcessingException e) {
+				return Entry.invalid(lineNumber, "JSON 语法错误: " + e.getOriginalMessage());
+			}
+			return parse(lineNumber, node);
+		}
+
+		@Override
+		public void close() throws IOException {
+			reader.close();
+		}
+	}
+
+	/**
+	 * JSON 数组：用流式解析器逐个读取数组元素，每次只把一个元素读成树。
+	 */
+	private final class JsonArraySource implements EntrySource {
+
+		private final JsonParser parser;
+		private long index = -1;
+		private boolean finished;
+
+		JsonArraySource(InputStream in) throws IOException {
+			this.parser = objectMapper.getFactory().createParser(in);
+			JsonToken first;
+			try {
+				first = parser.nextToken();
+			} catch (JsonProcessingException e) {
+				parser.close();
+				throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "请求体不是有效的 JSON: " + e.getOriginalMessage());
+			}
+			if (first != JsonToken.START_ARRAY) {
+				parser.close();
+				throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "请求体必须是订单的 JSON 数组或 NDJSON");
+			}
+		}
+
+		@Override
+		public Entry next() throws IOException {
+			if (finished) {
+				return null;
+			}
+			index++;
+			try {
+				JsonToken token = parser.nextToken();
+				if (token == null || token == JsonToken.END_ARRAY) {
+					finished = true;
+					return null;
+				}
+				return parse(index, parser.readValueAsTree());
+			} catch (JsonProcessingException e) {
+				finished = true; // 语法错误之后无法可靠地定位下一个元素
+				return Entry.invalid(index, "JSON 语法错误，停止解析: " + e.getOriginalMessage());
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			parser.close();
+		}
+	}
+}
@@ -0,0 +1,25 @@
+package wo1261931780.spring_nextgen_showcase.service;
+
+import wo1261931780.spring_nextgen_showcase.entity.OutboxEvent;
+
+import java.util.List;
+
+/**
+ * 订单生命周期事件的投递目标（例如消息队列、文件），由 OutboxRelay 调用。
+ * <p>
+ * 投递是 "至少一次" 的：publish 返回后事件才会从发件箱删除，
+ * 在此之前应用崩溃或 publish 抛出异常时，同一批事件会被再次投递，接收方应按事件ID去重。
+ * 同一个订单的事件总是按发生顺序投递。
+ * </p>
+ * @author junw
+ */
+public interface OrderEventSink {
+
+	/**
+	 * 投递一批事件，返回即表示这一批事件已被目标可靠地接收。
+	 *
+	 * @param events 按 ID 顺序排列的事件
+	 * @throws Exception 投递失败时抛出，这一批事件稍后会被重新投递
+	 */
+	void publish(List<OutboxEvent> events) throws Exception;
+}
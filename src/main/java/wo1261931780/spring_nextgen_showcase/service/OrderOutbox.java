@@ -0,0 +1,79 @@
+package wo1261931780.spring_nextgen_showcase.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import wo1261931780.spring_nextgen_showcase.entity.Order;
+import wo1261931780.spring_nextgen_showcase.entity.OutboxEvent;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * 把订单生命周期事件写入发件箱 (order_outbox 表)。
+ * <p>
+ * 必须在写入订单的同一个事务中调用（{@link Propagation#MANDATORY}，没有事务时抛出异常）：
+ * 订单与事件要么一起提交，要么一起回滚，不会出现订单已保存而事件丢失、或事件已发出而订单回滚的情况。
+ * 事件随后由 {@link OutboxRelay} 在后台异步投递，请求路径上只多一次批量 INSERT。
+ * </p>
+ * @author junw
+ */
+@Component
+@Transactional(propagation = Propagation.MANDATORY)
+public class OrderOutbox {
+
+	private final ObjectWriter payloadWriter;
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Autowired
+	public OrderOutbox(ObjectMapper objectMapper) {
+		this.payloadWriter = objectMapper.writerFor(OrderEventPayload.class);
+	}
+
+	/**
+	 * 记录订单已创建。订单必须已经 persist（ID 已生成）。
+	 *
+	 * @param order 新订单
+	 */
+	public void recordCreated(Order order) {
+		record(order, OutboxEvent.Type.ORDER_CREATED, null);
+	}
+
+	/**
+	 * 记录订单状态已变化。
+	 *
+	 * @param order          状态变化后的订单
+	 * @param previousStatus 变化前的状态
+	 */
+	public void recordStatusChanged(Order order, String previousStatus) {
+		record(order, OutboxEvent.Type.ORDER_STATUS_CHANGED, previousStatus);
+	}
+
+	private void record(Order order, OutboxEvent.Type type, String previousStatus) {
+		OrderEventPayload payload = new OrderEventPayload(order.getId(), order.getCustomerName(), order.getOrderDate(),
+				order.getStatus(), previousStatus);
+		String json;
+		try {
+			json = payloadWriter.writeValueAsString(payload);
+		} catch (JsonProcessingException e) {
+			throw new IllegalStateException("无法序列化订单事件: " + order.getId(), e);
+		}
+		entityManager.persist(new OutboxEvent(null, order.getId(), type, json, Instant.now()));
+	}
+
+	/**
+	 * 事件内容：事件发生时订单的快照，接收方无需回查订单服务。
+	 */
+	record OrderEventPayload(UUID orderId, String customerName, LocalDateTime orderDate, String status,
+							 String previousStatus) {
+	}
+}
@@ -12,9 +12,28 @@ package wo1261931780.spring_nextgen_showcase.service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import wo1261931780.spring_nextgen_showcase.config.VirtualThreadExecutors;
 import wo1261931780.spring_nextgen_showcase.entity.Product;
 import wo1261931780.spring_nextgen_showcase.entity.ProductServiceClient;
+import wo1261931780.spring_nextgen_showcase.entity.ProductValidationItem;
+import wo1261931780.spring_nextgen_showcase.entity.ProductValidationResult;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * 订单服务类，演示了如何注入和使用声明式的 ProductServiceClient。
@@ -44,16 +63,30 @@ public class OrderService {
 	private static final Logger logger = LoggerFactory.getLogger(OrderService.class);
 
 	private final ProductServiceClient productClient;
+	private final ProductCache productCache;
+	private final VirtualThreadExecutors executors;
+	private final int validationConcurrency;
+	private final Duration validationTimeout;
 
 	/**
 	 * 通过构造函数注入 ProductServiceClient。
 	 * 这是推荐的依赖注入方式，而不是字段注入。
 	 *
-	 * @param productClient 产品服务客户端
+	 * @param productClient         产品服务客户端
+	 * @param productCache          产品近端缓存，创建产品后需要失效对应条目
+	 * @param executors             共享虚拟线程执行设施，批量校验时并发调用产品服务
+	 * @param validationConcurrency 校验一个订单时同时在途的产品服务调用上限
+	 * @param validationTimeout     校验一个订单的全部产品的总体超时
 	 */
 	@Autowired
-	public OrderService(ProductServiceClient productClient) {
+	public OrderService(ProductServiceClient productClient, ProductCache productCache, VirtualThreadExecutors executors,
+						@Value("${showcase.order-validation.max-concurrency:8}") int validationConcurrency,
+						@Value("${showcase.order-validation.timeout:2s}") Duration validationTimeout) {
 		this.productClient = productClient;
+		this.productCache = productCache;
+		this.executors = executors;
+		this.validationConcurrency = validationConcurrency;
+		this.validationTimeout = validationTimeout;
 	}
 
 	/**
@@ -88,6 +121,94 @@ public class OrderService {
 		}
 	}
 
+	/**
+	 * 并发校验一个订单中的全部产品。
+	 * <ul>
+	 *     <li>重复的产品ID只校验一次；</li>
+	 *     <li>最多同时发出 {@code showcase.order-validation.max-concurrency} 个产品服务调用（同时受产品服务全局许可约束）；</li>
+	 *     <li>任意一个产品确认不存在时立即结束：尚未发出的调用不再发出，在途的调用被取消，这些产品标记为 SKIPPED；</li>
+	 *     <li>产品服务调用失败或未能在 {@code showcase.order-validation.timeout} 内返回的产品标记为 UNAVAILABLE，
+	 *     与 NOT_FOUND 区分，调用方可以稍后重试。</li>
+	 * </ul>
+	 *
+	 * @param productIds 订单中的产品ID（可以重复）
+	 * @return 每个不同产品ID的校验结果
+	 */
+	public ProductValidationResult validateProducts(Collection<String> productIds) {
+		List<String> distinct = List.copyOf(new LinkedHashSet<>(productIds));
+		long deadline = System.nanoTime() + validationTimeout.toNanos();
+		Semaphore window = new Semaphore(validationConcurrency);
+		CompletableFuture<Void> notFound = new CompletableFuture<>();
+		Map<String, CompletableFuture<ProductValidationItem>> calls = new LinkedHashMap<>();
+		try {
+			for (String productId : distinct) {
+				if (notFound.isDone() || !window.tryAcquire(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+					break;
+				}
+				if (notFound.isDone()) { // 等待许可期间发现了不存在的产品
+					window.release();
+					break;
+				}
+				CompletableFuture<ProductValidationItem> call = executors.product().submit(() -> checkProduct(productId));
+				call.whenComplete((item, ex) -> {
+					if (item != null && item.getStatus() == ProductValidationItem.Status.NOT_FOUND) {
+						notFound.complete(null); // 先于释放许可，等待许可的循环醒来时一定能看到
+					}
+					window.release();
+				});
+				calls.put(productId, call);
+			}
+			CompletableFuture<Void> all = CompletableFuture.allOf(calls.values().toArray(CompletableFuture[]::new));
+			CompletableFuture.anyOf(all, notFound).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+		} catch (TimeoutException | ExecutionException e) {
+			// 超时或失败的产品在下面逐个标记
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			calls.values().forEach(call -> call.cancel(true)); // 中断仍在进行的调用，已完成的不受影响
+		}
+
+		List<ProductValidationItem> items = new ArrayList<>(distinct.size());
+		for (String productId : distinct) {
+			CompletableFuture<ProductValidationItem> call = calls.get(productId);
+			if (call != null && call.state() == Future.State.SUCCESS) {
+				items.add(call.resultNow());
+			} else if (notFound.isDone()) {
+				items.add(ProductValidationItem.skipped(productId));
+			} else if (call != null && call.state() == Future.State.FAILED) {
+				items.add(ProductValidationItem.unavailable(productId, call.exceptionNow().toString()));
+			} else {
+				items.add(ProductValidationItem.unavailable(productId, "产品服务未在 " + validationTimeout + " 内返回"));
+			}
+		}
+		ProductValidationResult result = ProductValidationResult.of(items);
+		logger.debug("订单产品校验完成: {} 个产品, 结果: {}", distinct.size(), result.isValid() ? "通过" : "未通过");
+		return result;
+	}
+
+	private ProductValidationItem checkProduct(String productId) {
+		try {
+			Product product = productClient.getProduct(productId);
+			return product != null ? ProductValidationItem.valid(productId) : ProductValidationItem.notFound(productId);
+		} catch (WebClientResponseException.NotFound e) {
+			return ProductValidationItem.notFound(productId);
+		} catch (RuntimeException e) {
+			if (!isInterruption(e)) { // 被取消的调用不需要记录
+				logger.warn("校验产品ID {} 时调用产品服务失败: {}", productId, e.toString());
+			}
+			return ProductValidationItem.unavailable(productId, e.getMessage());
+		}
+	}
+
+	private static boolean isInterruption(Throwable e) {
+		for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+			if (cause instanceof InterruptedException) {
+				return true;
+			}
+		}
+		return Thread.currentThread().isInterrupted();
+	}
+
 	/**
 	 * 示例：创建一个产品（如果需要通过订单服务代理创建产品）
 	 * @param product 要创建的产品
@@ -97,6 +218,8 @@ public class OrderService {
 		logger.info("尝试通过产品服务客户端创建新产品: {}", product.getName());
 		try {
 			Product createdProduct = productClient.createProduct(product);
+			// 产品由远程产品服务写入，不会触发本地 JPA 事件，这里显式失效缓存
+			productCache.invalidate(createdProduct.getId());
 			logger.info("产品 {} (ID: {}) 创建成功。", createdProduct.getName(), createdProduct.getId());
 			return createdProduct;
 		} catch (Exception e) {
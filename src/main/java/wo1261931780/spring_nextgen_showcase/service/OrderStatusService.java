@@ -0,0 +1,122 @@
+package wo1261931780.spring_nextgen_showcase.service;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+import wo1261931780.spring_nextgen_showcase.config.VirtualThreadExecutors;
+import wo1261931780.spring_nextgen_showcase.entity.Order;
+
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * 订单状态变更：修改订单状态，并在同一个事务中把 ORDER_STATUS_CHANGED 事件写入发件箱。
+ * <p>
+ * 变更时以悲观写锁读取订单，同一个订单的并发变更依次执行，发件箱中的事件顺序与状态的变化顺序一致。
+ * COMPLETED 与 CANCELLED 是终态，不能再变更；状态没有变化时不记录事件。
+ * {@link CustomerOrderReadModel} 也在持有行锁时更新，保证同一个订单的变化按顺序应用；事务最终回滚时撤销这次更新。
+ * </p>
+ * @author junw
+ */
+@Service
+public class OrderStatusService {
+
+	private static final Logger logger = LoggerFactory.getLogger(OrderStatusService.class);
+
+	private static final Set<String> STATUSES = Set.of("PENDING", "PROCESSING", "COMPLETED", "CANCELLED");
+	private static final Set<String> FINAL_STATUSES = Set.of("COMPLETED", "CANCELLED");
+
+	private final OrderOutbox orderOutbox;
+	private final CustomerOrderReadModel customerOrderReadModel;
+	private final TransactionTemplate transactionTemplate;
+	private final VirtualThreadExecutors executors;
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Autowired
+	public OrderStatusService(OrderOutbox orderOutbox, CustomerOrderReadModel customerOrderReadModel,
+							  TransactionTemplate transactionTemplate, VirtualThreadExecutors executors) {
+		this.orderOutbox = orderOutbox;
+		this.customerOrderReadModel = customerOrderReadModel;
+		this.transactionTemplate = transactionTemplate;
+		this.executors = executors;
+	}
+
+	/**
+	 * 一次状态变更的结果。
+	 *
+	 * @param order          变更后的订单
+	 * @param previousStatus 变更前的状态
+	 */
+	public record StatusChange(Order order, String previousStatus) {
+
+		/**
+		 * @return 状态是否发生了变化
+		 */
+		public boolean changed() {
+			return !order.getStatus().equals(previousStatus);
+		}
+	}
+
+	/**
+	 * 修改订单状态。
+	 *
+	 * @param orderId 订单ID
+	 * @param status  新状态 (PENDING, PROCESSING, COMPLETED, CANCELLED)
+	 * @return 变更结果
+	 * @throws ResponseStatusException 状态无效时 400，订单不存在时 404，订单已处于终态时 409
+	 */
+	public StatusChange updateStatus(UUID orderId, String status) {
+		String newStatus = status == null ? null : status.trim().toUpperCase();
+		if (newStatus == null || !STATUSES.contains(newStatus)) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "订单状态必须是 " + STATUSES + " 之一");
+		}
+		StatusChange change = executors.jpa().call(() -> transactionTemplate.execute(tx -> {
+			Order order = entityManager.find(Order.class, orderId, LockModeType.PESSIMISTIC_WRITE);
+			if (order == null) {
+				throw new ResponseStatusException(HttpStatus.NOT_FOUND, "订单不存在: " + orderId);
+			}
+			String previous = order.getStatus();
+			if (previous.equals(newStatus)) {
+				return new StatusChange(order, previous);
+			}
+			if (FINAL_STATUSES.contains(previous)) {
+				throw new ResponseStatusException(HttpStatus.CONFLICT, "订单已处于终态 " + previous + "，不能再变更为 " + newStatus);
+			}
+			order.setStatus(newStatus);
+			orderOutbox.recordStatusChanged(order, previous);
+			entityManager.flush(); // 先写出变更，此后提交失败的可能性很小
+			applyToReadModel(order, previous, newStatus);
+			return new StatusChange(order, previous);
+		}));
+		if (change.changed()) {
+			logger.debug("订单 {} 状态变更: {} -> {}", orderId, change.previousStatus(), newStatus);
+		}
+		return change;
+	}
+
+	/**
+	 * 在持有订单行锁时更新读模型，并在事务未能提交时撤销。
+	 */
+	private void applyToReadModel(Order order, String previousStatus, String newStatus) {
+		customerOrderReadModel.statusChanged(order.getCustomerName(), order.getId(), previousStatus, newStatus);
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCompletion(int status) {
+				if (status != STATUS_COMMITTED) {
+					customerOrderReadModel.statusChanged(order.getCustomerName(), order.getId(), newStatus, previousStatus);
+				}
+			}
+		});
+	}
+}
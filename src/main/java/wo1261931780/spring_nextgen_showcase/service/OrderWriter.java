@@ -0,0 +1,279 @@
+package wo1261931780.spring_nextgen_showcase.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import wo1261931780.spring_nextgen_showcase.client.OrderRepository;
+import wo1261931780.spring_nextgen_showcase.config.VirtualThreadExecutors;
+import wo1261931780.spring_nextgen_showcase.entity.Order;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 订单的后写 (write-behind) 批量写入器。
+ * <p>
+ * 调用方通过 {@link #write(Order)} 把订单放入有界队列，立即得到一个 future；
+ * 一个专用的虚拟线程从队列中收集订单：收到第一个订单后最多等待 {@code showcase.orders.writer.flush-interval}，
+ * 或凑满 {@code batch-size} 个订单，就在一个事务中把这一批写入数据库
+ * （配合 {@code hibernate.jdbc.batch_size} 与 {@code order_inserts}，INSERT 按 JDBC 批次发送）。
+ * 事务提交之后才完成这一批订单的 future，因此 future 成功即表示订单已经持久化（持久化确认）。
+ * </p>
+ * <p>
+ * 一批写入失败时逐个重试这一批中的订单，只有自身无法写入的订单以异常结束，不会连累同批的其他订单。
+ * 队列已满时 {@link #write(Order)} 立即返回以 RejectedExecutionException 结束的 future（背压），而不是无限堆积。
+ * 关闭 ({@code enabled=false}) 时每个订单在各自的事务中单独写入，便于对比吞吐量。
+ * </p>
+ * <p>
+ * 每个订单的 ORDER_CREATED 事件通过 {@link OrderOutbox} 在同一个事务中写入发件箱，由 {@link OutboxRelay} 异步投递；
+ * 事务提交后、完成 future 之前更新 {@link CustomerOrderReadModel}，调用方收到确认时读模型中已经包含该订单。
+ * </p>
+ * <p>
+ * 指标：{@code orders.writer.batch.size}、{@code orders.writer.flush}（每批写入耗时）、
+ * {@code orders.writer.queued}、{@code orders.writer.rejected}、{@code orders.writer.failed}。
+ * </p>
+ * @author junw
+ */
+@Service
+public class OrderWriter {
+
+	private static final Logger logger = LoggerFactory.getLogger(OrderWriter.class);
+
+	// 队列空闲时检查关闭标志的间隔
+	private static final long IDLE_POLL_MILLIS = 100;
+
+	private final OrderRepository orderRepository;
+	private final OrderOutbox orderOutbox;
+	private final CustomerOrderReadModel customerOrderReadModel;
+	private final TransactionTemplate transactionTemplate;
+	private final VirtualThreadExecutors executors;
+
+	private final boolean enabled;
+	private final int batchSize;
+	private final long flushIntervalNanos;
+	private final Duration shutdownTimeout;
+
+	private final BlockingQueue<PendingWrite> queue;
+	private Thread writer; // 由 start() 创建，关闭时为 null
+	private volatile boolean running = true;
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	private final DistributionSummary batchSizeSummary;
+	private final Timer flushTimer;
+	private final Counter rejectedCounter;
+	private final Counter failedCounter;
+
+	@Autowired
+	public OrderWriter(OrderRepository orderRepository, OrderOutbox orderOutbox,
+					   CustomerOrderReadModel customerOrderReadModel, TransactionTemplate transactionTemplate,
+					   VirtualThreadExecutors executors, MeterRegistry meterRegistry,
+					   @Value("${showcase.orders.writer.enabled:true}") boolean enabled,
+					   @Value("${showcase.orders.writer.batch-size:100}") int batchSize,
+					   @Value("${showcase.orders.writer.flush-interval:2ms}") Duration flushInterval,
+					   @Value("${showcase.orders.writer.queue-capacity:10000}") int queueCapacity,
+					   @Value("${showcase.orders.writer.shutdown-timeout:10s}") Duration shutdownTimeout) {
+		this.orderRepository = orderRepository;
+		this.orderOutbox = orderOutbox;
+		this.customerOrderReadModel = customerOrderReadModel;
+		this.transactionTemplate = transactionTemplate;
+		this.executors = executors;
+		this.enabled = enabled;
+		this.batchSize = batchSize;
+		this.flushIntervalNanos = flushInterval.toNanos();
+		this.shutdownTimeout = shutdownTimeout;
+		this.queue = new ArrayBlockingQueue<>(queueCapacity);
+
+		this.batchSizeSummary = DistributionSummary.builder("orders.writer.batch.size")
+				.description("Orders written per database transaction.")
+				.register(meterRegistry);
+		this.flushTimer = Timer.builder("orders.writer.flush")
+				.description("Time to write one batch of orders, including the commit.")
+				.register(meterRegistry);
+		this.rejectedCounter = Counter.builder("orders.writer.rejected")
+				.description("Orders rejected because the write queue was full.")
+				.register(meterRegistry);
+		this.failedCounter = Counter.builder("orders.writer.failed")
+				.description("Orders that could not be written to the database.")
+				.register(meterRegistry);
+		Gauge.builder("orders.writer.queued", queue, BlockingQueue::size)
+				.description("Orders waiting to be written.")
+				.register(meterRegistry);
+
+		logger.info("订单批量写入: {}, 每批最多 {} 个, 等待 {} µs, 队列容量 {}", enabled ? "已启用" : "已关闭",
+				batchSize, flushIntervalNanos / 1000, queueCapacity);
+	}
+
+	/**
+	 * 异步写入一个订单。
+	 *
+	 * @param order 新订单（ID 在写入时生成）
+	 * @return 订单所在事务提交后完成的 future；队列已满或写入器已关闭时以 RejectedExecutionException 结束
+	 */
+	public CompletableFuture<Order> write(Order order) {
+		if (!enabled) {
+			return executors.jpa().submit(() -> {
+				Order saved = transactionTemplate.execute(status -> {
+					Order persisted = orderRepository.save(order);
+					orderOutbox.recordCreated(persisted);
+					return persisted;
+				});
+				customerOrderReadModel.ordersCreated(List.of(saved));
+				return saved;
+			});
+		}
+		CompletableFuture<Order> future = new CompletableFuture<>();
+		PendingWrite pending = new PendingWrite(order, future);
+		if (!running || !queue.offer(pending)) {
+			rejectedCounter.increment();
+			future.completeExceptionally(new RejectedExecutionException(running ? "订单写入队列已满" : "订单写入器已关闭"));
+		} else if (!running && queue.remove(pending)) { // 与关闭竞争时，不能把订单留在已经没有人处理的队列中
+			future.completeExceptionally(new RejectedExecutionException("订单写入器已关闭"));
+		}
+		return future;
+	}
+
+	/**
+	 * 在当前线程中按 {@code batch-size} 分批同步写入一组订单（例如批量导入），不经过写入队列。
+	 * 与 {@link #write(Order)} 一样，一批写入失败时逐个重试，只有自身无法写入的订单以异常结束。
+	 *
+	 * @param orders 新订单
+	 * @return 与 orders 一一对应、均已完成的 future
+	 */
+	public List<CompletableFuture<Order>> writeAll(List<Order> orders) {
+		List<PendingWrite> pending = orders.stream()
+				.map(order -> new PendingWrite(order, new CompletableFuture<>()))
+				.toList();
+		for (int from = 0; from < pending.size(); from += batchSize) {
+			flush(pending.subList(from, Math.min(pending.size(), from + batchSize)));
+		}
+		return pending.stream().map(PendingWrite::future).toList();
+	}
+
+	private void writeLoop() {
+		List<PendingWrite> batch = new ArrayList<>(batchSize);
+		try {
+			while (running) {
+				PendingWrite first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				long deadline = System.nanoTime() + flushIntervalNanos;
+				while (batch.size() < batchSize) {
+					long remaining = deadline - System.nanoTime();
+					PendingWrite next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+					if (next == null) {
+						break;
+					}
+					batch.add(next);
+				}
+				flush(batch);
+				batch.clear();
+			}
+		} catch (InterruptedException e) {
+			// 不恢复中断标志：下面还要在当前线程中写完剩余的订单
+		}
+		// 关闭时把已经接受的订单全部写完，已接受的订单不会被丢弃。
+		// 此时 running 已经为 false：drainTo 与 write() 中的 queue.remove 对每个订单只有一方能取走它，
+		// 订单要么在这里写入，要么在 write() 中以 RejectedExecutionException 结束
+		do {
+			queue.drainTo(batch);
+			for (int from = 0; from < batch.size(); from += batchSize) {
+				flush(batch.subList(from, Math.min(batch.size(), from + batchSize)));
+			}
+			batch.clear();
+		} while (!queue.isEmpty());
+		logger.info("订单写入器已停止");
+	}
+
+	private void flush(List<PendingWrite> batch) {
+		batchSizeSummary.record(batch.size());
+		try {
+			flushTimer.record(() -> executors.jpa().call(() -> transactionTemplate.execute(status -> {
+				batch.forEach(pending -> persist(pending.order()));
+				return null;
+			})));
+		} catch (RuntimeException e) {
+			// 只有写入事务本身可以重试；提交之后的步骤失败不能导致订单被再次写入
+			logger.warn("批量写入 {} 个订单失败，逐个重试: {}", batch.size(), e.toString());
+			batch.forEach(this::writeSingle);
+			return;
+		}
+		committed(batch);
+	}
+
+	private void writeSingle(PendingWrite pending) {
+		try {
+			pending.order().setId(null); // 已经带有生成ID的实体会被 persist 视为游离对象，清除后重新生成
+			executors.jpa().call(() -> transactionTemplate.execute(status -> {
+				persist(pending.order());
+				return null;
+			}));
+		} catch (RuntimeException e) {
+			failedCounter.increment();
+			pending.future().completeExceptionally(e);
+			return;
+		}
+		committed(List.of(pending));
+	}
+
+	/**
+	 * 订单已经提交：更新读模型（不抛出异常）并完成 future。此后的任何失败都不会触发重写。
+	 */
+	private void committed(List<PendingWrite> writes) {
+		customerOrderReadModel.ordersCreated(writes.stream().map(PendingWrite::order).toList());
+		writes.forEach(pending -> pending.future().complete(pending.order()));
+	}
+
+	/**
+	 * 保存订单并在同一个事务中记录 ORDER_CREATED 事件，调用方必须处于事务中。
+	 */
+	private void persist(Order order) {
+		entityManager.persist(order);
+		orderOutbox.recordCreated(order);
+	}
+
+	/**
+	 * 构造完成后再启动写入线程，线程只会看到完整初始化的对象。
+	 */
+	@PostConstruct
+	void start() {
+		if (enabled) {
+			writer = Thread.ofVirtual().name("order-writer").start(this::writeLoop);
+		}
+	}
+
+	/**
+	 * 停止接收新订单，并在 {@code showcase.orders.writer.shutdown-timeout} 内把已接受的订单写完。
+	 */
+	@PreDestroy
+	public void shutdown() throws InterruptedException {
+		running = false;
+		if (writer != null && !writer.join(shutdownTimeout)) {
+			logger.warn("订单写入器未能在 {} 内写完剩余订单，队列中还有 {} 个", shutdownTimeout, queue.size());
+		}
+	}
+
+	private record PendingWrite(Order order, CompletableFuture<Order> future) {
+	}
+}
@@ -0,0 +1,172 @@
+package wo1261931780.spring_nextgen_showcase.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import wo1261931780.spring_nextgen_showcase.client.OutboxEventRepository;
+import wo1261931780.spring_nextgen_showcase.config.VirtualThreadExecutors;
+import wo1261931780.spring_nextgen_showcase.entity.OutboxEvent;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * 发件箱中继：后台虚拟线程把 order_outbox 表中的事件按批投递给 {@link OrderEventSink}。
+ * <ul>
+ *     <li>每次按 ID 顺序读取最早的 {@code showcase.outbox.batch-size} 个事件，投递成功后再一次性删除它们，
+ *     因此投递是 "至少一次" 的：在删除之前崩溃时，这一批事件会在重启后再次投递；</li>
+ *     <li>投递失败时等待 {@code retry-backoff} 后重试同一批事件，不会跳过失败的事件，同一个订单的事件按发生顺序投递；</li>
+ *     <li>读到满批时立即读取下一批，积压时以批量读取 + 批量删除的方式追赶；没有事件时每隔 {@code poll-interval} 检查一次。</li>
+ * </ul>
+ * 每个节点只有一个中继线程，多节点部署时需要保证同时只有一个节点运行中继（例如通过选主）。
+ * <p>
+ * 指标：{@code outbox.relay.published}、{@code outbox.relay.failures}、{@code outbox.relay.batch.size}、
+ * {@code outbox.relay.lag}（事件从写入发件箱到投递成功的时间）。
+ * </p>
+ * @author junw
+ */
+@Service
+public class OutboxRelay {
+
+	private static final Logger logger = LoggerFactory.getLogger(OutboxRelay.class);
+
+	// 关闭时除等待当前的重试间隔之外，再等待当前一批投递完成的时间
+	private static final Duration SHUTDOWN_GRACE = Duration.ofSeconds(5);
+
+	private final OutboxEventRepository outboxEventRepository;
+	private final OrderEventSink sink;
+	private final TransactionTemplate transactionTemplate;
+	private final VirtualThreadExecutors executors;
+
+	private final int batchSize;
+	private final Duration pollInterval;
+	private final Duration retryBackoff;
+
+	private volatile boolean running = true;
+	private volatile Thread relay;
+
+	private final Counter publishedCounter;
+	private final Counter failureCounter;
+	private final DistributionSummary batchSizeSummary;
+	private final Timer lagTimer;
+
+	@Autowired
+	public OutboxRelay(OutboxEventRepository outboxEventRepository, OrderEventSink sink,
+					   TransactionTemplate transactionTemplate, VirtualThreadExecutors executors, MeterRegistry meterRegistry,
+					   @Value("${showcase.outbox.batch-size:500}") int batchSize,
+					   @Value("${showcase.outbox.poll-interval:50ms}") Duration pollInterval,
+					   @Value("${showcase.outbox.retry-backoff:1s}") Duration retryBackoff) {
+		this.outboxEventRepository = outboxEventRepository;
+		this.sink = sink;
+		this.transactionTemplate = transactionTemplate;
+		this.executors = executors;
+		this.batchSize = batchSize;
+		this.pollInterval = pollInterval;
+		this.retryBackoff = retryBackoff;
+
+		this.publishedCounter = Counter.builder("outbox.relay.published")
+				.description("Order events delivered to the event sink.")
+				.register(meterRegistry);
+		this.failureCounter = Counter.builder("outbox.relay.failures")
+				.description("Failed attempts to deliver a batch of order events.")
+				.register(meterRegistry);
+		this.batchSizeSummary = DistributionSummary.builder("outbox.relay.batch.size")
+				.description("Order events delivered per batch.")
+				.register(meterRegistry);
+		this.lagTimer = Timer.builder("outbox.relay.lag")
+				.description("Time from an order event being written to the outbox until it was delivered.")
+				.publishPercentileHistogram()
+				.register(meterRegistry);
+	}
+
+	/**
+	 * 应用启动完成后开始投递（包括上次关闭时尚未投递的事件）。
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void start() {
+		relay = Thread.ofVirtual().name("outbox-relay").start(this::relayLoop);
+		logger.info("发件箱中继已启动: 每批最多 {} 个事件, 投递目标 {}", batchSize, sink.getClass().getSimpleName());
+	}
+
+	private void relayLoop() {
+		while (running) {
+			int relayed;
+			try {
+				relayed = relayBatch();
+			} catch (Exception e) {
+				failureCounter.increment();
+				logger.warn("投递订单事件失败，{} 后重试: {}", retryBackoff, e.toString());
+				if (!pause(retryBackoff)) {
+					break;
+				}
+				continue;
+			}
+			if (relayed < batchSize && !pause(pollInterval)) {
+				break;
+			}
+		}
+		logger.info("发件箱中继已停止");
+	}
+
+	/**
+	 * 投递一批事件：读取、投递、删除。任一步骤失败时抛出异常，未删除的事件会在下一次重新投递。
+	 *
+	 * @return 投递的事件数
+	 */
+	int relayBatch() throws Exception {
+		List<OutboxEvent> batch = executors.jpa().call(() -> transactionTemplate.execute(status ->
+				outboxEventRepository.findAllByOrderByIdAsc(Limit.of(batchSize))));
+		if (batch.isEmpty()) {
+			return 0;
+		}
+		sink.publish(batch);
+		Instant published = Instant.now();
+		List<Long> ids = batch.stream().map(OutboxEvent::getId).toList();
+		executors.jpa().call(() -> transactionTemplate.execute(status -> {
+			outboxEventRepository.deleteAllByIdInBatch(ids);
+			return null;
+		}));
+
+		batchSizeSummary.record(batch.size());
+		publishedCounter.increment(batch.size());
+		batch.forEach(event -> lagTimer.record(Duration.between(event.getCreatedAt(), published)));
+		return batch.size();
+	}
+
+	/**
+	 * @return 是否应当继续运行（被中断时返回 false）
+	 */
+	private boolean pause(Duration duration) {
+		try {
+			Thread.sleep(duration);
+			return running;
+		} catch (InterruptedException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * 停止中继。正在投递的一批事件会完成投递；未投递的事件留在发件箱中，下次启动时继续投递。
+	 */
+	@PreDestroy
+	public void shutdown() throws InterruptedException {
+		running = false;
+		Thread current = relay;
+		// 不中断中继线程：中断会关闭可中断的通道（例如文件投递目标），等待它在当前一批或当前等待结束后自行退出
+		if (current != null && !current.join(retryBackoff.plus(SHUTDOWN_GRACE))) {
+			logger.warn("发件箱中继未能在关闭期限内停止");
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package wo1261931780.spring_nextgen_showcase.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ResponseStatusException;
+import wo1261931780.spring_nextgen_showcase.client.ProductRepository;
+import wo1261931780.spring_nextgen_showcase.entity.Product;
+import wo1261931780.spring_nextgen_showcase.entity.ProductPage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * 产品目录的键集 (keyset / cursor) 分页浏览。
+ * <p>
+ * 按 Product.id 排序，续页令牌编码了上一页最后一个产品的ID，
+ * 下一页查询直接从该ID之后开始读取，因此深度翻页与第一页的查询代价相同。
+ * 令牌对客户端是不透明的（Base64URL 编码并带版本前缀），便于将来调整格式。
+ * </p>
+ * @author junw
+ */
+@Service
+public class ProductBrowseService {
+
+	private static final String TOKEN_VERSION = "v1:";
+
+	private final ProductRepository productRepository;
+	private final int defaultPageSize;
+	private final int maxPageSize;
+
+	@Autowired
+	public ProductBrowseService(ProductRepository productRepository,
+								@Value("${showcase.product-page.default-size:50}") int defaultPageSize,
+								@Value("${showcase.product-page.max-size:500}") int maxPageSize) {
+		this.productRepository = productRepository;
+		this.defaultPageSize = defaultPageSize;
+		this.maxPageSize = maxPageSize;
+	}
+
+	/**
+	 * 获取一页产品。
+	 *
+	 * @param pageToken  上一页返回的续页令牌，第一页传 null
+	 * @param size       每页条数，为 null 时使用默认值，不能超过配置的最大值
+	 * @param namePrefix 可选的产品名称前缀过滤
+	 * @return 一页产品及下一页的续页令牌
+	 */
+	public ProductPage browse(String pageToken, Integer size, String namePrefix) {
+		int pageSize = size == null ? defaultPageSize : size;
+		if (pageSize <= 0 || pageSize > maxPageSize) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "每页条数必须在 1 到 " + maxPageSize + " 之间");
+		}
+		String afterId = pageToken == null ? "" : decodeToken(pageToken);
+
+		// 多取一条用于判断是否还有下一页
+		Limit limit = Limit.of(pageSize + 1);
+		List<Product> products = StringUtils.hasText(namePrefix)
+				? productRepository.findByIdGreaterThanAndNameStartingWithOrderByIdAsc(afterId, namePrefix, limit)
+				: productRepository.findByIdGreaterThanOrderByIdAsc(afterId, limit);
+
+		if (products.size() <= pageSize) {
+			return new ProductPage(products, null);
+		}
+		List<Product> page = products.subList(0, pageSize);
+		return new ProductPage(List.copyOf(page), encodeToken(page.get(pageSize - 1).getId()));
+	}
+
+	private static String encodeToken(String lastId) {
+		return Base64.getUrlEncoder().withoutPadding()
+				.encodeToString((TOKEN_VERSION + lastId).getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static String decodeToken(String pageToken) {
+		try {
+			String decoded = new String(Base64.getUrlDecoder().decode(pageToken), StandardCharsets.UTF_8);
+			if (decoded.startsWith(TOKEN_VERSION)) {
+				return decoded.substring(TOKEN_VERSION.length());
+			}
+		} catch (IllegalArgumentException e) {
+			// 落到下面统一处理
+		}
+		throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "无效的续页令牌: " + pageToken);
+	}
+}
@@ -0,0 +1,131 @@
+package wo1261931780.spring_nextgen_showcase.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import wo1261931780.spring_nextgen_showcase.client.ProductRepository;
+import wo1261931780.spring_nextgen_showcase.entity.Product;
+import wo1261931780.spring_nextgen_showcase.entity.ProductChangedEvent;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * 位于 ProductRepository 之前的进程内产品近端缓存。
+ * <p>
+ * 基于 Caffeine：容量有上限（{@code maximum-size}），淘汰策略为 W-TinyLFU（兼顾访问频率与新近度），
+ * 可选写入后过期（{@code expire-after-write}，为 0 表示不过期）。
+ * 产品写入时（{@link ProductChangedEvent}，事务提交后）以及 {@link OrderService#createNewProduct} 创建产品后会显式失效对应条目。
+ * </p>
+ * <p>
+ * 命中 / 未命中 / 淘汰等统计通过 {@code cache.*{cache="products"}} 指标暴露给 Prometheus。
+ * 通过 {@code showcase.product-cache.enabled=false} 可以关闭缓存，直接访问数据库，便于对比吞吐量。
+ * </p>
+ * @author junw
+ */
+@Service
+public class ProductCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(ProductCache.class);
+
+	private final ProductRepository productRepository;
+	private final Cache<String, Product> cache; // 关闭缓存时为 null
+
+	@Autowired
+	public ProductCache(ProductRepository productRepository, MeterRegistry meterRegistry,
+						@Value("${showcase.product-cache.enabled:true}") boolean enabled,
+						@Value("${showcase.product-cache.maximum-size:10000}") long maximumSize,
+						@Value("${showcase.product-cache.expire-after-write:0s}") Duration expireAfterWrite) {
+		this.productRepository = productRepository;
+		if (!enabled) {
+			logger.info("产品缓存已关闭，所有查询将直接访问数据库");
+			this.cache = null;
+			return;
+		}
+		Caffeine<Object, Object> builder = Caffeine.newBuilder()
+				.maximumSize(maximumSize)
+				.recordStats();
+		if (!expireAfterWrite.isZero()) {
+			builder.expireAfterWrite(expireAfterWrite);
+		}
+		this.cache = builder.build();
+		CaffeineCacheMetrics.monitor(meterRegistry, cache, "products");
+		logger.info("产品缓存已启用，最大条目数: {}, 写入后过期: {}", maximumSize,
+				expireAfterWrite.isZero() ? "不过期" : expireAfterWrite);
+	}
+
+	/**
+	 * 根据ID查询产品，优先读缓存，未命中时查询数据库并放入缓存。
+	 * 不存在的产品不会被缓存。
+	 *
+	 * @param id 产品ID
+	 * @return 产品
+	 */
+	public Optional<Product> findById(String id) {
+		if (cache == null) {
+			return productRepository.findById(id);
+		}
+		return Optional.ofNullable(cache.get(id, key -> productRepository.findById(key).orElse(null)));
+	}
+
+	/**
+	 * 只读取缓存、不访问数据库。缓存关闭或未命中时返回空。
+	 *
+	 * @param id 产品ID
+	 * @return 缓存中的产品
+	 */
+	public Optional<Product> getIfPresent(String id) {
+		return cache == null ? Optional.empty() : Optional.ofNullable(cache.getIfPresent(id));
+	}
+
+	/**
+	 * 批量查询产品，缓存未命中的部分通过一次 findAllById 查询数据库。
+	 *
+	 * @param ids 产品ID集合
+	 * @return 产品ID到产品的映射，不存在的产品不出现在结果中
+	 */
+	public Map<String, Product> findAllById(Collection<String> ids) {
+		if (cache == null) {
+			return toMap(productRepository.findAllById(ids));
+		}
+		return cache.getAll(ids, missingIds -> toMap(productRepository.findAllById(List.copyOf(missingIds))));
+	}
+
+	/**
+	 * 使某个产品的缓存条目失效。
+	 *
+	 * @param id 产品ID
+	 */
+	public void invalidate(String id) {
+		if (cache != null && id != null) {
+			cache.invalidate(id);
+		}
+	}
+
+	/**
+	 * 产品通过 JPA 写入（插入 / 更新 / 删除）并提交事务后失效对应的缓存条目。
+	 * 在提交之后再失效，可以避免并发读请求在提交前把旧值重新放回缓存。
+	 */
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onProductChanged(ProductChangedEvent event) {
+		logger.debug("产品 {} 已写入 ({})，失效缓存条目", event.getProductId(), event.getType());
+		invalidate(event.getProductId());
+	}
+
+	private static Map<String, Product> toMap(Iterable<Product> products) {
+		Map<String, Product> result = new HashMap<>();
+		products.forEach(product -> result.put(product.getId(), product));
+		return result;
+	}
+}
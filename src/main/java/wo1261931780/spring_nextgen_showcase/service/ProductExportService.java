@@ -0,0 +1,82 @@
+package wo1261931780.spring_nextgen_showcase.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import wo1261931780.spring_nextgen_showcase.client.ProductRepository;
+import wo1261931780.spring_nextgen_showcase.entity.Product;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * 产品目录导出服务，以换行分隔的 JSON (NDJSON) 格式流式输出整张 Product 表。
+ * <p>
+ * 通过 {@link ProductRepository#streamAllOrderById()} 的只进游标分批读取，
+ * 每写出一个产品就将其从持久化上下文中 detach，因此无论目录多大，堆占用都保持平稳。
+ * 客户端断开连接时写出会抛出 IOException，此时立即停止读取并关闭游标。
+ * </p>
+ * @author junw
+ */
+@Service
+public class ProductExportService {
+
+	private static final Logger logger = LoggerFactory.getLogger(ProductExportService.class);
+
+	private static final byte NEWLINE = '\n';
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final ProductRepository productRepository;
+	private final ObjectWriter productWriter;
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Autowired
+	public ProductExportService(ProductRepository productRepository, ObjectMapper objectMapper) {
+		this.productRepository = productRepository;
+		this.productWriter = objectMapper.writerFor(Product.class);
+	}
+
+	/**
+	 * 把全部产品以 NDJSON 格式写到输出流中，每行一个产品。
+	 *
+	 * @param out 输出流（通常是 HTTP 响应体），由调用方负责关闭
+	 * @return 导出的产品数量
+	 * @throws IOException 写出失败（例如客户端断开连接）时抛出
+	 */
+	@Transactional(readOnly = true)
+	public long exportNdjson(OutputStream out) throws IOException {
+		long count = 0;
+		BufferedOutputStream buffered = new BufferedOutputStream(out, BUFFER_SIZE);
+		try (Stream<Product> products = productRepository.streamAllOrderById()) {
+			Iterator<Product> iterator = products.iterator();
+			while (iterator.hasNext()) {
+				if (Thread.currentThread().isInterrupted()) {
+					throw new InterruptedIOException("产品导出被中断，已导出 " + count + " 个产品");
+				}
+				Product product = iterator.next();
+				buffered.write(productWriter.writeValueAsBytes(product));
+				buffered.write(NEWLINE);
+				entityManager.detach(product); // 已写出的实体不再需要，避免持久化上下文随导出规模增长
+				count++;
+			}
+			buffered.flush();
+		} catch (IOException e) {
+			logger.info("产品导出在写出 {} 个产品后中止 (客户端可能已断开连接): {}", count, e.getMessage());
+			throw e;
+		}
+		logger.info("产品导出完成，共 {} 个产品", count);
+		return count;
+	}
+}
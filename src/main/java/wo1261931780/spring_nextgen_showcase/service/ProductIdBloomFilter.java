@@ -0,0 +1,230 @@
+package wo1261931780.spring_nextgen_showcase.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import wo1261931780.spring_nextgen_showcase.client.ProductRepository;
+import wo1261931780.spring_nextgen_showcase.entity.ProductChangedEvent;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Stream;
+
+/**
+ * 已知产品ID的 Bloom 过滤器，用于在访问数据库之前拒绝不存在的产品ID（爬虫、失效链接等）。
+ * <p>
+ * Bloom 过滤器没有假阴性：{@link #mightContain(String)} 返回 false 时产品一定不存在，可以直接返回 404；
+ * 返回 true 时产品可能存在（假阳性概率约为 {@code false-positive-probability}），需要照常查询。
+ * </p>
+ * <p>
+ * 一致性：
+ * <ul>
+ *     <li>应用启动完成后从数据库读取全部产品ID构建过滤器，构建完成之前 mightContain 始终返回 true；</li>
+ *     <li>通过本实例写入的新产品在写入数据库时（事务提交之前）同步加入过滤器，不会出现被误判为不存在的窗口；</li>
+ *     <li>单写入方假设：由其他实例、SQL 或批处理作业写入的产品不会触发本实例的事件，
+ *     只能由每隔 {@code refresh-interval} 一次的全量扫描补入过滤器，在此之前对它们的查询会得到错误的 404。
+ *     有多个写入方时应缩短 refresh-interval，或者关闭过滤器 ({@code enabled=false})；</li>
+ *     <li>删除的产品无法从 Bloom 过滤器中移除，只会退化为一次普通的数据库查询。</li>
+ * </ul>
+ * 刷新只向现有的位数组中补入ID（按位或），从不清除，因此刷新期间与刷新前后都不会产生新的假阴性。
+ * 位数组使用 AtomicLongArray，插入与查询都是无锁的。
+ * </p>
+ * @author junw
+ */
+@Service
+public class ProductIdBloomFilter {
+
+	private static final Logger logger = LoggerFactory.getLogger(ProductIdBloomFilter.class);
+
+	private final boolean enabled;
+	private final long expectedInsertions;
+	private final AtomicLongArray bits;
+	private final long bitCount;
+	private final int hashCount;
+	private final AtomicLong insertions = new AtomicLong();
+	private volatile boolean ready;
+
+	private final ProductRepository productRepository;
+	private final TransactionTemplate transactionTemplate;
+	private final Duration refreshInterval;
+	private final Counter rejectedCounter;
+
+	private volatile boolean running = true;
+	private volatile Thread refresher;
+
+	@Autowired
+	public ProductIdBloomFilter(ProductRepository productRepository, TransactionTemplate transactionTemplate,
+								MeterRegistry meterRegistry,
+								@Value("${showcase.product-bloom.enabled:true}") boolean enabled,
+								@Value("${showcase.product-bloom.expected-insertions:1000000}") long expectedInsertions,
+								@Value("${showcase.product-bloom.false-positive-probability:0.01}") double falsePositiveProbability,
+								@Value("${showcase.product-bloom.refresh-interval:5m}") Duration refreshInterval) {
+		this.productRepository = productRepository;
+		this.transactionTemplate = transactionTemplate;
+		this.refreshInterval = refreshInterval;
+		this.enabled = enabled;
+		this.expectedInsertions = expectedInsertions;
+
+		// 经典的最优参数: m = -n·ln(p) / (ln2)^2, k = m/n·ln2
+		long optimalBits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2)));
+		int words = (int) Math.max(1, (optimalBits + 63) / 64);
+		this.bits = new AtomicLongArray(enabled ? words : 1);
+		this.bitCount = (long) words * 64;
+		this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * Math.log(2)));
+
+		this.rejectedCounter = Counter.builder("product.lookup.rejected")
+				.description("Product lookups rejected by the Bloom filter before touching the database.")
+				.register(meterRegistry);
+		Gauge.builder("product.bloom.insertions", insertions, AtomicLong::get)
+				.description("Product IDs added to the Bloom filter.")
+				.register(meterRegistry);
+		if (enabled) {
+			logger.info("产品ID Bloom 过滤器: 预期 {} 个ID, {} 位 ({} KB), {} 个哈希函数",
+					expectedInsertions, bitCount, bitCount / 8 / 1024, hashCount);
+		}
+	}
+
+	/**
+	 * 应用启动完成后读取全部产品ID构建过滤器，并开始定期刷新。
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void buildOnStartup() {
+		if (!enabled) {
+			return;
+		}
+		long start = System.nanoTime();
+		scanAllIds();
+		ready = true;
+		logger.info("产品ID Bloom 过滤器构建完成: {} 个ID, 耗时 {} ms",
+				insertions.get(), (System.nanoTime() - start) / 1_000_000);
+		if (refreshInterval.isPositive()) {
+			refresher = Thread.ofVirtual().name("product-bloom-refresh").start(this::refreshLoop);
+		}
+	}
+
+	private void scanAllIds() {
+		transactionTemplate.executeWithoutResult(status -> {
+			try (Stream<String> ids = productRepository.streamAllIds()) {
+				ids.forEach(this::put);
+			}
+		});
+	}
+
+	/**
+	 * 定期重新扫描全部产品ID，补入不是通过本实例写入的产品。
+	 */
+	private void refreshLoop() {
+		while (running) {
+			try {
+				Thread.sleep(refreshInterval);
+			} catch (InterruptedException e) {
+				break;
+			}
+			long before = insertions.get();
+			try {
+				scanAllIds();
+			} catch (RuntimeException e) {
+				logger.warn("刷新产品ID Bloom 过滤器失败，{} 后重试: {}", refreshInterval, e.toString());
+				continue;
+			}
+			long added = insertions.get() - before;
+			if (added > 0) {
+				logger.info("产品ID Bloom 过滤器刷新补入了 {} 个不是通过本实例写入的产品ID", added);
+			}
+		}
+	}
+
+	/**
+	 * 产品写入数据库时（同步、在事务提交之前）把ID加入过滤器。
+	 */
+	@EventListener
+	public void onProductChanged(ProductChangedEvent event) {
+		if (enabled && event.getType() == ProductChangedEvent.Type.SAVED) {
+			put(event.getProductId());
+		}
+	}
+
+	/**
+	 * 把产品ID加入过滤器。
+	 *
+	 * @param productId 产品ID
+	 */
+	public void put(String productId) {
+		long hash = hash64(productId);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		boolean changed = false;
+		for (int i = 1; i <= hashCount; i++) {
+			long bit = Math.floorMod(h1 + (long) i * h2, bitCount);
+			long mask = 1L << bit;
+			long previous = bits.getAndAccumulate((int) (bit >>> 6), mask, (current, m) -> current | m);
+			changed |= (previous & mask) == 0;
+		}
+		if (changed && insertions.incrementAndGet() == expectedInsertions + 1) {
+			logger.warn("产品ID Bloom 过滤器的插入数已超过预期的 {}，假阳性率将上升，请调大 expected-insertions", expectedInsertions);
+		}
+	}
+
+	/**
+	 * 判断产品ID是否可能存在。返回 false 时产品一定不存在。
+	 * 过滤器关闭或尚未构建完成时始终返回 true。
+	 *
+	 * @param productId 产品ID
+	 * @return 产品是否可能存在
+	 */
+	public boolean mightContain(String productId) {
+		if (!enabled || !ready) {
+			return true;
+		}
+		long hash = hash64(productId);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		for (int i = 1; i <= hashCount; i++) {
+			long bit = Math.floorMod(h1 + (long) i * h2, bitCount);
+			if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+				rejectedCounter.increment();
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 停止定期刷新。
+	 */
+	@PreDestroy
+	public void shutdown() {
+		running = false;
+		Thread thread = refresher;
+		if (thread != null) {
+			thread.interrupt();
+		}
+	}
+
+	/**
+	 * 64 位 FNV-1a 哈希，再经过 murmur3 的 fmix64 混合以改善低位分布。
+	 */
+	private static long hash64(String value) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < value.length(); i++) {
+			hash ^= value.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+}
@@ -0,0 +1,280 @@
+package wo1261931780.spring_nextgen_showcase.service;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+import wo1261931780.spring_nextgen_showcase.client.ProductRepository;
+import wo1261931780.spring_nextgen_showcase.entity.Product;
+import wo1261931780.spring_nextgen_showcase.entity.ProductChangedEvent;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+
+/**
+ * 基于内存倒排索引的产品搜索，覆盖 Product.name 和 Product.description。
+ * <p>
+ * 用于替代 {@code findByNameContainingIgnoreCase} 这类 {@code LIKE '%x%'} 全表扫描，支撑输入联想 (type-ahead) 流量：
+ * <ul>
+ *     <li>分词：按非字母数字字符切分并转为小写，汉字逐字作为词项；</li>
+ *     <li>词典为有序的跳表，每个查询词都按前缀匹配（可以匹配多个词项），所有查询词都必须命中；</li>
+ *     <li>打分：名称中的词项权重高于描述，完整匹配高于前缀匹配，返回得分最高的 top-k。</li>
+ * </ul>
+ * 索引在应用启动完成后从数据库全量构建，之后根据 {@link ProductChangedEvent} 增量更新。
+ * 写入（构建 / 增量更新）串行执行，查询无锁地读取并发数据结构。
+ * </p>
+ * @author junw
+ */
+@Service
+public class ProductSearchIndex {
+
+	private static final Logger logger = LoggerFactory.getLogger(ProductSearchIndex.class);
+
+	private static final int NAME_WEIGHT = 3;
+	private static final int DESCRIPTION_WEIGHT = 1;
+	private static final int EXACT_MATCH_BONUS = 2;
+
+	// 词项 -> (产品ID -> 该词项在该产品中的权重)
+	private final ConcurrentSkipListMap<String, Map<String, Integer>> postings = new ConcurrentSkipListMap<>();
+	// 产品ID -> (词项 -> 权重)，用于更新或删除产品时撤销旧的倒排记录
+	private final Map<String, Map<String, Integer>> documentTerms = new ConcurrentHashMap<>();
+
+	// 全量构建期间发生变更的产品，构建完成后重新索引，避免被构建时读到的旧数据覆盖
+	private final Set<String> changedDuringBuild = ConcurrentHashMap.newKeySet();
+	private volatile boolean building;
+
+	private final ProductRepository productRepository;
+	private final TransactionTemplate transactionTemplate;
+	private final int maxPrefixExpansions;
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Autowired
+	public ProductSearchIndex(ProductRepository productRepository, TransactionTemplate transactionTemplate,
+							  @Value("${showcase.product-search.max-prefix-expansions:1000}") int maxPrefixExpansions) {
+		this.productRepository = productRepository;
+		this.transactionTemplate = transactionTemplate;
+		this.maxPrefixExpansions = maxPrefixExpansions;
+	}
+
+	/**
+	 * 应用启动完成后，以流的方式读取全部产品构建索引。
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void buildOnStartup() {
+		long start = System.nanoTime();
+		building = true;
+		try {
+			transactionTemplate.executeWithoutResult(status -> {
+				try (Stream<Product> products = productRepository.streamAllOrderById()) {
+					products.forEach(product -> {
+						index(product);
+						entityManager.detach(product);
+					});
+				}
+			});
+		} finally {
+			building = false;
+		}
+		// 构建期间变更过的产品以数据库中的最新状态为准
+		for (String id : List.copyOf(changedDuringBuild)) {
+			changedDuringBuild.remove(id);
+			reindex(id);
+		}
+		logger.info("产品搜索索引构建完成: {} 个产品, {} 个词项, 耗时 {} ms",
+				documentTerms.size(), postings.size(), (System.nanoTime() - start) / 1_000_000);
+	}
+
+	/**
+	 * 产品写入并提交事务后增量更新索引。
+	 */
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onProductChanged(ProductChangedEvent event) {
+		if (building) {
+			changedDuringBuild.add(event.getProductId());
+		}
+		if (event.getType() == ProductChangedEvent.Type.DELETED) {
+			remove(event.getProductId());
+		} else {
+			reindex(event.getProductId());
+		}
+	}
+
+	private void reindex(String productId) {
+		productRepository.findById(productId).ifPresentOrElse(this::index, () -> remove(productId));
+	}
+
+	/**
+	 * 索引（或重新索引）一个产品。
+	 *
+	 * @param product 产品
+	 */
+	public synchronized void index(Product product) {
+		Map<String, Integer> terms = new HashMap<>();
+		addTerms(terms, product.getName(), NAME_WEIGHT);
+		addTerms(terms, product.getDescription(), DESCRIPTION_WEIGHT);
+
+		Map<String, Integer> previous = documentTerms.put(product.getId(), terms);
+		if (previous != null) {
+			previous.keySet().forEach(term -> {
+				if (!terms.containsKey(term)) {
+					removePosting(term, product.getId());
+				}
+			});
+		}
+		terms.forEach((term, weight) ->
+				postings.computeIfAbsent(term, t -> new ConcurrentHashMap<>()).put(product.getId(), weight));
+	}
+
+	/**
+	 * 从索引中移除一个产品。
+	 *
+	 * @param productId 产品ID
+	 */
+	public synchronized void remove(String productId) {
+		Map<String, Integer> previous = documentTerms.remove(productId);
+		if (previous != null) {
+			previous.keySet().forEach(term -> removePosting(term, productId));
+		}
+	}
+
+	private void removePosting(String term, String productId) {
+		Map<String, Integer> docs = postings.get(term);
+		if (docs != null) {
+			docs.remove(productId);
+			if (docs.isEmpty()) {
+				postings.remove(term); // 写入是串行的，这里不会与其他写入竞争
+			}
+		}
+	}
+
+	/**
+	 * 搜索产品，返回按得分从高到低排序的前 k 个产品ID。
+	 * 每个查询词都按前缀匹配，所有查询词都必须命中。
+	 *
+	 * @param query 查询文本
+	 * @param k     最多返回的结果数
+	 * @return 产品ID列表
+	 */
+	public List<String> search(String query, int k) {
+		List<String> queryTerms = tokenize(query).distinct().toList();
+		if (queryTerms.isEmpty() || k <= 0) {
+			return List.of();
+		}
+
+		Map<String, Integer> scores = null;
+		for (String queryTerm : queryTerms) {
+			Map<String, Integer> termScores = scoreTerm(queryTerm);
+			if (scores == null) {
+				scores = termScores;
+			} else {
+				// 所有查询词都必须命中：与之前的结果取交集并累加得分
+				Map<String, Integer> merged = new HashMap<>();
+				for (Map.Entry<String, Integer> entry : scores.entrySet()) {
+					Integer score = termScores.get(entry.getKey());
+					if (score != null) {
+						merged.put(entry.getKey(), entry.getValue() + score);
+					}
+				}
+				scores = merged;
+			}
+			if (scores.isEmpty()) {
+				return List.of();
+			}
+		}
+		return topK(scores, k);
+	}
+
+	/**
+	 * 计算单个查询词（前缀）命中的产品及得分，每个产品取其命中词项中的最高分。
+	 */
+	private Map<String, Integer> scoreTerm(String queryTerm) {
+		Map<String, Integer> scores = new HashMap<>();
+		NavigableMap<String, Map<String, Integer>> matches =
+				postings.subMap(queryTerm, true, queryTerm + Character.MAX_VALUE, false);
+		int expansions = 0;
+		for (Map.Entry<String, Map<String, Integer>> match : matches.entrySet()) {
+			if (++expansions > maxPrefixExpansions) {
+				break; // 过短的前缀可能匹配大量词项，限制展开数量以控制单次查询的代价
+			}
+			int bonus = match.getKey().equals(queryTerm) ? EXACT_MATCH_BONUS : 1;
+			match.getValue().forEach((productId, weight) ->
+					scores.merge(productId, weight * bonus, Math::max));
+		}
+		return scores;
+	}
+
+	private static List<String> topK(Map<String, Integer> scores, int k) {
+		Comparator<Map.Entry<String, Integer>> byRank = Map.Entry.<String, Integer>comparingByValue()
+				.thenComparing(Map.Entry.<String, Integer>comparingByKey().reversed());
+		// 大小为 k 的小顶堆，堆顶是当前 top-k 中排名最低的结果；初始容量不超过候选数量
+		PriorityQueue<Map.Entry<String, Integer>> heap = new PriorityQueue<>(Math.min(k, scores.size()) + 1, byRank);
+		for (Map.Entry<String, Integer> entry : scores.entrySet()) {
+			heap.offer(entry);
+			if (heap.size() > k) {
+				heap.poll();
+			}
+		}
+		List<String> result = new ArrayList<>(heap.size());
+		while (!heap.isEmpty()) {
+			result.add(heap.poll().getKey());
+		}
+		return result.reversed();
+	}
+
+	private static void addTerms(Map<String, Integer> terms, String text, int weight) {
+		tokenize(text).forEach(term -> terms.merge(term, weight, Integer::sum));
+	}
+
+	/**
+	 * 分词：按非字母数字字符切分并转为小写；汉字没有空格分隔，逐字作为词项。
+	 */
+	static Stream<String> tokenize(String text) {
+		if (text == null || text.isBlank()) {
+			return Stream.empty();
+		}
+		List<String> tokens = new ArrayList<>();
+		StringBuilder current = new StringBuilder();
+		text.toLowerCase(Locale.ROOT).codePoints().forEach(cp -> {
+			if (Character.UnicodeScript.of(cp) == Character.UnicodeScript.HAN) {
+				flush(current, tokens);
+				tokens.add(new String(Character.toChars(cp)));
+			} else if (Character.isLetterOrDigit(cp)) {
+				current.appendCodePoint(cp);
+			} else {
+				flush(current, tokens);
+			}
+		});
+		flush(current, tokens);
+		return tokens.stream();
+	}
+
+	private static void flush(StringBuilder current, List<String> tokens) {
+		if (!current.isEmpty()) {
+			tokens.add(current.toString());
+			current.setLength(0);
+		}
+	}
+
+	public int indexedProductCount() {
+		return documentTerms.size();
+	}
+}
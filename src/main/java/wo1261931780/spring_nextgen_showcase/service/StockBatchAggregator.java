@@ -0,0 +1,184 @@
+package wo1261931780.spring_nextgen_showcase.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import wo1261931780.spring_nextgen_showcase.client.StockServiceClient;
+import wo1261931780.spring_nextgen_showcase.config.VirtualThreadExecutors;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 库存查询的微批 (micro-batching) 聚合器：把并发的单个库存查询合并为一次批量调用 {@link StockServiceClient#getStocks}。
+ * <p>
+ * 一个专用的虚拟线程负责收集查询：收到第一个查询后，最多等待 {@code showcase.stock.batching.window}（通常为几百微秒），
+ * 或者凑满 {@code max-batch-size} 个查询，就把这一批（按产品ID去重后）作为一次批量调用发出，
+ * 批量调用在库存下游执行器上运行，不阻塞下一批的收集。结果返回后按产品ID分别完成每个调用方的 future。
+ * </p>
+ * <p>
+ * 关闭时 ({@code enabled=false}) 每个查询直接发出一次单个调用。
+ * 指标 {@code stock.batch.size} 记录每次批量调用包含的产品数，{@code stock.batch.calls} 记录批量调用次数。
+ * </p>
+ * @author junw
+ */
+@Service
+public class StockBatchAggregator {
+
+	private static final Logger logger = LoggerFactory.getLogger(StockBatchAggregator.class);
+
+	private final StockServiceClient stockClient;
+	private final VirtualThreadExecutors executors;
+	private final boolean enabled;
+	private final int maxBatchSize;
+	private final long windowNanos;
+
+	private final BlockingQueue<PendingLookup> queue = new LinkedBlockingQueue<>();
+	private Thread dispatcher; // 由 start() 创建，关闭时为 null
+	private volatile boolean running = true;
+
+	private final DistributionSummary batchSizeSummary;
+	private final Counter batchCallsCounter;
+
+	@Autowired
+	public StockBatchAggregator(StockServiceClient stockClient, VirtualThreadExecutors executors, MeterRegistry meterRegistry,
+								@Value("${showcase.stock.batching.enabled:false}") boolean enabled,
+								@Value("${showcase.stock.batching.max-batch-size:100}") int maxBatchSize,
+								@Value("${showcase.stock.batching.window:500us}") Duration window) {
+		this.stockClient = stockClient;
+		this.executors = executors;
+		this.enabled = enabled;
+		this.maxBatchSize = maxBatchSize;
+		this.windowNanos = window.toNanos();
+
+		this.batchSizeSummary = DistributionSummary.builder("stock.batch.size")
+				.description("Distinct product IDs per aggregated stock batch call.")
+				.register(meterRegistry);
+		this.batchCallsCounter = Counter.builder("stock.batch.calls")
+				.description("Aggregated stock batch calls sent.")
+				.register(meterRegistry);
+
+		logger.info("库存查询微批: {}, 窗口 {} µs, 每批最多 {} 个", enabled ? "已启用" : "已关闭",
+				windowNanos / 1000, maxBatchSize);
+	}
+
+	/**
+	 * 构造完成后再启动分发线程，线程只会看到完整初始化的对象。
+	 */
+	@PostConstruct
+	void start() {
+		if (enabled) {
+			dispatcher = Thread.ofVirtual().name("stock-batch-dispatcher").start(this::dispatchLoop);
+		}
+	}
+
+	/**
+	 * 异步查询单个产品的库存。启用微批时加入当前批次，否则直接发出单个调用。
+	 * 取消返回的 future 时，如果所在批次尚未发出，该查询不会被包含在批量调用中。
+	 *
+	 * @param productId 产品ID
+	 * @return 库存数量的 future；库存服务没有返回该产品时结果为 null
+	 */
+	public CompletableFuture<Integer> getStock(String productId) {
+		if (!enabled) {
+			return executors.stock().submit(() -> stockClient.getStock(productId));
+		}
+		CompletableFuture<Integer> future = new CompletableFuture<>();
+		PendingLookup pending = new PendingLookup(productId, future);
+		queue.add(pending);
+		if (!running && queue.remove(pending)) { // 与关闭竞争时，不能把查询留在已经没有人处理的队列中
+			future.completeExceptionally(new CancellationException("库存查询微批聚合器已关闭"));
+		}
+		return future;
+	}
+
+	private void dispatchLoop() {
+		List<PendingLookup> batch = new ArrayList<>(maxBatchSize);
+		while (running) {
+			try {
+				batch.add(queue.take());
+				long deadline = System.nanoTime() + windowNanos;
+				while (batch.size() < maxBatchSize) {
+					long remaining = deadline - System.nanoTime();
+					PendingLookup next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+					if (next == null) {
+						break;
+					}
+					batch.add(next);
+				}
+				dispatch(batch);
+				batch.clear();
+			} catch (InterruptedException e) {
+				break;
+			}
+		}
+		queue.drainTo(batch);
+		batch.forEach(pending -> pending.future().completeExceptionally(new CancellationException("库存查询微批聚合器已关闭")));
+	}
+
+	private void dispatch(List<PendingLookup> batch) {
+		Map<String, List<CompletableFuture<Integer>>> waiters = new LinkedHashMap<>();
+		for (PendingLookup pending : batch) {
+			if (!pending.future().isDone()) { // 已被取消或超时的查询不再发出
+				waiters.computeIfAbsent(pending.productId(), id -> new ArrayList<>(1)).add(pending.future());
+			}
+		}
+		if (waiters.isEmpty()) {
+			return;
+		}
+		List<String> productIds = List.copyOf(waiters.keySet());
+		batchSizeSummary.record(productIds.size());
+		batchCallsCounter.increment();
+		executors.stock().submit(() -> stockClient.getStocks(productIds))
+				.whenComplete((stocks, ex) -> complete(waiters, stocks, ex));
+	}
+
+	/**
+	 * 完成一批查询的所有 future。库存服务返回空响应体时按 "没有返回任何产品" 处理（结果为 null），
+	 * 单个 future 完成时的异常不影响其他 future，每个调用方都一定会得到结果。
+	 */
+	private static void complete(Map<String, List<CompletableFuture<Integer>>> waiters, Map<String, Integer> stocks,
+								 Throwable ex) {
+		Map<String, Integer> results = stocks != null ? stocks : Map.of();
+		waiters.forEach((productId, futures) -> futures.forEach(future -> {
+			try {
+				if (ex != null) {
+					future.completeExceptionally(ex);
+				} else {
+					future.complete(results.get(productId));
+				}
+			} catch (RuntimeException e) {
+				future.completeExceptionally(e);
+			}
+		}));
+	}
+
+	/**
+	 * 停止收集新的查询，尚未发出的查询以 CancellationException 结束。
+	 */
+	@PreDestroy
+	public void shutdown() {
+		running = false;
+		if (dispatcher != null) {
+			dispatcher.interrupt();
+		}
+	}
+
+	private record PendingLookup(String productId, CompletableFuture<Integer> future) {
+	}
+}
@@ -0,0 +1,236 @@
+package wo1261931780.spring_nextgen_showcase.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import wo1261931780.spring_nextgen_showcase.client.StockServiceClient;
+import wo1261931780.spring_nextgen_showcase.config.CircuitBreaker;
+import wo1261931780.spring_nextgen_showcase.config.VirtualThreadExecutors;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 库存查询服务：所有对库存服务的调用（单个、批量、响应式）的统一入口。
+ * 在 StockServiceClient 之前增加 "单飞 (single-flight)" 合并与短 TTL 缓存。
+ * <p>
+ * 同一 productId 的并发查询共享同一个在途的远程调用；调用完成后结果在
+ * {@code showcase.stock.cache-ttl}（通常小于 1 秒）内直接复用。TTL 为 0 时只做请求合并、不缓存结果。
+ * 调用失败的结果不会被缓存。真正的远程调用由 {@link HedgedStockClient} 发出（可选地对冲慢请求）。
+ * </p>
+ * <p>
+ * 启用本地库存副本 ({@link StockReplica}) 时，副本中已有的库存直接从本地读取，不发起任何远程调用；
+ * 只有副本未就绪、与库存服务断开过久或缺少该产品时才回退到下面的远程查询。
+ * </p>
+ * <p>
+ * 所有调用都经过库存服务的 {@link CircuitBreaker}（熔断器 + 舱壁）：库存服务持续失败或变慢时立即快速失败，
+ * 而不是让每个请求都等满超时。每次成功的查询都会记录为该产品的 "最后已知库存"（{@link #getLastKnownStock(String)}），
+ * 供调用方在快速失败时返回标记为过期的库存。
+ * </p>
+ * <p>
+ * 指标 {@code stock.lookup{result=replica|hit|miss|coalesced}} 分别统计从本地副本读取、命中缓存、真正发起远程调用、
+ * 以及合并到他人在途调用上的查询次数。
+ * </p>
+ * @author junw
+ */
+@Service
+public class StockLookupService {
+
+	private static final Logger logger = LoggerFactory.getLogger(StockLookupService.class);
+
+	private final HedgedStockClient hedgedStockClient;
+	private final StockServiceClient stockClient;
+	private final VirtualThreadExecutors executors;
+	private final CircuitBreaker stockCircuitBreaker;
+	private final StockReplica stockReplica;
+	private final AsyncCache<String, Integer> stockCache;
+	// 最后一次成功查询到的库存，不过期，只按容量淘汰
+	private final Cache<String, Integer> lastKnownStock;
+
+	private final Counter replicaCounter;
+	private final Counter hitCounter;
+	private final Counter missCounter;
+	private final Counter coalescedCounter;
+
+	@Autowired
+	public StockLookupService(HedgedStockClient hedgedStockClient, StockServiceClient stockClient,
+							  VirtualThreadExecutors executors, CircuitBreaker stockCircuitBreaker, StockReplica stockReplica,
+							  MeterRegistry meterRegistry,
+							  @Value("${showcase.stock.cache-ttl:250ms}") Duration cacheTtl,
+							  @Value("${showcase.stock.cache-maximum-size:100000}") long cacheMaximumSize) {
+		this.hedgedStockClient = hedgedStockClient;
+		this.stockClient = stockClient;
+		this.executors = executors;
+		this.stockCircuitBreaker = stockCircuitBreaker;
+		this.stockReplica = stockReplica;
+		// 在途的 future 不会过期，过期时间从调用完成时开始计算
+		this.stockCache = Caffeine.newBuilder()
+				.expireAfterWrite(cacheTtl)
+				.maximumSize(cacheMaximumSize)
+				.buildAsync();
+		this.lastKnownStock = Caffeine.newBuilder()
+				.maximumSize(cacheMaximumSize)
+				.build();
+
+		this.replicaCounter = lookupCounter(meterRegistry, "replica");
+		this.hitCounter = lookupCounter(meterRegistry, "hit");
+		this.missCounter = lookupCounter(meterRegistry, "miss");
+		this.coalescedCounter = lookupCounter(meterRegistry, "coalesced");
+		logger.info("库存查询缓存 TTL: {}, 最大条目数: {}", cacheTtl, cacheMaximumSize);
+	}
+
+	private static Counter lookupCounter(MeterRegistry meterRegistry, String result) {
+		return Counter.builder("stock.lookup")
+				.description("Stock lookups by outcome: served from the local replica or cache, sent to the stock service, or coalesced onto an in-flight call.")
+				.tag("result", result)
+				.register(meterRegistry);
+	}
+
+	/**
+	 * 异步查询库存。
+	 * <p>
+	 * 返回的是共享结果的独立副本：调用方取消或对其设置超时不会影响其他正在等待同一结果的请求，
+	 * 也不会中断共享的远程调用。
+	 * </p>
+	 *
+	 * @param productId 产品ID
+	 * @return 库存数量的 future
+	 */
+	public CompletableFuture<Integer> getStockAsync(String productId) {
+		Optional<Integer> local = stockReplica.getStock(productId);
+		if (local.isPresent()) {
+			replicaCounter.increment();
+			return CompletableFuture.completedFuture(local.get());
+		}
+		boolean[] leader = {false};
+		CompletableFuture<Integer> shared = stockCache.get(productId, (id, executor) -> {
+			leader[0] = true;
+			return stockCircuitBreaker.execute(() -> hedgedStockClient.getStock(id));
+		});
+		if (leader[0]) {
+			missCounter.increment();
+			shared.thenAccept(stock -> rememberStock(productId, stock));
+		} else if (shared.isDone()) {
+			hitCounter.increment();
+		} else {
+			coalescedCounter.increment();
+			logger.debug("产品ID: {} 的库存查询合并到在途调用", productId);
+		}
+		return shared.copy();
+	}
+
+	/**
+	 * 通过一次批量调用查询多个产品的库存，不经过单飞缓存。
+	 *
+	 * @param productIds 产品ID集合
+	 * @return 产品ID到库存数量的映射
+	 */
+	public CompletableFuture<Map<String, Integer>> getStocksAsync(Collection<String> productIds) {
+		Map<String, Integer> local = new HashMap<>();
+		List<String> remoteIds = productIds.stream()
+				.filter(id -> {
+					Optional<Integer> stock = stockReplica.getStock(id);
+					stock.ifPresent(value -> local.put(id, value));
+					return stock.isEmpty();
+				})
+				.toList();
+		if (remoteIds.isEmpty()) {
+			replicaCounter.increment(local.size());
+			return CompletableFuture.completedFuture(local);
+		}
+		CompletableFuture<Map<String, Integer>> future = stockCircuitBreaker.execute(() ->
+				executors.stock().submit(() -> stockClient.getStocks(remoteIds)));
+		future.thenAccept(stocks -> stocks.forEach(this::rememberStock));
+		if (local.isEmpty()) {
+			return future;
+		}
+		replicaCounter.increment(local.size());
+		CompletableFuture<Map<String, Integer>> merged = future.thenApply(stocks -> {
+			Map<String, Integer> result = new HashMap<>(stocks);
+			result.putAll(local);
+			return result;
+		});
+		// 调用方取消合并后的 future 时，同样取消底层的批量调用
+		merged.whenComplete((stocks, ex) -> {
+			if (merged.isCancelled()) {
+				future.cancel(true);
+			}
+		});
+		return merged;
+	}
+
+	/**
+	 * 通过 WebClient 非阻塞地查询库存，同样受熔断器与舱壁保护。库存服务返回空时结果为空。
+	 *
+	 * @param productId 产品ID
+	 * @return 库存数量的 Mono
+	 */
+	public Mono<Integer> getStockReactive(String productId) {
+		Optional<Integer> local = stockReplica.getStock(productId);
+		if (local.isPresent()) {
+			replicaCounter.increment();
+			return Mono.just(local.get());
+		}
+		// 订阅被取消（例如 Mono.zip 的另一侧失败）时取消 future，熔断器据此归还许可
+		return Mono.fromFuture(() -> stockCircuitBreaker.execute(() -> stockClient.getStockReactive(productId).toFuture()))
+				.doOnNext(stock -> rememberStock(productId, stock));
+	}
+
+	/**
+	 * 最后一次成功查询到的库存，用于库存服务不可用时的降级。可能已经过期。
+	 *
+	 * @param productId 产品ID
+	 * @return 最后已知的库存数量
+	 */
+	public Optional<Integer> getLastKnownStock(String productId) {
+		return Optional.ofNullable(lastKnownStock.getIfPresent(productId));
+	}
+
+	private void rememberStock(String productId, Integer stock) {
+		if (stock != null) {
+			lastKnownStock.put(productId, stock);
+		}
+	}
+
+	/**
+	 * 只读取本地副本或缓存中已经成功返回、尚未过期的库存，不发起远程调用，也不计入查询指标。
+	 * 用于条件请求等 "有缓存就用，没有就算了" 的场景。
+	 *
+	 * @param productId 产品ID
+	 * @return 缓存中的库存数量
+	 */
+	public Optional<Integer> getCachedStock(String productId) {
+		Optional<Integer> local = stockReplica.getStock(productId);
+		if (local.isPresent()) {
+			return local;
+		}
+		CompletableFuture<Integer> cached = stockCache.getIfPresent(productId);
+		if (cached == null || !cached.isDone() || cached.isCompletedExceptionally()) {
+			return Optional.empty();
+		}
+		return Optional.ofNullable(cached.join());
+	}
+
+	/**
+	 * 同步查询库存，语义同 {@link #getStockAsync(String)}。
+	 *
+	 * @param productId 产品ID
+	 * @return 库存数量
+	 */
+	public Integer getStock(String productId) {
+		return getStockAsync(productId).join();
+	}
+}
@@ -0,0 +1,233 @@
+package wo1261931780.spring_nextgen_showcase.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import wo1261931780.spring_nextgen_showcase.client.StockServiceClient;
+import wo1261931780.spring_nextgen_showcase.entity.StockChange;
+import wo1261931780.spring_nextgen_showcase.entity.StockSnapshot;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 由库存服务推送维护的本地库存副本，让产品详情的库存读取不需要调用库存服务。
+ * <p>
+ * 复制过程在一个专用的虚拟线程中进行：
+ * <ol>
+ *     <li>获取库存快照 ({@link StockServiceClient#getSnapshot()})，构建新的表后整体替换旧表；</li>
+ *     <li>从快照的序号之后订阅变更流 ({@link StockServiceClient#streamChanges(long)})，逐条应用；</li>
+ *     <li>重复的变更（序号不大于已应用序号）直接忽略；发现序号不连续（丢失变更）时重新获取快照；</li>
+ *     <li>连接断开时等待 {@code reconnect-delay} 后从已应用的序号继续订阅，库存服务返回 410 时重新获取快照。</li>
+ * </ol>
+ * </p>
+ * <p>
+ * 与库存服务断开超过 {@code max-staleness} 后副本不再提供读取，调用方回退到远程查询。
+ * 只有收到第一个事件（变更或心跳）之后才算连上；断开时间从真正建立的连接断开时开始计算，
+ * 之后失败的重连尝试不会重置它，因此库存服务持续不可用时副本最多在 {@code max-staleness} 内继续提供读取。
+ * </p>
+ * <p>
+ * 指标：{@code stock.replica.lag}（变更从库存服务产生到在本地应用的延迟）、{@code stock.replica.sequence}、
+ * {@code stock.replica.size}、{@code stock.replica.connected}、{@code stock.replica.resyncs}、{@code stock.replica.gaps}。
+ * </p>
+ * @author junw
+ */
+@Service
+public class StockReplica {
+
+	private static final Logger logger = LoggerFactory.getLogger(StockReplica.class);
+
+	private final StockServiceClient stockClient;
+	private final boolean enabled;
+	private final long maxStalenessNanos;
+	private final Duration reconnectDelay;
+
+	// 只由复制线程写入；重新同步时整体替换，读取方始终看到一张完整的表
+	private volatile Map<String, Integer> stocks = new ConcurrentHashMap<>();
+	private volatile long appliedSequence;
+	private volatile boolean ready;
+	private volatile boolean connected;
+	private volatile long disconnectedAt = System.nanoTime();
+
+	private volatile boolean running = true;
+	private volatile Thread replicator;
+
+	private final MeterRegistry meterRegistry;
+	private final Timer lagTimer;
+	private final Counter resyncCounter;
+	private final Counter gapCounter;
+
+	@Autowired
+	public StockReplica(StockServiceClient stockClient, MeterRegistry meterRegistry,
+						@Value("${showcase.stock.replica.enabled:false}") boolean enabled,
+						@Value("${showcase.stock.replica.max-staleness:5s}") Duration maxStaleness,
+						@Value("${showcase.stock.replica.reconnect-delay:1s}") Duration reconnectDelay) {
+		this.stockClient = stockClient;
+		this.enabled = enabled;
+		this.maxStalenessNanos = maxStaleness.toNanos();
+		this.reconnectDelay = reconnectDelay;
+		this.meterRegistry = meterRegistry;
+
+		this.lagTimer = Timer.builder("stock.replica.lag")
+				.description("Time from a stock change being produced by the stock service to it being applied locally.")
+				.register(meterRegistry);
+		this.resyncCounter = Counter.builder("stock.replica.resyncs")
+				.description("Full snapshot loads of the local stock replica.")
+				.register(meterRegistry);
+		this.gapCounter = Counter.builder("stock.replica.gaps")
+				.description("Sequence gaps detected in the stock change stream.")
+				.register(meterRegistry);
+	}
+
+	/**
+	 * 构造完成后再注册读取本对象状态的仪表。
+	 */
+	@PostConstruct
+	void registerGauges() {
+		Gauge.builder("stock.replica.sequence", this, replica -> replica.appliedSequence)
+				.description("Last stock change sequence applied to the local replica.")
+				.register(meterRegistry);
+		Gauge.builder("stock.replica.size", this, replica -> replica.stocks.size())
+				.description("Products in the local stock replica.")
+				.register(meterRegistry);
+		Gauge.builder("stock.replica.connected", this, replica -> replica.connected ? 1 : 0)
+				.description("Whether the replica is subscribed to the stock change stream.")
+				.register(meterRegistry);
+	}
+
+	/**
+	 * 应用启动完成（本地库存服务桩已经可以访问）后开始复制。
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void start() {
+		if (enabled) {
+			replicator = Thread.ofVirtual().name("stock-replica").start(this::replicate);
+		}
+	}
+
+	/**
+	 * 从本地副本读取库存。副本未就绪、与库存服务断开过久或没有该产品时返回空，调用方应回退到远程查询。
+	 *
+	 * @param productId 产品ID
+	 * @return 库存数量
+	 */
+	public Optional<Integer> getStock(String productId) {
+		if (!isServing()) {
+			return Optional.empty();
+		}
+		return Optional.ofNullable(stocks.get(productId));
+	}
+
+	private boolean isServing() {
+		return ready && (connected || System.nanoTime() - disconnectedAt < maxStalenessNanos);
+	}
+
+	private void replicate() {
+		boolean needSnapshot = true;
+		while (running) {
+			try {
+				if (needSnapshot) {
+					loadSnapshot();
+					needSnapshot = false;
+				}
+				needSnapshot = followChanges();
+				if (needSnapshot) {
+					continue; // 发现序号缺口，立即重新同步
+				}
+			} catch (WebClientResponseException e) {
+				// 快照本身获取失败时保持 needSnapshot，不能在没有快照的情况下继续订阅变更流
+				needSnapshot = needSnapshot || e.getStatusCode().isSameCodeAs(HttpStatus.GONE);
+				logger.warn("库存变更流请求失败 ({})，{} 后{}", e.getStatusCode(), reconnectDelay,
+						needSnapshot ? "重新获取快照" : "重新连接");
+			} catch (RuntimeException e) {
+				if (!running) {
+					break;
+				}
+				logger.warn("库存副本复制中断，{} 后重新连接: {}", reconnectDelay, e.toString());
+			}
+			try {
+				Thread.sleep(reconnectDelay);
+			} catch (InterruptedException e) {
+				break;
+			}
+		}
+		logger.info("库存副本复制已停止，已应用序号: {}", appliedSequence);
+	}
+
+	private void loadSnapshot() {
+		long start = System.nanoTime();
+		StockSnapshot snapshot = stockClient.getSnapshot();
+		stocks = new ConcurrentHashMap<>(snapshot.getStocks());
+		appliedSequence = snapshot.getSequence();
+		ready = true;
+		resyncCounter.increment();
+		logger.info("库存副本已从快照同步: {} 个产品, 序号 {}, 耗时 {} ms",
+				snapshot.getStocks().size(), snapshot.getSequence(), (System.nanoTime() - start) / 1_000_000);
+	}
+
+	/**
+	 * 从已应用的序号之后消费变更流，直到连接结束。
+	 *
+	 * @return 是否因为发现序号缺口而需要重新获取快照
+	 */
+	private boolean followChanges() {
+		try (Stream<ServerSentEvent<StockChange>> events = stockClient.streamChanges(appliedSequence).toStream()) {
+			Iterator<ServerSentEvent<StockChange>> iterator = events.iterator();
+			while (running && iterator.hasNext()) {
+				StockChange change = iterator.next().data();
+				connected = true; // 收到第一个事件才说明连接真正建立
+				if (change == null) {
+					continue; // 心跳等不带数据的事件
+				}
+				long sequence = change.getSequence();
+				if (sequence <= appliedSequence) {
+					continue;
+				}
+				if (sequence != appliedSequence + 1) {
+					gapCounter.increment();
+					logger.warn("库存变更流出现序号缺口: 期望 {}, 实际 {}，重新获取快照", appliedSequence + 1, sequence);
+					return true;
+				}
+				stocks.put(change.getProductId(), change.getStock());
+				appliedSequence = sequence;
+				lagTimer.record(Math.max(0, System.currentTimeMillis() - change.getTimestamp()), TimeUnit.MILLISECONDS);
+			}
+			return false;
+		} finally {
+			if (connected) {
+				connected = false;
+				disconnectedAt = System.nanoTime();
+			}
+		}
+	}
+
+	/**
+	 * 停止复制并关闭变更流连接。
+	 */
+	@PreDestroy
+	public void shutdown() {
+		running = false;
+		Thread thread = replicator;
+		if (thread != null) {
+			thread.interrupt();
+		}
+	}
+}
@@ -0,0 +1,265 @@
+package wo1261931780.spring_nextgen_showcase.service;
+
+import wo1261931780.spring_nextgen_showcase.client.InsufficientStockException;
+import wo1261931780.spring_nextgen_showcase.entity.StockLevel;
+import wo1261931780.spring_nextgen_showcase.entity.StockReservation;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 无锁的进程内库存预占引擎（不依赖 Spring，便于单独测试）。
+ * <p>
+ * 每个产品一个计数器：可售数量与已预占数量打包在同一个 AtomicLong 中（高 32 位 / 低 32 位），
+ * 预占、确认、释放都是对单个产品计数器的一次 CAS，不同产品之间互不影响，也没有全局锁。
+ * 可售数量不足时 CAS 不会发生，因此不会超卖。
+ * </p>
+ * <p>
+ * 多个产品的预占是 "全有或全无" 的：依次预占每个产品，任意一个不足时回滚已经预占的部分。
+ * 回滚之前的短暂时间内，其他请求可能因为看到被临时占用的库存而失败，但不会超卖。
+ * </p>
+ * <p>
+ * 每次计数器变化都会把产品ID记入 "脏" 集合，由调用方通过 {@link #drainDirty()} 取出后批量持久化。
+ * </p>
+ * @author junw
+ */
+public class StockReservationEngine {
+
+	private final Clock clock;
+	private final Map<String, StockCounter> counters = new ConcurrentHashMap<>();
+	private final Map<String, StockReservation> reservations = new ConcurrentHashMap<>();
+	private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+
+	public StockReservationEngine(Clock clock) {
+		this.clock = clock;
+	}
+
+	/**
+	 * 登记一个产品的初始库存。产品已经登记过时不做任何修改。
+	 *
+	 * @param productId 产品ID
+	 * @param available 可售数量
+	 * @param reserved  已预占数量
+	 */
+	public void register(String productId, int available, int reserved) {
+		counters.putIfAbsent(productId, new StockCounter(available, reserved));
+	}
+
+	public boolean isRegistered(String productId) {
+		return counters.containsKey(productId);
+	}
+
+	/**
+	 * 为多个产品 "全有或全无" 地预占库存。
+	 *
+	 * @param items 产品ID -> 数量（数量必须大于 0，产品必须已经登记）
+	 * @param ttl   预占的有效期
+	 * @return 预占记录
+	 * @throws InsufficientStockException 任意一个产品的可售数量不足时抛出，此时没有任何产品被预占
+	 */
+	public StockReservation reserve(Map<String, Integer> items, Duration ttl) {
+		List<Map.Entry<String, Integer>> taken = new ArrayList<>(items.size());
+		for (Map.Entry<String, Integer> item : items.entrySet()) {
+			if (item.getValue() == null || item.getValue() <= 0) {
+				rollback(taken);
+				throw new IllegalArgumentException("产品 " + item.getKey() + " 的预占数量必须大于 0");
+			}
+			if (!counter(item.getKey()).tryReserve(item.getValue())) {
+				rollback(taken);
+				throw new InsufficientStockException(item.getKey(), item.getValue());
+			}
+			taken.add(item);
+		}
+		markDirty(taken);
+		StockReservation reservation = new StockReservation(UUID.randomUUID().toString(),
+				Map.copyOf(items), clock.instant().plus(ttl));
+		reservations.put(reservation.getId(), reservation);
+		return reservation;
+	}
+
+	private void rollback(List<Map.Entry<String, Integer>> taken) {
+		taken.forEach(entry -> counter(entry.getKey()).release(entry.getValue()));
+		markDirty(taken);
+	}
+
+	/**
+	 * 确认预占（例如订单支付成功）：预占的数量从已预占中扣除，不再回到可售数量。
+	 *
+	 * @param reservationId 预占ID
+	 * @return 预占是否存在且由本次调用确认（已过期、已释放或已确认时返回 false）
+	 */
+	public boolean confirm(String reservationId) {
+		StockReservation reservation = reservations.remove(reservationId);
+		if (reservation == null) {
+			return false;
+		}
+		reservation.getItems().forEach((productId, quantity) -> counter(productId).commit(quantity));
+		markDirty(reservation.getItems().entrySet());
+		return true;
+	}
+
+	/**
+	 * 释放预占：预占的数量回到可售数量。
+	 *
+	 * @param reservationId 预占ID
+	 * @return 预占是否存在且由本次调用释放
+	 */
+	public boolean release(String reservationId) {
+		StockReservation reservation = reservations.remove(reservationId);
+		if (reservation == null) {
+			return false;
+		}
+		releaseItems(reservation);
+		return true;
+	}
+
+	/**
+	 * 释放所有已经过期的预占。与 confirm / release 并发执行时，每个预占只会被其中一方处理一次。
+	 *
+	 * @return 本次释放的预占数量
+	 */
+	public int expire() {
+		Instant now = clock.instant();
+		int expired = 0;
+		for (StockReservation reservation : reservations.values()) {
+			if (!reservation.getExpiresAt().isAfter(now) && reservations.remove(reservation.getId(), reservation)) {
+				releaseItems(reservation);
+				expired++;
+			}
+		}
+		return expired;
+	}
+
+	private void releaseItems(StockReservation reservation) {
+		reservation.getItems().forEach((productId, quantity) -> counter(productId).release(quantity));
+		markDirty(reservation.getItems().entrySet());
+	}
+
+	/**
+	 * 调整可售数量（例如补货为正数，盘亏为负数）。调整后可售数量不会小于 0。
+	 *
+	 * @param productId 产品ID
+	 * @param delta     调整量
+	 */
+	public void adjust(String productId, int delta) {
+		counter(productId).adjust(delta);
+		dirty.add(productId);
+	}
+
+	public int available(String productId) {
+		return StockCounter.available(counter(productId).state.get());
+	}
+
+	public int reserved(String productId) {
+		return StockCounter.reserved(counter(productId).state.get());
+	}
+
+	/**
+	 * 读取一个产品计数器的一致快照（可售数量与已预占数量来自同一次读取），用于持久化。
+	 *
+	 * @param productId 产品ID
+	 * @return 库存计数器快照
+	 */
+	public StockLevel snapshot(String productId) {
+		long state = counter(productId).state.get();
+		return new StockLevel(productId, StockCounter.available(state), StockCounter.reserved(state), clock.instant());
+	}
+
+	/**
+	 * 取出自上次调用以来计数器发生过变化的产品ID。
+	 * 在取出之后发生的变化会重新记入，因此不会丢失更新。
+	 *
+	 * @return 产品ID集合
+	 */
+	public List<String> drainDirty() {
+		List<String> drained = new ArrayList<>();
+		for (String productId : dirty) {
+			if (dirty.remove(productId)) {
+				drained.add(productId);
+			}
+		}
+		return drained;
+	}
+
+	/**
+	 * 把产品ID重新记为脏（例如持久化失败，需要下次重试）。
+	 *
+	 * @param productIds 产品ID集合
+	 */
+	public void markDirty(Collection<String> productIds) {
+		dirty.addAll(productIds);
+	}
+
+	private void markDirty(Iterable<Map.Entry<String, Integer>> items) {
+		items.forEach(item -> dirty.add(item.getKey()));
+	}
+
+	public int activeReservations() {
+		return reservations.size();
+	}
+
+	private StockCounter counter(String productId) {
+		StockCounter counter = counters.get(productId);
+		if (counter == null) {
+			throw new IllegalArgumentException("产品 " + productId + " 尚未登记库存");
+		}
+		return counter;
+	}
+
+	/**
+	 * 单个产品的库存计数器：可售数量（高 32 位）与已预占数量（低 32 位）打包在一个 AtomicLong 中，
+	 * 保证两者总是被原子地一起修改，持久化时读到的是一致的快照。
+	 */
+	static final class StockCounter {
+
+		private final AtomicLong state;
+
+		StockCounter(int available, int reserved) {
+			this.state = new AtomicLong(pack(available, reserved));
+		}
+
+		boolean tryReserve(int quantity) {
+			long current;
+			do {
+				current = state.get();
+				if (available(current) < quantity) {
+					return false;
+				}
+			} while (!state.compareAndSet(current, pack(available(current) - quantity, reserved(current) + quantity)));
+			return true;
+		}
+
+		void release(int quantity) {
+			state.getAndUpdate(current -> pack(available(current) + quantity, reserved(current) - quantity));
+		}
+
+		void commit(int quantity) {
+			state.getAndUpdate(current -> pack(available(current), reserved(current) - quantity));
+		}
+
+		void adjust(int delta) {
+			state.getAndUpdate(current -> pack(Math.max(0, available(current) + delta), reserved(current)));
+		}
+
+		static long pack(int available, int reserved) {
+			return ((long) available << 32) | (reserved & 0xffffffffL);
+		}
+
+		static int available(long state) {
+			return (int) (state >> 32);
+		}
+
+		static int reserved(long state) {
+			return (int) state;
+		}
+	}
+}
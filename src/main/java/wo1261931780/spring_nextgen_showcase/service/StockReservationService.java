@@ -0,0 +1,303 @@
+package wo1261931780.spring_nextgen_showcase.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+import wo1261931780.spring_nextgen_showcase.client.InsufficientStockException;
+import wo1261931780.spring_nextgen_showcase.client.StockLevelRepository;
+import wo1261931780.spring_nextgen_showcase.entity.StockLevel;
+import wo1261931780.spring_nextgen_showcase.entity.StockReservation;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 库存预占服务：在 {@link StockReservationEngine}（无锁的内存计数器）之上提供初始化、过期清理与后写持久化。
+ * <ul>
+ *     <li>应用启动时（Web 服务器开始接收请求之前）从 stock_levels 表恢复计数器；首次预占某个没有记录的产品时，
+ *     以库存服务返回的库存作为初始可售数量，此后该产品的可售数量以本引擎为准；</li>
+ *     <li>预占记录只保存在内存中，重启之后无法再确认、释放或过期，因此恢复时把表中的已预占数量归还到可售数量，
+ *     重启前未确认的预占视为已释放（持有者确认时得到 404，需要重新预占）；</li>
+ *     <li>预占在 {@code showcase.stock.reservation.default-ttl} 内未确认或释放时自动释放，
+ *     由后台虚拟线程每隔 {@code sweep-interval} 清理一次；</li>
+ *     <li>计数器的变化每隔 {@code flush-interval} 批量写入 stock_levels 表（每个事务最多 {@code flush-batch-size} 行），
+ *     请求路径上不访问数据库；写入失败的产品会在下次刷新时重试。</li>
+ * </ul>
+ * <p>
+ * 指标：{@code stock.reservations{result=reserved|rejected|confirmed|released|expired}}、
+ * {@code stock.reservations.active}、{@code stock.reservations.flush}（每次刷新的耗时）。
+ * </p>
+ * @author junw
+ */
+@Service
+public class StockReservationService implements SmartInitializingSingleton {
+
+	private static final Logger logger = LoggerFactory.getLogger(StockReservationService.class);
+
+	private final StockReservationEngine engine = new StockReservationEngine(Clock.systemUTC());
+
+	private final StockLevelRepository stockLevelRepository;
+	private final TransactionTemplate transactionTemplate;
+	private final StockLookupService stockLookupService;
+
+	private final Duration defaultTtl;
+	private final Duration maxTtl;
+	private final int maxItems;
+	private final Duration flushInterval;
+	private final long sweepIntervalNanos;
+	private final int flushBatchSize;
+
+	private volatile boolean running = true;
+	private volatile Thread maintenance;
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	private final Counter reservedCounter;
+	private final Counter rejectedCounter;
+	private final Counter confirmedCounter;
+	private final Counter releasedCounter;
+	private final Counter expiredCounter;
+	private final Timer flushTimer;
+
+	@Autowired
+	public StockReservationService(StockLevelRepository stockLevelRepository, TransactionTemplate transactionTemplate,
+								   StockLookupService stockLookupService, MeterRegistry meterRegistry,
+								   @Value("${showcase.stock.reservation.default-ttl:10m}") Duration defaultTtl,
+								   @Value("${showcase.stock.reservation.max-ttl:1h}") Duration maxTtl,
+								   @Value("${showcase.stock.reservation.max-items:100}") int maxItems,
+								   @Value("${showcase.stock.reservation.flush-interval:200ms}") Duration flushInterval,
+								   @Value("${showcase.stock.reservation.flush-batch-size:500}") int flushBatchSize,
+								   @Value("${showcase.stock.reservation.sweep-interval:1s}") Duration sweepInterval) {
+		this.stockLevelRepository = stockLevelRepository;
+		this.transactionTemplate = transactionTemplate;
+		this.stockLookupService = stockLookupService;
+		this.defaultTtl = defaultTtl;
+		this.maxTtl = maxTtl;
+		this.maxItems = maxItems;
+		this.flushInterval = flushInterval;
+		this.flushBatchSize = flushBatchSize;
+		this.sweepIntervalNanos = sweepInterval.toNanos();
+
+		this.reservedCounter = resultCounter(meterRegistry, "reserved");
+		this.rejectedCounter = resultCounter(meterRegistry, "rejected");
+		this.confirmedCounter = resultCounter(meterRegistry, "confirmed");
+		this.releasedCounter = resultCounter(meterRegistry, "released");
+		this.expiredCounter = resultCounter(meterRegistry, "expired");
+		Gauge.builder("stock.reservations.active", engine, StockReservationEngine::activeReservations)
+				.description("Reservations neither confirmed, released nor expired yet.")
+				.register(meterRegistry);
+		this.flushTimer = Timer.builder("stock.reservations.flush")
+				.description("Time to write a batch of changed stock counters to the database.")
+				.register(meterRegistry);
+	}
+
+	private static Counter resultCounter(MeterRegistry meterRegistry, String result) {
+		return Counter.builder("stock.reservations")
+				.description("Stock reservation operations by outcome.")
+				.tag("result", result)
+				.register(meterRegistry);
+	}
+
+	/**
+	 * 所有单例创建完成后、Web 服务器开始接收请求之前从数据库恢复计数器，
+	 * 避免请求先以库存服务的数据登记计数器，使数据库中的记录被忽略。
+	 */
+	@Override
+	public void afterSingletonsInstantiated() {
+		List<StockLevel> levels = stockLevelRepository.findAll();
+		long returned = 0;
+		for (StockLevel level : levels) {
+			returned += restore(level);
+		}
+		logger.info("库存预占引擎已从数据库恢复 {} 个产品的计数器，重启前未完成的预占归还了 {} 件库存", levels.size(), returned);
+	}
+
+	/**
+	 * 应用启动完成后启动后台的过期清理与刷新。
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void start() {
+		maintenance = Thread.ofVirtual().name("stock-reservation-maintenance").start(this::maintain);
+	}
+
+	/**
+	 * 从数据库记录登记计数器。表中的已预占数量属于本进程已经丢失的预占记录，归还到可售数量。
+	 *
+	 * @return 归还的数量
+	 */
+	private int restore(StockLevel level) {
+		int reserved = level.getReserved();
+		engine.register(level.getProductId(), level.getAvailable() + reserved, 0);
+		if (reserved > 0) {
+			engine.markDirty(List.of(level.getProductId())); // 把归还后的计数器写回数据库
+		}
+		return reserved;
+	}
+
+	/**
+	 * 为多个产品 "全有或全无" 地预占库存。
+	 *
+	 * @param items 产品ID -> 数量
+	 * @param ttl   预占有效期，为 null 时使用默认值
+	 * @return 预占记录
+	 * @throws InsufficientStockException 任意一个产品库存不足时抛出，此时没有任何产品被预占
+	 */
+	public StockReservation reserve(Map<String, Integer> items, Duration ttl) {
+		if (items == null || items.isEmpty() || items.size() > maxItems) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "一次预占必须包含 1 到 " + maxItems + " 个产品");
+		}
+		if (items.values().stream().anyMatch(quantity -> quantity == null || quantity <= 0)) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "预占数量必须大于 0");
+		}
+		Duration effectiveTtl = ttl != null ? ttl : defaultTtl;
+		if (effectiveTtl.isNegative() || effectiveTtl.isZero() || effectiveTtl.compareTo(maxTtl) > 0) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "预占有效期必须大于 0 且不超过 " + maxTtl);
+		}
+		items.keySet().forEach(this::ensureRegistered);
+		try {
+			StockReservation reservation = engine.reserve(items, effectiveTtl);
+			reservedCounter.increment();
+			return reservation;
+		} catch (InsufficientStockException e) {
+			rejectedCounter.increment();
+			throw e;
+		}
+	}
+
+	/**
+	 * 确认预占，预占的库存被正式扣减。
+	 *
+	 * @param reservationId 预占ID
+	 * @return 预占是否存在（已过期、已释放或已确认时返回 false）
+	 */
+	public boolean confirm(String reservationId) {
+		boolean confirmed = engine.confirm(reservationId);
+		if (confirmed) {
+			confirmedCounter.increment();
+		}
+		return confirmed;
+	}
+
+	/**
+	 * 释放预占，预占的库存回到可售数量。
+	 *
+	 * @param reservationId 预占ID
+	 * @return 预占是否存在
+	 */
+	public boolean release(String reservationId) {
+		boolean released = engine.release(reservationId);
+		if (released) {
+			releasedCounter.increment();
+		}
+		return released;
+	}
+
+	/**
+	 * 确保产品的计数器已经登记：优先使用数据库中的记录，否则以库存服务返回的库存作为初始值。
+	 */
+	private void ensureRegistered(String productId) {
+		if (engine.isRegistered(productId)) {
+			return;
+		}
+		StockLevel level = stockLevelRepository.findById(productId).orElse(null);
+		if (level != null) {
+			restore(level);
+			return;
+		}
+		Integer stock;
+		try {
+			stock = stockLookupService.getStock(productId);
+		} catch (CompletionException e) {
+			throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "无法获取产品 " + productId + " 的初始库存", e.getCause());
+		}
+		engine.register(productId, stock != null ? stock : 0, 0);
+		engine.markDirty(List.of(productId)); // 让新登记的计数器尽快写入数据库
+	}
+
+	private void maintain() {
+		long lastSweep = System.nanoTime();
+		while (running) {
+			try {
+				Thread.sleep(flushInterval);
+			} catch (InterruptedException e) {
+				break;
+			}
+			if (System.nanoTime() - lastSweep >= sweepIntervalNanos) {
+				lastSweep = System.nanoTime();
+				int expired = engine.expire();
+				if (expired > 0) {
+					expiredCounter.increment(expired);
+					logger.info("已自动释放 {} 个过期的库存预占", expired);
+				}
+			}
+			flush();
+		}
+	}
+
+	/**
+	 * 把发生过变化的计数器批量写入数据库。每批在一个事务中完成：一次 findAllById 读取已有记录，
+	 * 修改后的已有记录与新记录在提交时一起写出（开启 JDBC 批处理时按批发送）。
+	 */
+	void flush() {
+		List<String> dirty = engine.drainDirty();
+		for (int from = 0; from < dirty.size(); from += flushBatchSize) {
+			List<String> batch = dirty.subList(from, Math.min(dirty.size(), from + flushBatchSize));
+			try {
+				flushTimer.record(() -> transactionTemplate.executeWithoutResult(status -> {
+					Map<String, StockLevel> existing = stockLevelRepository.findAllById(batch).stream()
+							.collect(Collectors.toMap(StockLevel::getProductId, Function.identity()));
+					for (String productId : batch) {
+						StockLevel snapshot = engine.snapshot(productId);
+						StockLevel level = existing.get(productId);
+						if (level == null) {
+							entityManager.persist(snapshot);
+						} else {
+							level.setAvailable(snapshot.getAvailable());
+							level.setReserved(snapshot.getReserved());
+							level.setUpdatedAt(snapshot.getUpdatedAt());
+						}
+					}
+				}));
+			} catch (RuntimeException e) {
+				engine.markDirty(batch);
+				logger.warn("写入 {} 个库存计数器失败，将在下次刷新时重试: {}", batch.size(), e.toString());
+			}
+		}
+	}
+
+	/**
+	 * 停止后台任务，并把尚未写入的计数器最后刷新一次。
+	 */
+	@PreDestroy
+	public void shutdown() throws InterruptedException {
+		running = false;
+		Thread thread = maintenance;
+		if (thread != null) {
+			thread.interrupt();
+			thread.join(TimeUnit.SECONDS.toMillis(5));
+		}
+		flush();
+	}
+}
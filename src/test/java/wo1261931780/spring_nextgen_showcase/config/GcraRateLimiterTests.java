@@ -0,0 +1,104 @@
+package wo1261931780.spring_nextgen_showcase.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import wo1261931780.spring_nextgen_showcase.client.RateLimitExceededException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * GCRA 限流器的测试：使用可控的时钟验证突发额度、恢复速率、按客户端的限额，以及并发请求下不会超发。
+ */
+class GcraRateLimiterTests {
+
+	private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	@Test
+	void burstThenSteadyRate() {
+		AtomicLong now = new AtomicLong(0);
+		GcraRateLimiter limiter = limiter(new RateLimitProperties.Limit(10, 5), Map.of(), now);
+
+		for (int i = 0; i < 5; i++) {
+			assertEquals(0, limiter.tryAcquire("a"));
+		}
+		long wait = limiter.tryAcquire("a");
+		assertEquals(SECOND / 10, wait);
+
+		now.addAndGet(wait - 1);
+		assertTrue(limiter.tryAcquire("a") > 0);
+		now.addAndGet(1);
+		assertEquals(0, limiter.tryAcquire("a"));
+		assertTrue(limiter.tryAcquire("a") > 0);
+
+		now.addAndGet(SECOND); // 空闲 1 秒后恢复满额突发，但不会超过突发上限
+		for (int i = 0; i < 5; i++) {
+			assertEquals(0, limiter.tryAcquire("a"));
+		}
+		assertTrue(limiter.tryAcquire("a") > 0);
+		assertEquals(0, limiter.tryAcquire("b")); // 其他客户端不受影响
+	}
+
+	@Test
+	void perClientLimitsAndRetryAfter() {
+		AtomicLong now = new AtomicLong(0);
+		GcraRateLimiter limiter = limiter(new RateLimitProperties.Limit(1, 1),
+				Map.of("partner", new RateLimitProperties.Limit(100, 50)), now);
+
+		for (int i = 0; i < 50; i++) {
+			limiter.acquire("partner");
+		}
+		limiter.acquire("other");
+		RateLimitExceededException rejected = assertThrows(RateLimitExceededException.class, () -> limiter.acquire("other"));
+		assertEquals("other", rejected.getClient());
+		assertEquals(Duration.ofSeconds(1), rejected.getRetryAfter());
+	}
+
+	@Test
+	void concurrentRequestsNeverExceedBurst() throws Exception {
+		AtomicLong now = new AtomicLong(0); // 时间静止，只有突发额度可用
+		GcraRateLimiter limiter = limiter(new RateLimitProperties.Limit(1, 1_000), Map.of(), now);
+		AtomicInteger allowed = new AtomicInteger();
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<?>> futures = new ArrayList<>();
+		try (ExecutorService executor = Executors.newFixedThreadPool(32)) {
+			for (int t = 0; t < 32; t++) {
+				futures.add(executor.submit(() -> {
+					start.await();
+					for (int i = 0; i < 1_000; i++) {
+						if (limiter.tryAcquire("hot") == 0) {
+							allowed.incrementAndGet();
+						}
+					}
+					return null;
+				}));
+			}
+			start.countDown();
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		}
+		assertEquals(1_000, allowed.get());
+	}
+
+	private static GcraRateLimiter limiter(RateLimitProperties.Limit defaultLimit, Map<String, RateLimitProperties.Limit> clients,
+										   AtomicLong now) {
+		RateLimitProperties properties = new RateLimitProperties();
+		properties.setDefaultLimit(defaultLimit);
+		properties.setClients(clients);
+		return new GcraRateLimiter("test", properties, new SimpleMeterRegistry(), now::get);
+	}
+}
@@ -0,0 +1,118 @@
+package wo1261931780.spring_nextgen_showcase.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import wo1261931780.spring_nextgen_showcase.client.IdempotencyKeyReusedException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 幂等请求存储的测试：大量并发请求集中在少数几个键上时，每个键只执行一次，所有请求得到同一个结果。
+ */
+class IdempotencyStoreTests {
+
+	private static final int KEYS = 20;
+	private static final int REQUESTS = 50_000;
+
+	@Test
+	void collidingRequestsExecuteOncePerKey() throws Exception {
+		IdempotencyStore<String> store = new IdempotencyStore<>("test", 4, 1_000, Duration.ofMinutes(1), new SimpleMeterRegistry());
+		ConcurrentHashMap<String, AtomicInteger> executions = new ConcurrentHashMap<>();
+		CountDownLatch start = new CountDownLatch(1);
+
+		List<Future<String>> results = new ArrayList<>(REQUESTS);
+		List<String> keys = new ArrayList<>(REQUESTS);
+		try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			for (int i = 0; i < REQUESTS; i++) {
+				String key = "key-" + ThreadLocalRandom.current().nextInt(KEYS);
+				keys.add(key);
+				results.add(executor.submit(() -> {
+					start.await();
+					return store.execute(key, key, () -> {
+						int count = executions.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet();
+						// 异步完成，让重复请求有机会在执行中到达
+						return CompletableFuture.supplyAsync(() -> key + "#" + count,
+								CompletableFuture.delayedExecutor(1, TimeUnit.MILLISECONDS));
+					}).result().get(10, TimeUnit.SECONDS);
+				}));
+			}
+			start.countDown();
+			for (int i = 0; i < REQUESTS; i++) {
+				assertEquals(keys.get(i) + "#1", results.get(i).get());
+			}
+		}
+		executions.values().forEach(count -> assertEquals(1, count.get()));
+		assertTrue(store.size() <= KEYS);
+	}
+
+	@Test
+	void failuresAreNotRemembered() {
+		IdempotencyStore<String> store = new IdempotencyStore<>("test", 1, 10, Duration.ofMinutes(1), new SimpleMeterRegistry());
+		IdempotencyStore.Lookup<String> failed = store.execute("k", "body",
+				() -> CompletableFuture.failedFuture(new IllegalStateException("boom")));
+		assertTrue(failed.result().isCompletedExceptionally());
+
+		IdempotencyStore.Lookup<String> retried = store.execute("k", "body", () -> CompletableFuture.completedFuture("ok"));
+		assertFalse(retried.replayed());
+		assertEquals("ok", retried.result().join());
+
+		IdempotencyStore.Lookup<String> replayed = store.execute("k", "body", () -> CompletableFuture.completedFuture("again"));
+		assertTrue(replayed.replayed());
+		assertEquals("ok", replayed.result().join());
+	}
+
+	@Test
+	void reusedKeyWithDifferentBodyIsRejected() {
+		IdempotencyStore<String> store = new IdempotencyStore<>("test", 1, 10, Duration.ofMinutes(1), new SimpleMeterRegistry());
+		store.execute("k", "body", () -> CompletableFuture.completedFuture("ok"));
+		assertThrows(IdempotencyKeyReusedException.class,
+				() -> store.execute("k", "other", () -> CompletableFuture.completedFuture("other")));
+	}
+
+	@Test
+	void entriesExpireAndAreCappedPerShard() {
+		AtomicLong now = new AtomicLong();
+		IdempotencyStore<String> store = new IdempotencyStore<>("test", 1, 3, Duration.ofSeconds(10),
+				new SimpleMeterRegistry(), now::get);
+		for (int i = 0; i < 5; i++) {
+			store.execute("k" + i, "body", () -> CompletableFuture.completedFuture("ok"));
+		}
+		assertEquals(3, store.size());
+
+		now.addAndGet(Duration.ofSeconds(10).toNanos());
+		IdempotencyStore.Lookup<String> lookup = store.execute("k4", "body", () -> CompletableFuture.completedFuture("new"));
+		assertFalse(lookup.replayed());
+		assertEquals(1, store.size());
+	}
+
+	@Test
+	void totalSizeNeverExceedsMaxEntries() {
+		// 65 个分片向上取整为 128 个，每个分片至少一个条目时总数会超过 100
+		assertThrows(IllegalArgumentException.class,
+				() -> new IdempotencyStore<>("test", 65, 100, Duration.ofSeconds(10), new SimpleMeterRegistry()));
+
+		IdempotencyStore<String> store = new IdempotencyStore<>("test", 3, 6, Duration.ofSeconds(10),
+				new SimpleMeterRegistry());
+		for (int i = 0; i < 100; i++) {
+			store.execute("k" + i, "body", () -> CompletableFuture.completedFuture("ok"));
+		}
+		assertTrue(store.size() <= 6, "条目数: " + store.size());
+	}
+}
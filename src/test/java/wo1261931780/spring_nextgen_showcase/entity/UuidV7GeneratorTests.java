@@ -0,0 +1,63 @@
+package wo1261931780.spring_nextgen_showcase.entity;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * UUIDv7 生成器的并发测试：大量虚拟线程同时生成时，ID 唯一、格式正确，且每个线程看到的序列严格递增。
+ */
+class UuidV7GeneratorTests {
+
+	private static final int THREADS = 200;
+	private static final int IDS_PER_THREAD = 5_000;
+
+	@Test
+	void concurrentIdsAreUniqueAndMonotonic() throws Exception {
+		List<Future<List<UUID>>> futures = new ArrayList<>();
+		try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			for (int t = 0; t < THREADS; t++) {
+				futures.add(executor.submit(() -> {
+					List<UUID> ids = new ArrayList<>(IDS_PER_THREAD);
+					for (int i = 0; i < IDS_PER_THREAD; i++) {
+						ids.add(UuidV7Generator.next());
+					}
+					return ids;
+				}));
+			}
+		}
+
+		Set<UUID> all = new HashSet<>();
+		for (Future<List<UUID>> future : futures) {
+			List<UUID> ids = future.get();
+			for (int i = 0; i < ids.size(); i++) {
+				UUID id = ids.get(i);
+				assertEquals(7, id.version());
+				assertEquals(2, id.variant());
+				if (i > 0) {
+					assertTrue(Long.compareUnsigned(ids.get(i - 1).getMostSignificantBits(), id.getMostSignificantBits()) < 0);
+				}
+				all.add(id);
+			}
+		}
+		assertEquals(THREADS * IDS_PER_THREAD, all.size());
+	}
+
+	@Test
+	void timestampTracksWallClock() {
+		long before = System.currentTimeMillis();
+		UUID id = UuidV7Generator.next();
+		long timestamp = id.getMostSignificantBits() >>> 16;
+		assertTrue(timestamp >= before);
+	}
+}
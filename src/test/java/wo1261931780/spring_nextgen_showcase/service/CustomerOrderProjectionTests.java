@@ -0,0 +1,155 @@
+package wo1261931780.spring_nextgen_showcase.service;
+
+import org.junit.jupiter.api.Test;
+import wo1261931780.spring_nextgen_showcase.entity.CustomerOrderSummary;
+import wo1261931780.spring_nextgen_showcase.entity.Order;
+import wo1261931780.spring_nextgen_showcase.entity.UuidV7Generator;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * 订单读模型的一致性测试：并发创建订单与变更状态之后，每个客户的聚合必须与对 "订单表" 执行 GROUP BY 的结果一致，
+ * 并且与从该表重建的结果相同。
+ */
+class CustomerOrderProjectionTests {
+
+	private static final int LATEST_SIZE = 5;
+	private static final int THREADS = 16;
+	private static final int OPERATIONS_PER_THREAD = 5_000;
+	private static final int CUSTOMERS = 40;
+	private static final List<String> STATUSES = List.of("PENDING", "PROCESSING", "COMPLETED", "CANCELLED");
+
+	@Test
+	void aggregatesStayConsistentWithTableUnderConcurrentWrites() throws Exception {
+		CustomerOrderProjection projection = new CustomerOrderProjection(LATEST_SIZE);
+		// 模拟 orders 表：订单 "提交" 后才应用到读模型，与 OrderWriter 一致
+		Map<UUID, Order> table = new ConcurrentHashMap<>();
+		List<Order> created = new ArrayList<>();
+
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<?>> futures = new ArrayList<>();
+		try (ExecutorService executor = Executors.newFixedThreadPool(THREADS)) {
+			for (int t = 0; t < THREADS; t++) {
+				futures.add(executor.submit(() -> {
+					start.await();
+					ThreadLocalRandom random = ThreadLocalRandom.current();
+					for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+						boolean none;
+						synchronized (created) {
+							none = created.isEmpty();
+						}
+						if (random.nextInt(3) > 0 || none) {
+							Order order = new Order("customer-" + random.nextInt(CUSTOMERS));
+							order.setId(UuidV7Generator.next());
+							order.setOrderDate(LocalDateTime.now().withNano(0)); // 制造大量相同的下单时间
+							table.put(order.getId(), order);
+							projection.orderCreated(order.getCustomerName(), order.getId(), order.getOrderDate(), order.getStatus());
+							synchronized (created) {
+								created.add(order);
+							}
+						} else {
+							Order order;
+							synchronized (created) {
+								order = created.get(random.nextInt(created.size()));
+							}
+							String newStatus = STATUSES.get(random.nextInt(STATUSES.size()));
+							synchronized (order) { // 相当于 OrderStatusService 持有的行锁
+								String previous = order.getStatus();
+								if (!previous.equals(newStatus)) {
+									order.setStatus(newStatus);
+									projection.statusChanged(order.getCustomerName(), order.getId(), previous, newStatus);
+								}
+							}
+						}
+					}
+					return null;
+				}));
+			}
+			start.countDown();
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		}
+
+		CustomerOrderProjection rebuilt = new CustomerOrderProjection(LATEST_SIZE);
+		table.values().forEach(order ->
+				rebuilt.orderCreated(order.getCustomerName(), order.getId(), order.getOrderDate(), order.getStatus()));
+
+		Map<String, List<Order>> byCustomer = table.values().stream().collect(Collectors.groupingBy(Order::getCustomerName));
+		assertEquals(byCustomer.size(), projection.customers());
+		for (Map.Entry<String, List<Order>> entry : byCustomer.entrySet()) {
+			CustomerOrderSummary expected = expectedSummary(entry.getKey(), entry.getValue());
+			assertEquals(expected, projection.summary(entry.getKey()));
+			assertEquals(expected, rebuilt.summary(entry.getKey()));
+		}
+	}
+
+	@Test
+	void outOfOrderCreationsKeepNewestOrders() {
+		CustomerOrderProjection projection = new CustomerOrderProjection(2);
+		LocalDateTime now = LocalDateTime.of(2025, 1, 1, 0, 0);
+		Order older = order("a", now);
+		Order newest = order("a", now.plusSeconds(2));
+		Order middle = order("a", now.plusSeconds(1));
+		for (Order order : List.of(newest, older, middle)) {
+			projection.orderCreated(order.getCustomerName(), order.getId(), order.getOrderDate(), order.getStatus());
+		}
+
+		CustomerOrderSummary summary = projection.summary("a");
+		assertEquals(3, summary.getTotalOrders());
+		assertEquals(List.of(newest.getId(), middle.getId()),
+				summary.getLatestOrders().stream().map(CustomerOrderSummary.LatestOrder::getId).toList());
+		assertEquals(newest.getOrderDate(), summary.getLastOrderDate());
+		assertEquals(null, projection.summary("b"));
+	}
+
+	@Test
+	void ordersWithoutCustomerNameAreIgnored() {
+		CustomerOrderProjection projection = new CustomerOrderProjection(2);
+		Order order = order(null, LocalDateTime.of(2025, 1, 1, 0, 0));
+
+		assertFalse(projection.orderCreated(null, order.getId(), order.getOrderDate(), order.getStatus()));
+		assertFalse(projection.statusChanged(null, order.getId(), "PENDING", "COMPLETED"));
+		assertEquals(0, projection.customers());
+		assertNull(projection.summary(null));
+	}
+
+	private static Order order(String customerName, LocalDateTime orderDate) {
+		Order order = new Order(customerName);
+		order.setId(UuidV7Generator.next());
+		order.setOrderDate(orderDate);
+		return order;
+	}
+
+	/**
+	 * 相当于 {@code select status, count(*) from orders where customer_name = ? group by status}
+	 * 与 {@code order by order_date desc, id desc limit ?}。
+	 */
+	private static CustomerOrderSummary expectedSummary(String customerName, List<Order> orders) {
+		Map<String, Long> byStatus = new TreeMap<>(orders.stream()
+				.collect(Collectors.groupingBy(Order::getStatus, Collectors.counting())));
+		List<CustomerOrderSummary.LatestOrder> latest = orders.stream()
+				.sorted(Comparator.comparing(Order::getOrderDate).thenComparing(Order::getId).reversed())
+				.limit(LATEST_SIZE)
+				.map(order -> new CustomerOrderSummary.LatestOrder(order.getId(), order.getOrderDate(), order.getStatus()))
+				.toList();
+		return new CustomerOrderSummary(customerName, orders.size(), byStatus, latest.getFirst().getOrderDate(), latest);
+	}
+}
@@ -0,0 +1,133 @@
+package wo1261931780.spring_nextgen_showcase.service;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+import wo1261931780.spring_nextgen_showcase.entity.CustomerOrderSummary;
+import wo1261931780.spring_nextgen_showcase.entity.Order;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * 订单读模型与 orders 表的一致性测试：通过 OrderWriter 与 OrderStatusService 并发写入之后，
+ * 读模型中每个客户的汇总必须与数据库中 GROUP BY 的结果一致。
+ */
+@SpringBootTest
+class CustomerOrderReadModelTests {
+
+	private static final int THREADS = 8;
+	private static final int OPERATIONS_PER_THREAD = 300;
+	private static final int CUSTOMERS = 10;
+	private static final List<String> STATUSES = List.of("PENDING", "PROCESSING", "COMPLETED", "CANCELLED");
+
+	@Autowired
+	private OrderWriter orderWriter;
+
+	@Autowired
+	private OrderStatusService orderStatusService;
+
+	@Autowired
+	private CustomerOrderReadModel customerOrderReadModel;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Test
+	void summariesMatchGroupByAfterConcurrentWrites() throws Exception {
+		String prefix = "read-model-" + UUID.randomUUID() + "-";
+		List<UUID> created = new ArrayList<>();
+
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<?>> futures = new ArrayList<>();
+		try (ExecutorService executor = Executors.newFixedThreadPool(THREADS)) {
+			for (int t = 0; t < THREADS; t++) {
+				futures.add(executor.submit(() -> {
+					start.await();
+					ThreadLocalRandom random = ThreadLocalRandom.current();
+					for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+						UUID target = null;
+						synchronized (created) {
+							if (!created.isEmpty() && random.nextInt(3) == 0) {
+								target = created.get(random.nextInt(created.size()));
+							}
+						}
+						if (target == null) {
+							// 少量没有客户名称的订单：读模型必须忽略它们，而不是让写入失败
+							Order order = new Order(random.nextInt(20) == 0 ? null : prefix + random.nextInt(CUSTOMERS));
+							order.setOrderDate(LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS)); // 制造大量相同的下单时间
+							Order saved = orderWriter.write(order).join();
+							synchronized (created) {
+								created.add(saved.getId());
+							}
+						} else {
+							try {
+								orderStatusService.updateStatus(target, STATUSES.get(random.nextInt(STATUSES.size())));
+							} catch (ResponseStatusException e) {
+								assertEquals(409, e.getStatusCode().value()); // 订单已处于终态
+							}
+						}
+					}
+					return null;
+				}));
+			}
+			start.countDown();
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		}
+
+		Map<String, Map<String, Long>> byCustomer = new HashMap<>();
+		Map<String, List<UUID>> latestByCustomer = new HashMap<>();
+		transactionTemplate.executeWithoutResult(status -> {
+			List<Object[]> rows = entityManager.createQuery("""
+							select o.customerName, o.status, count(o) from Order o
+							where o.customerName like :prefix
+							group by o.customerName, o.status""", Object[].class)
+					.setParameter("prefix", prefix + "%")
+					.getResultList();
+			for (Object[] row : rows) {
+				byCustomer.computeIfAbsent((String) row[0], name -> new TreeMap<>()).put((String) row[1], (Long) row[2]);
+			}
+			for (String customerName : byCustomer.keySet()) {
+				latestByCustomer.put(customerName, entityManager.createQuery("""
+								select o.id from Order o where o.customerName = :customerName
+								order by o.orderDate desc, o.id desc""", UUID.class)
+						.setParameter("customerName", customerName)
+						.setMaxResults(10) // showcase.orders.read-model.latest-size
+						.getResultList());
+			}
+		});
+
+		assertEquals(CUSTOMERS, byCustomer.size());
+		for (Map.Entry<String, Map<String, Long>> entry : byCustomer.entrySet()) {
+			CustomerOrderSummary summary = customerOrderReadModel.summary(entry.getKey());
+			assertNotNull(summary, entry.getKey());
+			assertEquals(entry.getValue(), summary.getOrdersByStatus(), entry.getKey());
+			assertEquals(entry.getValue().values().stream().mapToLong(Long::longValue).sum(), summary.getTotalOrders());
+			assertEquals(latestByCustomer.get(entry.getKey()),
+					summary.getLatestOrders().stream().map(CustomerOrderSummary.LatestOrder::getId).toList());
+		}
+	}
+}
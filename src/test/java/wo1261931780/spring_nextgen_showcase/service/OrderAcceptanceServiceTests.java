@@ -0,0 +1,178 @@
+package wo1261931780.spring_nextgen_showcase.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import wo1261931780.spring_nextgen_showcase.client.OrderQueueFullException;
+import wo1261931780.spring_nextgen_showcase.config.VirtualThreadExecutors;
+import wo1261931780.spring_nextgen_showcase.entity.Order;
+import wo1261931780.spring_nextgen_showcase.entity.OrderTicket;
+import wo1261931780.spring_nextgen_showcase.entity.UuidV7Generator;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 订单异步受理的测试：状态按顺序推送给订阅方，失败或超时的请求以 FAILED 结束，队列已满时立即拒绝；
+ * 工作线程不等待订单写入确认，也不被慢的订阅方阻塞。
+ */
+class OrderAcceptanceServiceTests {
+
+	@Test
+	void subscribersSeeEveryStatusInOrder() throws Exception {
+		OrderAcceptanceService service = service(2, 10);
+		CountDownLatch release = new CountDownLatch(1);
+		CompletableFuture<Order> written = new CompletableFuture<>();
+		Order order = new Order("alice");
+		order.setId(UuidV7Generator.next());
+
+		OrderTicket ticket = service.submit(() -> {
+			await(release);
+			return written;
+		});
+		assertEquals(OrderTicket.Status.ACCEPTED, ticket.getStatus());
+
+		List<OrderTicket> seen = new CopyOnWriteArrayList<>();
+		CountDownLatch finished = new CountDownLatch(1);
+		service.subscribe(ticket.getId(), update -> {
+			seen.add(update);
+			if (OrderAcceptanceService.isFinished(update)) {
+				finished.countDown();
+			}
+		});
+		release.countDown();
+		waitForStatus(service, ticket, OrderTicket.Status.PROCESSING);
+		written.complete(order);
+		assertTrue(finished.await(5, TimeUnit.SECONDS));
+
+		List<OrderTicket.Status> statuses = seen.stream().map(OrderTicket::getStatus).distinct().toList();
+		assertEquals(OrderTicket.Status.COMPLETED, statuses.getLast());
+		assertTrue(statuses.contains(OrderTicket.Status.PROCESSING));
+		assertEquals(order.getId(), service.status(ticket.getId()).getOrderId());
+		service.shutdown();
+	}
+
+	@Test
+	void failedWorkEndsAsFailed() throws Exception {
+		OrderAcceptanceService service = service(1, 10);
+		OrderTicket ticket = service.submit(() -> CompletableFuture.failedFuture(new IllegalStateException("写入失败")));
+		service.shutdown(); // 关闭时处理完已受理的请求
+
+		OrderTicket finished = service.status(ticket.getId());
+		assertEquals(OrderTicket.Status.FAILED, finished.getStatus());
+		assertEquals("写入失败", finished.getError());
+	}
+
+	@Test
+	void workersDoNotWaitForPendingOrders() throws Exception {
+		OrderAcceptanceService service = service(1, 10);
+		List<CompletableFuture<Order>> pending = new CopyOnWriteArrayList<>();
+		List<OrderTicket> tickets = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			tickets.add(service.submit(() -> {
+				CompletableFuture<Order> future = new CompletableFuture<>();
+				pending.add(future);
+				return future;
+			}));
+		}
+		// 唯一的工作线程不等待订单写入确认，因此 5 个请求同时处于处理中（可以进入 OrderWriter 的同一批次）
+		for (OrderTicket ticket : tickets) {
+			waitForStatus(service, ticket, OrderTicket.Status.PROCESSING);
+		}
+		assertEquals(5, pending.size());
+		for (CompletableFuture<Order> future : pending) {
+			Order order = new Order("alice");
+			order.setId(UuidV7Generator.next());
+			future.complete(order);
+		}
+		for (OrderTicket ticket : tickets) {
+			waitForStatus(service, ticket, OrderTicket.Status.COMPLETED);
+		}
+		service.shutdown();
+	}
+
+	@Test
+	void lostFuturesTimeOutAndFreeTheirSlot() throws Exception {
+		OrderAcceptanceService service = service(1, 1, 10, Duration.ofMillis(50));
+		OrderTicket lost = service.submit(CompletableFuture::new); // 永远不会完成
+		OrderTicket next = service.submit(() -> CompletableFuture.failedFuture(new IllegalStateException("写入失败")));
+
+		waitForStatus(service, lost, OrderTicket.Status.FAILED);
+		waitForStatus(service, next, OrderTicket.Status.FAILED);
+		assertEquals("写入失败", service.status(next.getId()).getError());
+		service.shutdown();
+	}
+
+	@Test
+	void slowSubscribersDoNotBlockProcessing() throws Exception {
+		OrderAcceptanceService service = service(1, 10);
+		CountDownLatch release = new CountDownLatch(1);
+		CompletableFuture<Order> blocked = new CompletableFuture<>();
+		OrderTicket slow = service.submit(() -> blocked);
+		service.subscribe(slow.getId(), update -> await(release)); // 例如网络写入阻塞的 SSE 客户端
+
+		Order order = new Order("bob");
+		order.setId(UuidV7Generator.next());
+		OrderTicket other = service.submit(() -> CompletableFuture.completedFuture(order));
+		waitForStatus(service, other, OrderTicket.Status.COMPLETED);
+		blocked.complete(order);
+		waitForStatus(service, slow, OrderTicket.Status.COMPLETED);
+		release.countDown();
+		service.shutdown();
+	}
+
+	@Test
+	void fullQueueRejectsImmediately() throws Exception {
+		OrderAcceptanceService service = service(1, 1);
+		CountDownLatch release = new CountDownLatch(1);
+		OrderTicket running = service.submit(() -> {
+			await(release);
+			return CompletableFuture.failedFuture(new IllegalStateException("取消"));
+		});
+		waitForStatus(service, running, OrderTicket.Status.PROCESSING); // 唯一的工作线程被占用
+		service.submit(CompletableFuture::new); // 占满容量为 1 的队列
+
+		OrderQueueFullException rejected = assertThrows(OrderQueueFullException.class, () -> service.submit(CompletableFuture::new));
+		assertEquals(1, rejected.getCapacity());
+		assertEquals(Duration.ofSeconds(1), rejected.getRetryAfter());
+		release.countDown();
+	}
+
+	private static OrderAcceptanceService service(int workers, int queueCapacity) {
+		return service(workers, 100, queueCapacity, Duration.ofSeconds(30));
+	}
+
+	private static OrderAcceptanceService service(int workers, int maxInFlight, int queueCapacity, Duration processingTimeout) {
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		VirtualThreadExecutors executors = new VirtualThreadExecutors(meterRegistry, 10, 10, 10, Duration.ofSeconds(1));
+		OrderAcceptanceService service = new OrderAcceptanceService(meterRegistry, executors, workers, maxInFlight,
+				queueCapacity, Duration.ofSeconds(1), processingTimeout, Duration.ofMinutes(1), 1_000, Duration.ofSeconds(5));
+		service.start();
+		return service;
+	}
+
+	private static void waitForStatus(OrderAcceptanceService service, OrderTicket ticket, OrderTicket.Status status)
+			throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (service.status(ticket.getId()).getStatus() != status) {
+			assertTrue(System.nanoTime() < deadline, "请求未进入状态 " + status);
+			Thread.sleep(1);
+		}
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,166 @@
+package wo1261931780.spring_nextgen_showcase.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import wo1261931780.spring_nextgen_showcase.config.VirtualThreadExecutors;
+import wo1261931780.spring_nextgen_showcase.entity.Product;
+import wo1261931780.spring_nextgen_showcase.entity.ProductServiceClient;
+import wo1261931780.spring_nextgen_showcase.entity.ProductValidationItem;
+import wo1261931780.spring_nextgen_showcase.entity.ProductValidationResult;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * OrderService.validateProducts 的测试（桩产品服务客户端）：去重、确认不存在时短路、超时与失败标记为 UNAVAILABLE、并发上限。
+ */
+class OrderServiceTests {
+
+	private final VirtualThreadExecutors executors =
+			new VirtualThreadExecutors(new SimpleMeterRegistry(), 64, 64, 64, Duration.ofSeconds(1));
+
+	@AfterEach
+	void shutdown() {
+		executors.shutdown();
+	}
+
+	@Test
+	void duplicateProductIdsAreCheckedOnce() {
+		StubProductClient client = new StubProductClient(StubProductClient::product);
+
+		ProductValidationResult result = service(client, 8, Duration.ofSeconds(2))
+				.validateProducts(List.of("p1", "p2", "p1", "p3", "p2"));
+
+		assertTrue(result.isValid());
+		assertEquals(List.of("p1", "p2", "p3"), productIds(result));
+		assertEquals(Map.of("p1", 1, "p2", 1, "p3", 1), client.calls);
+	}
+
+	@Test
+	void notFoundSkipsTheRemainingProducts() {
+		StubProductClient client = new StubProductClient(id -> id.equals("missing") ? null : StubProductClient.product(id));
+
+		// 并发上限为 1 时调用依次发出，不存在的产品之后的产品都不应再调用
+		ProductValidationResult result = service(client, 1, Duration.ofSeconds(2))
+				.validateProducts(List.of("p1", "missing", "p3", "p4"));
+
+		assertFalse(result.isValid());
+		assertEquals(List.of(ProductValidationItem.Status.VALID, ProductValidationItem.Status.NOT_FOUND,
+				ProductValidationItem.Status.SKIPPED, ProductValidationItem.Status.SKIPPED), statuses(result));
+		assertEquals(Map.of("p1", 1, "missing", 1), client.calls);
+	}
+
+	@Test
+	void slowAndFailingProductsAreUnavailable() throws Exception {
+		CountDownLatch interrupted = new CountDownLatch(1);
+		StubProductClient client = new StubProductClient(id -> switch (id) {
+			case "slow" -> {
+				try {
+					Thread.sleep(Duration.ofSeconds(10));
+				} catch (InterruptedException e) {
+					interrupted.countDown();
+					Thread.currentThread().interrupt();
+				}
+				throw new IllegalStateException("被取消");
+			}
+			case "broken" -> throw new IllegalStateException("产品服务返回 503");
+			default -> StubProductClient.product(id);
+		});
+
+		long start = System.nanoTime();
+		ProductValidationResult result = service(client, 8, Duration.ofMillis(200))
+				.validateProducts(List.of("p1", "slow", "broken"));
+		long elapsed = System.nanoTime() - start;
+
+		assertFalse(result.isValid());
+		assertEquals(List.of(ProductValidationItem.Status.VALID, ProductValidationItem.Status.UNAVAILABLE,
+				ProductValidationItem.Status.UNAVAILABLE), statuses(result));
+		assertTrue(elapsed < TimeUnit.SECONDS.toNanos(2), "超时后应立即返回: " + Duration.ofNanos(elapsed));
+		assertTrue(interrupted.await(2, TimeUnit.SECONDS), "超时的调用应被中断");
+	}
+
+	@Test
+	void inFlightCallsStayWithinTheConcurrencyCap() {
+		AtomicInteger inFlight = new AtomicInteger();
+		AtomicInteger maxInFlight = new AtomicInteger();
+		StubProductClient client = new StubProductClient(id -> {
+			maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+			try {
+				Thread.sleep(20);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				inFlight.decrementAndGet();
+			}
+			return StubProductClient.product(id);
+		});
+		List<String> productIds = IntStream.range(0, 30).mapToObj(i -> "p" + i).toList();
+
+		ProductValidationResult result = service(client, 3, Duration.ofSeconds(5)).validateProducts(productIds);
+
+		assertTrue(result.isValid());
+		assertEquals(productIds.size(), client.calls.size());
+		assertTrue(maxInFlight.get() <= 3, "同时在途的调用数: " + maxInFlight.get());
+		assertTrue(maxInFlight.get() > 1, "调用应当并发发出");
+	}
+
+	private OrderService service(ProductServiceClient client, int concurrency, Duration timeout) {
+		return new OrderService(client, null, executors, concurrency, timeout);
+	}
+
+	private static List<String> productIds(ProductValidationResult result) {
+		return result.getItems().stream().map(ProductValidationItem::getProductId).toList();
+	}
+
+	private static List<ProductValidationItem.Status> statuses(ProductValidationResult result) {
+		return result.getItems().stream().map(ProductValidationItem::getStatus).toList();
+	}
+
+	/**
+	 * 按脚本返回产品并记录每个产品ID的调用次数的产品服务客户端。
+	 */
+	private static final class StubProductClient implements ProductServiceClient {
+
+		private final Function<String, Product> script;
+		private final Map<String, Integer> calls = new ConcurrentHashMap<>();
+
+		StubProductClient(Function<String, Product> script) {
+			this.script = script;
+		}
+
+		static Product product(String id) {
+			Product product = new Product();
+			product.setId(id);
+			return product;
+		}
+
+		@Override
+		public Product getProduct(String id) {
+			calls.merge(id, 1, Integer::sum);
+			return script.apply(id);
+		}
+
+		@Override
+		public Mono<Product> getProductReactive(String id) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Product createProduct(Product product) {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package wo1261931780.spring_nextgen_showcase.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+import wo1261931780.spring_nextgen_showcase.client.OutboxEventRepository;
+import wo1261931780.spring_nextgen_showcase.config.VirtualThreadExecutors;
+import wo1261931780.spring_nextgen_showcase.entity.OutboxEvent;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 发件箱中继的测试（内存中的发件箱表）：事件按 ID 顺序投递，投递成功之后才删除，投递失败时重试同一批事件。
+ */
+class OutboxRelayTests {
+
+	private static final int BATCH_SIZE = 2;
+
+	@Test
+	void deliversInIdOrderAcrossBatches() throws Exception {
+		InMemoryOutbox outbox = new InMemoryOutbox();
+		for (long id : new long[]{5, 1, 3, 2, 4}) {
+			outbox.add(id);
+		}
+		List<List<Long>> published = new ArrayList<>();
+		OutboxRelay relay = relay(outbox, batch -> published.add(ids(batch)));
+
+		assertEquals(2, relay.relayBatch());
+		assertEquals(2, relay.relayBatch());
+		assertEquals(1, relay.relayBatch());
+		assertEquals(0, relay.relayBatch());
+
+		assertEquals(List.of(List.of(1L, 2L), List.of(3L, 4L), List.of(5L)), published);
+		assertEquals(Set.of(), outbox.events.keySet());
+	}
+
+	@Test
+	void deletesOnlyAfterPublishing() throws Exception {
+		InMemoryOutbox outbox = new InMemoryOutbox();
+		outbox.add(1);
+		outbox.add(2);
+		List<Set<Long>> presentDuringPublish = new ArrayList<>();
+		OutboxRelay relay = relay(outbox, batch -> presentDuringPublish.add(Set.copyOf(outbox.events.keySet())));
+
+		relay.relayBatch();
+
+		assertEquals(List.of(Set.of(1L, 2L)), presentDuringPublish); // 投递时这一批事件仍在发件箱中
+		assertEquals(Set.of(), outbox.events.keySet());
+	}
+
+	@Test
+	void failedBatchIsRetriedWithoutSkipping() throws Exception {
+		InMemoryOutbox outbox = new InMemoryOutbox();
+		for (long id = 1; id <= 3; id++) {
+			outbox.add(id);
+		}
+		List<List<Long>> attempts = new ArrayList<>();
+		OutboxRelay relay = relay(outbox, batch -> {
+			attempts.add(ids(batch));
+			if (attempts.size() == 1) {
+				throw new IllegalStateException("投递目标不可用");
+			}
+		});
+
+		assertThrows(IllegalStateException.class, relay::relayBatch);
+		assertEquals(Set.of(1L, 2L, 3L), outbox.events.keySet()); // 失败的一批没有被删除
+
+		assertEquals(2, relay.relayBatch());
+		assertEquals(1, relay.relayBatch());
+		assertEquals(List.of(List.of(1L, 2L), List.of(1L, 2L), List.of(3L)), attempts);
+		assertEquals(Set.of(), outbox.events.keySet());
+	}
+
+	private static OutboxRelay relay(InMemoryOutbox outbox, OrderEventSink sink) {
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		VirtualThreadExecutors executors = new VirtualThreadExecutors(meterRegistry, 10, 10, 10, Duration.ofSeconds(1));
+		return new OutboxRelay(outbox.repository(), sink, new TransactionTemplate(new NoOpTransactionManager()),
+				executors, meterRegistry, BATCH_SIZE, Duration.ofMillis(10), Duration.ofMillis(10));
+	}
+
+	private static List<Long> ids(List<OutboxEvent> batch) {
+		return batch.stream().map(OutboxEvent::getId).toList();
+	}
+
+	/**
+	 * 只实现中继用到的两个方法的发件箱表。
+	 */
+	private static final class InMemoryOutbox {
+
+		private final ConcurrentSkipListMap<Long, OutboxEvent> events = new ConcurrentSkipListMap<>();
+
+		void add(long id) {
+			events.put(id, new OutboxEvent(id, UUID.randomUUID(), OutboxEvent.Type.ORDER_CREATED, "{}", Instant.now()));
+		}
+
+		@SuppressWarnings("unchecked")
+		OutboxEventRepository repository() {
+			return (OutboxEventRepository) Proxy.newProxyInstance(OutboxEventRepository.class.getClassLoader(),
+					new Class<?>[]{OutboxEventRepository.class}, (proxy, method, args) -> switch (method.getName()) {
+						case "findAllByOrderByIdAsc" -> new ArrayList<>(new TreeMap<>(events).values())
+								.subList(0, Math.min(events.size(), ((Limit) args[0]).max()));
+						case "deleteAllByIdInBatch" -> {
+							((Iterable<Long>) args[0]).forEach(events::remove);
+							yield null;
+						}
+						default -> throw new UnsupportedOperationException(method.getName());
+					});
+		}
+	}
+
+	private static final class NoOpTransactionManager implements PlatformTransactionManager {
+
+		@Override
+		public TransactionStatus getTransaction(TransactionDefinition definition) {
+			return new SimpleTransactionStatus();
+		}
+
+		@Override
+		public void commit(TransactionStatus status) {
+		}
+
+		@Override
+		public void rollback(TransactionStatus status) {
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package wo1261931780.spring_nextgen_showcase.service;
+
+import org.junit.jupiter.api.Test;
+import wo1261931780.spring_nextgen_showcase.client.InsufficientStockException;
+import wo1261931780.spring_nextgen_showcase.entity.StockReservation;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 库存预占引擎的并发压力测试：大量线程争抢同一个热门产品时不能超卖。
+ */
+class StockReservationEngineTests {
+
+	private static final int INITIAL_STOCK = 1_000;
+	private static final int THREADS = 64;
+	private static final int ATTEMPTS_PER_THREAD = 2_000;
+
+	@Test
+	void concurrentReservationsNeverOversell() throws Exception {
+		StockReservationEngine engine = new StockReservationEngine(Clock.systemUTC());
+		engine.register("hot", INITIAL_STOCK, 0);
+		engine.register("other", INITIAL_STOCK, 0);
+
+		AtomicInteger confirmedHot = new AtomicInteger();
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<?>> futures = new ArrayList<>();
+		try (ExecutorService executor = Executors.newFixedThreadPool(THREADS)) {
+			for (int t = 0; t < THREADS; t++) {
+				futures.add(executor.submit(() -> {
+					start.await();
+					ThreadLocalRandom random = ThreadLocalRandom.current();
+					for (int i = 0; i < ATTEMPTS_PER_THREAD; i++) {
+						int quantity = random.nextInt(1, 4);
+						Map<String, Integer> items = random.nextBoolean()
+								? Map.of("hot", quantity)
+								: Map.of("hot", quantity, "other", 1);
+						StockReservation reservation;
+						try {
+							reservation = engine.reserve(items, Duration.ofMinutes(1));
+						} catch (InsufficientStockException e) {
+							continue;
+						}
+						assertTrue(engine.available("hot") >= 0);
+						if (random.nextInt(4) == 0 && engine.confirm(reservation.getId())) {
+							confirmedHot.addAndGet(quantity);
+						} else {
+							engine.release(reservation.getId());
+						}
+					}
+					return null;
+				}));
+			}
+			start.countDown();
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		}
+
+		assertEquals(0, engine.activeReservations());
+		assertEquals(0, engine.reserved("hot"));
+		assertTrue(engine.available("hot") >= 0);
+		assertEquals(INITIAL_STOCK, engine.available("hot") + confirmedHot.get());
+		assertTrue(engine.drainDirty().contains("hot"));
+	}
+
+	@Test
+	void multiItemReservationIsAllOrNothing() {
+		StockReservationEngine engine = new StockReservationEngine(Clock.systemUTC());
+		engine.register("a", 5, 0);
+		engine.register("b", 1, 0);
+
+		// 先成功预占 "a"，再因 "b" 不足而失败，确保回滚路径一定被执行
+		Map<String, Integer> items = new LinkedHashMap<>();
+		items.put("a", 3);
+		items.put("b", 2);
+		assertThrows(InsufficientStockException.class, () -> engine.reserve(items, Duration.ofMinutes(1)));
+
+		assertEquals(5, engine.available("a"));
+		assertEquals(0, engine.reserved("a"));
+		assertEquals(1, engine.available("b"));
+		assertEquals(0, engine.activeReservations());
+	}
+
+	@Test
+	void expiredReservationsAreReleasedExactlyOnce() {
+		Instant now = Instant.parse("2025-01-01T00:00:00Z");
+		AtomicReference<Instant> time = new AtomicReference<>(now);
+		Clock clock = new Clock() {
+			@Override
+			public ZoneId getZone() {
+				return ZoneOffset.UTC;
+			}
+
+			@Override
+			public Clock withZone(ZoneId zone) {
+				return this;
+			}
+
+			@Override
+			public Instant instant() {
+				return time.get();
+			}
+		};
+		StockReservationEngine engine = new StockReservationEngine(clock);
+		engine.register("a", 10, 0);
+		StockReservation reservation = engine.reserve(Map.of("a", 4), Duration.ofMinutes(1));
+
+		assertEquals(0, engine.expire());
+		time.set(now.plus(Duration.ofMinutes(1)));
+		assertEquals(1, engine.expire());
+		assertEquals(0, engine.expire());
+		assertFalse(engine.confirm(reservation.getId()));
+		assertEquals(10, engine.available("a"));
+		assertEquals(0, engine.reserved("a"));
+	}
+}